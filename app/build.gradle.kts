@@ -14,9 +14,24 @@ android {
         versionName = "1.0"
 
         testInstrumentationRunner = "androidx.test.runner.AndroidJUnitRunner"
+
+        // Read by AppLog, Metrics and AppTrace as compile-time constants, so calls gated on them cost
+        // nothing in builds where they are off
+        buildConfigField("int", "LOG_LEVEL", "android.util.Log.WARN")
+        buildConfigField("boolean", "METRICS", "false")
+        buildConfigField("boolean", "TRACE", "false")
+    }
+
+    buildFeatures {
+        buildConfig = true
     }
 
     buildTypes {
+        debug {
+            buildConfigField("int", "LOG_LEVEL", "android.util.Log.DEBUG")
+            buildConfigField("boolean", "METRICS", "true")
+            buildConfigField("boolean", "TRACE", "true")
+        }
         release {
             isMinifyEnabled = false
             proguardFiles(
@@ -24,11 +39,59 @@ android {
                 "proguard-rules.pro"
             )
         }
+        // Release code and baseline profile, but signed with the debug key so the
+        // :macrobenchmark module can install and measure it
+        create("benchmark") {
+            initWith(getByName("release"))
+            signingConfig = signingConfigs.getByName("debug")
+            matchingFallbacks += listOf("release")
+            isDebuggable = false
+            // Trace sections show which query or bind a slow frame was spent in
+            buildConfigField("boolean", "TRACE", "true")
+        }
     }
     compileOptions {
         sourceCompatibility = JavaVersion.VERSION_11
         targetCompatibility = JavaVersion.VERSION_11
     }
+    testOptions {
+        unitTests.isIncludeAndroidResources = true
+    }
+}
+
+// *Benchmark classes in src/test are left out of the normal unit test run.
+// Run them with: ./gradlew :app:testDebugUnitTest -Pbenchmark
+tasks.withType<Test>().configureEach {
+    if (project.hasProperty("benchmark")) {
+        filter.includeTestsMatching("*Benchmark")
+        maxHeapSize = "2g"
+        testLogging.showStandardStreams = true
+        outputs.upToDateWhen { false }
+    } else {
+        exclude("**/*Benchmark.class")
+    }
+}
+
+// Raster drawables are kept as full-size masters in src/main/drawable-src. optimizeDrawables
+// scales them to each density bucket, encodes WebP with cwebp, and adds the result to every
+// variant as a generated res dir. It fails the build when an output is over budget.
+// Options: -PdrawableBudgetKb=512 -PdrawableMaxSideDp=800 -Pcwebp=/path/to/cwebp
+// -PstrictDrawables (also fail on duplicate or unreferenced drawables)
+val optimizeDrawables = tasks.register<OptimizeDrawables>("optimizeDrawables") {
+    masters.set(layout.projectDirectory.dir("src/main/drawable-src"))
+    sources.from("src/main/java", "src/main/res", "src/main/assets", "src/main/AndroidManifest.xml")
+    cwebp.set(providers.gradleProperty("cwebp").orElse("cwebp"))
+    budgetKb.set(providers.gradleProperty("drawableBudgetKb").map(String::toInt).orElse(512))
+    maxSideDp.set(providers.gradleProperty("drawableMaxSideDp").map(String::toInt).orElse(800))
+    strict.set(providers.gradleProperty("strictDrawables").map { true }.orElse(false))
+    outputDir.set(layout.buildDirectory.dir("generated/res/optimizedDrawables"))
+    reportFile.set(layout.buildDirectory.file("reports/drawables/report.txt"))
+}
+
+androidComponents {
+    onVariants { variant ->
+        variant.sources.res?.addGeneratedSourceDirectory(optimizeDrawables, OptimizeDrawables::outputDir)
+    }
 }
 
 dependencies {
@@ -37,7 +100,153 @@ dependencies {
     implementation(libs.material)
     implementation(libs.activity)
     implementation(libs.constraintlayout)
+    implementation(libs.paging.runtime)
+    implementation(libs.paging.guava)
+    implementation(libs.guava)
+    implementation(libs.work.runtime)
+    // Compiles src/main/baseline-prof.txt on install when the store does not
+    implementation(libs.profileinstaller)
+    implementation(libs.tracing)
     testImplementation(libs.junit)
+    testImplementation(libs.robolectric)
     androidTestImplementation(libs.ext.junit)
     androidTestImplementation(libs.espresso.core)
-}
\ No newline at end of file
+}
+
+abstract class OptimizeDrawables : DefaultTask() {
+
+    @get:InputDirectory
+    @get:PathSensitive(PathSensitivity.RELATIVE)
+    abstract val masters: DirectoryProperty
+
+    /** Code and resources scanned for drawable references. */
+    @get:InputFiles
+    @get:PathSensitive(PathSensitivity.RELATIVE)
+    abstract val sources: ConfigurableFileCollection
+
+    @get:Input abstract val cwebp: Property<String>
+    @get:Input abstract val budgetKb: Property<Int>
+    @get:Input abstract val maxSideDp: Property<Int>
+    @get:Input abstract val strict: Property<Boolean>
+
+    @get:OutputDirectory abstract val outputDir: DirectoryProperty
+    @get:OutputFile abstract val reportFile: RegularFileProperty
+
+    private val densities = linkedMapOf("mdpi" to 1.0, "hdpi" to 1.5, "xhdpi" to 2.0, "xxhdpi" to 3.0)
+
+    @TaskAction
+    fun optimize() {
+        val out = outputDir.get().asFile
+        out.deleteRecursively()
+        val images = masters.get().asFile
+            .listFiles { f -> f.extension.lowercase() in setOf("jpg", "jpeg", "png") }
+            .orEmpty().sortedBy { it.name }
+        val webp = cwebpAvailable()
+        if (!webp) {
+            logger.warn("optimizeDrawables: '${cwebp.get()}' not found, writing downscaled JPEG/PNG instead of WebP")
+        }
+
+        val report = StringBuilder()
+        report.appendLine(String.format("%-14s %10s %10s  %s", "drawable", "before KB", "after KB", "buckets"))
+        val overBudget = mutableListOf<String>()
+        var before = 0L
+        var after = 0L
+        for (image in images) {
+            val source = javax.imageio.ImageIO.read(image) ?: throw GradleException("Cannot decode ${image.name}")
+            val longSide = maxOf(source.width, source.height)
+            val buckets = mutableListOf<String>()
+            var total = 0L
+            for ((density, scale) in densities) {
+                val target = minOf(longSide, (maxSideDp.get() * scale).toInt())
+                val width = maxOf(1, source.width * target / longSide)
+                val height = maxOf(1, source.height * target / longSide)
+                val dir = File(out, "drawable-$density").apply { mkdirs() }
+                val file = if (webp) encodeWebp(image, width, height, dir) else encodeFallback(source, image, width, height, dir)
+                total += file.length()
+                buckets += "$density ${width}x$height"
+                if (file.length() > budgetKb.get() * 1024L) {
+                    overBudget += "drawable-$density/${file.name} is ${file.length() / 1024} KB"
+                }
+                // The master fits this bucket whole; denser screens fall back to it
+                if (target == longSide) break
+            }
+            before += image.length()
+            after += total
+            report.appendLine(String.format("%-14s %10d %10d  %s",
+                image.nameWithoutExtension, image.length() / 1024, total / 1024, buckets.joinToString()))
+        }
+        report.appendLine(String.format("%-14s %10d %10d  (%s)", "total", before / 1024, after / 1024, if (webp) "webp" else "jpeg/png"))
+
+        val warnings = duplicates(images) + unreferenced(images)
+        warnings.forEach { report.appendLine("warning: $it") }
+        reportFile.get().asFile.apply { parentFile.mkdirs() }.writeText(report.toString())
+        logger.lifecycle(report.toString())
+
+        if (overBudget.isNotEmpty()) {
+            throw GradleException("Drawables over the ${budgetKb.get()} KB budget:\n  " + overBudget.joinToString("\n  "))
+        }
+        if (strict.get() && warnings.isNotEmpty()) {
+            throw GradleException("Drawable check failed:\n  " + warnings.joinToString("\n  "))
+        }
+    }
+
+    private fun cwebpAvailable(): Boolean = try {
+        ProcessBuilder(cwebp.get(), "-version").redirectErrorStream(true).start().waitFor() == 0
+    } catch (e: java.io.IOException) {
+        false
+    }
+
+    private fun encodeWebp(image: File, width: Int, height: Int, dir: File): File {
+        val out = File(dir, image.nameWithoutExtension + ".webp")
+        val process = ProcessBuilder(cwebp.get(), "-quiet", "-q", "80", "-metadata", "none",
+            "-resize", width.toString(), height.toString(), image.path, "-o", out.path)
+            .redirectErrorStream(true).start()
+        val output = process.inputStream.bufferedReader().readText()
+        if (process.waitFor() != 0) throw GradleException("cwebp failed on ${image.name}: $output")
+        return out
+    }
+
+    // Without cwebp: area-averaged downscale, JPEG for opaque images and PNG where there is alpha
+    private fun encodeFallback(source: java.awt.image.BufferedImage, image: File, width: Int, height: Int, dir: File): File {
+        val alpha = source.colorModel.hasAlpha()
+        val scaled = java.awt.image.BufferedImage(width, height,
+            if (alpha) java.awt.image.BufferedImage.TYPE_INT_ARGB else java.awt.image.BufferedImage.TYPE_INT_RGB)
+        scaled.createGraphics().apply {
+            drawImage(source.getScaledInstance(width, height, java.awt.Image.SCALE_AREA_AVERAGING), 0, 0, null)
+            dispose()
+        }
+        if (alpha) {
+            return File(dir, image.nameWithoutExtension + ".png").also { javax.imageio.ImageIO.write(scaled, "png", it) }
+        }
+        val out = File(dir, image.nameWithoutExtension + ".jpg")
+        val writer = javax.imageio.ImageIO.getImageWritersByFormatName("jpeg").next()
+        val params = writer.defaultWriteParam.apply {
+            compressionMode = javax.imageio.ImageWriteParam.MODE_EXPLICIT
+            compressionQuality = 0.8f
+        }
+        javax.imageio.ImageIO.createImageOutputStream(out).use { stream ->
+            writer.output = stream
+            writer.write(null, javax.imageio.IIOImage(scaled, null, null), params)
+        }
+        writer.dispose()
+        return out
+    }
+
+    private fun duplicates(images: List<File>): List<String> {
+        val digest = { f: File ->
+            java.security.MessageDigest.getInstance("SHA-256").digest(f.readBytes()).joinToString("") { "%02x".format(it) }
+        }
+        return images.groupBy(digest).values.filter { it.size > 1 }
+            .map { group -> "identical drawables: " + group.joinToString { it.name } }
+    }
+
+    private fun unreferenced(images: List<File>): List<String> {
+        val pattern = Regex("""R\.drawable\.(\w+)|@drawable/(\w+)""")
+        val referenced = HashSet<String>()
+        sources.asFileTree.matching { include("**/*.java", "**/*.kt", "**/*.xml", "**/*.csv") }.forEach { file ->
+            pattern.findAll(file.readText()).forEach { m -> referenced += m.groupValues[1].ifEmpty { m.groupValues[2] } }
+        }
+        return images.map { it.nameWithoutExtension }.filter { it !in referenced }
+            .map { "unreferenced drawable: $it" }
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.mobstore;
+
+import android.app.Instrumentation;
+import android.content.Context;
+import android.os.Build;
+import android.os.StrictMode;
+import android.os.strictmode.Violation;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Drives every CartRepository entry point from the main thread with StrictMode disk
+ * detection switched on, and fails if any of them reads or writes on that thread.
+ */
+@RunWith(AndroidJUnit4.class)
+public class CartRepositoryStrictModeTest {
+
+    private final List<Violation> violations = new CopyOnWriteArrayList<>();
+    private Instrumentation instrumentation;
+    private StrictMode.ThreadPolicy previousPolicy;
+
+    @Before
+    public void setUp() {
+        // penaltyListener needs API 28
+        assumeTrue(Build.VERSION.SDK_INT >= Build.VERSION_CODES.P);
+        instrumentation = InstrumentationRegistry.getInstrumentation();
+        instrumentation.runOnMainSync(() -> {
+            previousPolicy = StrictMode.getThreadPolicy();
+            StrictMode.setThreadPolicy(new StrictMode.ThreadPolicy.Builder()
+                    .detectDiskReads()
+                    .detectDiskWrites()
+                    .penaltyListener(Runnable::run, violations::add)
+                    .build());
+        });
+    }
+
+    @After
+    public void tearDown() {
+        if (instrumentation != null) {
+            instrumentation.runOnMainSync(() -> StrictMode.setThreadPolicy(previousPolicy));
+        }
+    }
+
+    @Test
+    public void cartOperations_neverTouchDiskOnMainThread() throws InterruptedException {
+        Context context = instrumentation.getTargetContext();
+        CountDownLatch done = new CountDownLatch(7);
+
+        instrumentation.runOnMainSync(() -> {
+            CartRepository repository = CartRepository.getInstance(context);
+            Product product = new Product(1, "StrictMode Cable", 0, Money.ofCents(150));
+
+            repository.addOrIncrement(product, 1, qty -> done.countDown());
+            repository.loadCartItems(cursor -> {
+                if (cursor != null) cursor.close();
+                done.countDown();
+            });
+            repository.getTotalCartPrice(total -> done.countDown());
+            repository.getTotalItemCount(count -> done.countDown());
+            repository.getTotalQuantity(qty -> done.countDown());
+            repository.updateQuantityById(-1, 2, success -> done.countDown());
+            repository.deleteCartItemById(-1, success -> done.countDown());
+        });
+
+        assertTrue("Repository callbacks timed out", done.await(10, TimeUnit.SECONDS));
+        instrumentation.waitForIdleSync();
+        assertTrue("Main thread touched disk: " + violations, violations.isEmpty());
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.mobstore;
+
+import android.graphics.Typeface;
+import android.os.Bundle;
+import android.widget.Button;
+import android.widget.HorizontalScrollView;
+import android.widget.LinearLayout;
+import android.widget.ScrollView;
+import android.widget.TextView;
+
+import androidx.appcompat.app.AppCompatActivity;
+
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+/**
+ * Shows {@link Metrics#dump} for the running process. The same text is printed by
+ * {@code adb shell dumpsys activity com.example.mobstore/.MetricsActivity} while the screen
+ * is open. Only in debug builds.
+ */
+public class MetricsActivity extends AppCompatActivity {
+
+    private TextView report;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        int padding = Math.round(16 * getResources().getDisplayMetrics().density);
+
+        Button refresh = new Button(this);
+        refresh.setText("Refresh");
+        refresh.setOnClickListener(v -> showReport());
+        Button reset = new Button(this);
+        reset.setText("Reset");
+        reset.setOnClickListener(v -> {
+            Metrics.reset();
+            showReport();
+        });
+        LinearLayout buttons = new LinearLayout(this);
+        buttons.addView(refresh);
+        buttons.addView(reset);
+
+        report = new TextView(this);
+        report.setTypeface(Typeface.MONOSPACE);
+        report.setTextSize(11);
+        report.setTextIsSelectable(true);
+        HorizontalScrollView wide = new HorizontalScrollView(this);
+        wide.addView(report);
+        ScrollView scroll = new ScrollView(this);
+        scroll.addView(wide);
+
+        LinearLayout root = new LinearLayout(this);
+        root.setOrientation(LinearLayout.VERTICAL);
+        root.setPadding(padding, padding, padding, padding);
+        root.addView(buttons);
+        root.addView(scroll);
+        setContentView(root);
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        showReport();
+    }
+
+    private void showReport() {
+        StringWriter text = new StringWriter();
+        Metrics.dump(new PrintWriter(text));
+        report.setText(text.toString());
+    }
+
+    @Override
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(prefix, fd, writer, args);
+        writer.println(prefix + "Metrics:");
+        Metrics.dump(writer);
+    }
+}
@@ -1,8 +1,6 @@
 package com.example.mobstore;
 
 import android.content.Context;
-import android.database.Cursor;
-import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -12,60 +10,80 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
+import androidx.paging.PagingDataAdapter;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
-import java.util.List;
+import java.util.Objects;
 
-public class AccessoryAdapter extends RecyclerView.Adapter<AccessoryAdapter.ViewHolder> {
+/** Shows catalog pages as they arrive from {@link ProductCatalog}. */
+public class AccessoryAdapter extends PagingDataAdapter<Product, AccessoryAdapter.ViewHolder> {
+
+    private static final DiffUtil.ItemCallback<Product> DIFF_CALLBACK = new DiffUtil.ItemCallback<Product>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull Product oldItem, @NonNull Product newItem) {
+            return oldItem.id == newItem.id;
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull Product oldItem, @NonNull Product newItem) {
+            return oldItem.image == newItem.image
+                    && Objects.equals(oldItem.price, newItem.price)
+                    && Objects.equals(oldItem.name, newItem.name);
+        }
+    };
+
+    private static final Metrics.Timer BIND = Metrics.tracedTimer("bind.accessory");
 
     private final Context context;
-    private final List<Product> products;
-    private final DbHelper dbHelper;
+    private final CartRepository cartRepository;
+    private final ImageLoader imageLoader;
 
-    public AccessoryAdapter(Context context, List<Product> products, DbHelper dbHelper) {
+    public AccessoryAdapter(Context context, CartRepository cartRepository) {
+        super(DIFF_CALLBACK);
         this.context = context;
-        this.products = products;
-        this.dbHelper = dbHelper;
+        this.cartRepository = cartRepository;
+        this.imageLoader = ImageLoader.getInstance(context);
     }
 
     @NonNull
     @Override
     public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
-        return new ViewHolder(LayoutInflater.from(context)
+        ViewHolder holder = new ViewHolder(LayoutInflater.from(context)
                 .inflate(R.layout.item_accessory, parent, false));
-    }
 
-    @Override
-    public void onBindViewHolder(@NonNull ViewHolder h, int i) {
-        Product p = products.get(i);
-        h.imageView.setImageResource(p.image);
-        h.textView.setText(p.name);
-
-        h.cartButton.setOnClickListener(v -> {
-            if (dbHelper.isProductInCart(p.name)) {
-                int qty = getQty(p.name) + 1;
-                dbHelper.updateQuantity(p.name, qty);
-                Toast.makeText(context, "Qty: " + qty, Toast.LENGTH_SHORT).show();
-            } else {
-                dbHelper.insertCartItem(p.name, p.image, p.price, 1);
-                Toast.makeText(context, "Added!", Toast.LENGTH_SHORT).show();
-            }
+        // Attached once per holder; the click looks up the product the holder is bound to
+        holder.cartButton.setOnClickListener(v -> {
+            int position = holder.getBindingAdapterPosition();
+            // peek() reads the loaded page without asking the pager to load more
+            Product p = position != RecyclerView.NO_POSITION ? peek(position) : null;
+            if (p == null) return;
+            cartRepository.addOrIncrement(p, 1, qty -> {
+                if (qty == 1) {
+                    Toast.makeText(context, "Added!", Toast.LENGTH_SHORT).show();
+                } else if (qty > 1) {
+                    Toast.makeText(context, "Qty: " + qty, Toast.LENGTH_SHORT).show();
+                } else {
+                    Toast.makeText(context, "Failed to add item", Toast.LENGTH_SHORT).show();
+                }
+            });
         });
+        return holder;
     }
 
-    private int getQty(String name) {
-        Cursor c = dbHelper.getAllCartItems();
-        if (c != null && c.moveToFirst()) {
-            do {
-                if (name.equals(c.getString(c.getColumnIndexOrThrow("productName"))))
-                    return c.getInt(c.getColumnIndexOrThrow("quantity"));
-            } while (c.moveToNext());
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder h, int i) {
+        Product p = getItem(i);
+        if (p == null) return;
+        long start = BIND.start();
+        try {
+            imageLoader.load(h.imageView, p.image);
+            h.textView.setText(p.name);
+        } finally {
+            BIND.stop(start);
         }
-        return 0;
     }
 
-    @Override public int getItemCount() { return products.size(); }
-
     static class ViewHolder extends RecyclerView.ViewHolder {
         ImageView imageView = itemView.findViewById(R.id.itemImage);
         TextView textView = itemView.findViewById(R.id.itemName);
@@ -0,0 +1,31 @@
+package com.example.mobstore;
+
+import android.util.Log;
+
+/**
+ * Logging gated on the build's {@code BuildConfig.LOG_LEVEL}: debug builds log from DEBUG up,
+ * release builds only warnings and errors. The level flags are compile-time constants, so
+ * a call site that builds its message writes {@code if (AppLog.DEBUG) AppLog.d(...)} and the
+ * whole statement, string concatenation included, is compiled out when the level is off.
+ */
+final class AppLog {
+
+    static final boolean DEBUG = BuildConfig.LOG_LEVEL <= Log.DEBUG;
+    static final boolean WARN = BuildConfig.LOG_LEVEL <= Log.WARN;
+
+    private AppLog() {
+    }
+
+    static void d(String tag, String message) {
+        if (DEBUG) Log.d(tag, message);
+    }
+
+    static void w(String tag, String message) {
+        if (WARN) Log.w(tag, message);
+    }
+
+    /** Errors are always logged; they are rare and their messages are built only on failure. */
+    static void e(String tag, String message) {
+        Log.e(tag, message);
+    }
+}
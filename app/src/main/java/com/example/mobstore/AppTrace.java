@@ -0,0 +1,83 @@
+package com.example.mobstore;
+
+import androidx.tracing.Trace;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Systrace/Perfetto sections for the cart and checkout flows, so jank in a trace can be tied to
+ * the query or bind behind it. Sections are emitted only when {@code BuildConfig.TRACE} is set
+ * (debug and benchmark builds); release builds compile every call down to a constant branch.
+ *
+ * <p>Synchronous sections nest per thread and must be ended on the thread that began them, in
+ * a {@code finally} so an exception cannot leave one open. Work that hops threads, such as a
+ * cart load that is requested on the main thread and shown when the result comes back, uses an
+ * async section keyed by the cookie {@link #beginAsync} returns.
+ */
+final class AppTrace {
+
+    static final boolean ENABLED = BuildConfig.TRACE;
+
+    /** Where sections go; replaced in tests to check that every section is closed. */
+    interface Sink {
+        void begin(String name);
+
+        void end();
+
+        void beginAsync(String name, int cookie);
+
+        void endAsync(String name, int cookie);
+    }
+
+    static final Sink ANDROIDX = new Sink() {
+        @Override
+        public void begin(String name) {
+            Trace.beginSection(name);
+        }
+
+        @Override
+        public void end() {
+            Trace.endSection();
+        }
+
+        @Override
+        public void beginAsync(String name, int cookie) {
+            Trace.beginAsyncSection(name, cookie);
+        }
+
+        @Override
+        public void endAsync(String name, int cookie) {
+            Trace.endAsyncSection(name, cookie);
+        }
+    };
+
+    private static final AtomicInteger nextCookie = new AtomicInteger();
+    private static volatile Sink sink = ANDROIDX;
+
+    private AppTrace() {
+    }
+
+    static void setSink(Sink newSink) {
+        sink = newSink;
+    }
+
+    static void begin(String name) {
+        if (ENABLED) sink.begin(name);
+    }
+
+    static void end() {
+        if (ENABLED) sink.end();
+    }
+
+    /** Starts an async section and returns the cookie to end it with. */
+    static int beginAsync(String name) {
+        if (!ENABLED) return 0;
+        int cookie = nextCookie.incrementAndGet();
+        sink.beginAsync(name, cookie);
+        return cookie;
+    }
+
+    static void endAsync(String name, int cookie) {
+        if (ENABLED) sink.endAsync(name, cookie);
+    }
+}
@@ -2,9 +2,7 @@ package com.example.mobstore;
 
 import android.content.Context;
 import android.content.Intent;
-import android.database.Cursor;
 import android.text.InputType;
-import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -16,134 +14,98 @@ import android.widget.Toast;
 
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AlertDialog;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 
-public class CartAdapter extends RecyclerView.Adapter<CartAdapter.ViewHolder> {
+public class CartAdapter extends ListAdapter<CartItem, CartAdapter.ViewHolder> {
 
-    private Context context;
-    private Cursor cursor;
-    private DbHelper dbHelper;
-    private OnCartUpdateListener updateListener;
+    // Rows are identified by their cart id; CartItem is immutable, so equals() covers contents
+    static final DiffUtil.ItemCallback<CartItem> DIFF_CALLBACK = new DiffUtil.ItemCallback<CartItem>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull CartItem oldItem, @NonNull CartItem newItem) {
+            return oldItem.id == newItem.id;
+        }
 
-    public interface OnCartUpdateListener {
-        void onCartUpdated();
-    }
+        @Override
+        public boolean areContentsTheSame(@NonNull CartItem oldItem, @NonNull CartItem newItem) {
+            return oldItem.equals(newItem);
+        }
+    };
 
-    public CartAdapter(Context context, Cursor cursor, DbHelper dbHelper, OnCartUpdateListener listener) {
-        this.context = context;
-        this.cursor = cursor;
-        this.dbHelper = dbHelper;
-        this.updateListener = listener;
-        Log.d("CartAdapter", "Adapter created with cursor count: " + (cursor != null ? cursor.getCount() : "null"));
-    }
+    private static final Metrics.Timer BIND = Metrics.tracedTimer("bind.cart");
 
-    public Cursor getCursor() {
-        return cursor;
-    }
+    private final Context context;
+    private final CartRepository cartRepository;
+    private final ImageLoader imageLoader;
 
-    public void swapCursor(Cursor newCursor) {
-        Cursor oldCursor = cursor;
-        this.cursor = newCursor;
-
-        if (oldCursor != null && !oldCursor.isClosed()) {
-            oldCursor.close();
-        }
+    // Edits made here come back to the screen as cart change events, so nothing is reloaded
+    public CartAdapter(Context context, CartRepository cartRepository) {
+        super(DIFF_CALLBACK);
+        this.context = context;
+        this.cartRepository = cartRepository;
+        this.imageLoader = ImageLoader.getInstance(context);
+        setHasStableIds(true);
+    }
 
-        notifyDataSetChanged();
+    @Override
+    public long getItemId(int position) {
+        return getItem(position).id;
     }
 
     @NonNull
     @Override
     public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
-        try {
-            View view = LayoutInflater.from(context).inflate(R.layout.item_cart, parent, false);
-            Log.d("CartAdapter", "ViewHolder created");
-            return new ViewHolder(view);
-        } catch (Exception e) {
-            Log.e("CartAdapter", "Error creating ViewHolder: " + e.getMessage());
-            throw e;
-        }
-    }
+        View view = LayoutInflater.from(context).inflate(R.layout.item_cart, parent, false);
+        ViewHolder holder = new ViewHolder(view);
 
-    @Override
-    public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
-        try {
-            if (cursor == null) {
-                Log.e("CartAdapter", "Cursor is null in onBindViewHolder");
-                holder.name.setText("Error: No data");
-                return;
-            }
+        // Listeners are attached once per holder and look up the row they are bound to on click
+        holder.updateBtn.setOnClickListener(v -> {
+            CartItem item = itemAt(holder);
+            if (item != null) showUpdateDialog((int) item.id, item.productName, item.quantity);
+        });
 
-            if (!cursor.moveToPosition(position)) {
-                Log.e("CartAdapter", "Failed to move cursor to position: " + position);
-                holder.name.setText("Error loading item");
-                return;
-            }
+        holder.deleteBtn.setOnClickListener(v -> {
+            CartItem item = itemAt(holder);
+            if (item != null) showDeleteDialog((int) item.id, item.productName);
+        });
 
-            // Get column indices
-            int idCol = cursor.getColumnIndex("id");
-            int nameCol = cursor.getColumnIndex("productName");
-            int imgCol = cursor.getColumnIndex("productImage");
-            int priceCol = cursor.getColumnIndex("price");
-            int qtyCol = cursor.getColumnIndex("quantity");
-
-            // Check if columns exist
-            if (idCol == -1 || nameCol == -1 || imgCol == -1 || priceCol == -1 || qtyCol == -1) {
-                Log.e("CartAdapter", "Column not found!");
-                holder.name.setText("Database error");
-                return;
-            }
+        // PURCHASE/BUY BUTTON - Go to purchase page for this single item
+        holder.purchaseBtn.setOnClickListener(v -> {
+            CartItem item = itemAt(holder);
+            if (item == null) return;
+            Intent intent = new Intent(context, PurchasePage.class);
+            intent.putExtra("singleItem", true);
+            intent.putExtra("itemId", (int) item.id);
+            intent.putExtra("itemName", item.productName);
+            intent.putExtra("itemPriceCents", item.price.cents());
+            intent.putExtra("itemQuantity", item.quantity);
+            intent.putExtra("itemImage", item.productImage);
+            context.startActivity(intent);
+        });
 
-            // Get values
-            int itemId = cursor.getInt(idCol);
-            String name = cursor.getString(nameCol);
-            int image = cursor.getInt(imgCol);
-            double price = cursor.getDouble(priceCol);
-            int qty = cursor.getInt(qtyCol);
+        return holder;
+    }
 
-            Log.d("CartAdapter", "Binding item: " + name + " | $" + price + " | Qty: " + qty);
+    private CartItem itemAt(ViewHolder holder) {
+        int position = holder.getBindingAdapterPosition();
+        return position != RecyclerView.NO_POSITION ? getItem(position) : null;
+    }
 
-            // Set values to views
-            holder.name.setText(name != null ? name : "Unknown");
-            holder.price.setText(String.format("$%.2f", price));
-            holder.quantity.setText("Qty: " + qty);
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
+        long start = BIND.start();
+        try {
+            CartItem item = getItem(position);
 
-            // Set image with error handling
-            try {
-                holder.image.setImageResource(image);
-            } catch (Exception e) {
-                Log.e("CartAdapter", "Error setting image: " + e.getMessage());
-                holder.image.setImageResource(android.R.drawable.ic_menu_gallery);
-            }
+            holder.name.setText(item.productName != null ? item.productName : "Unknown");
+            MoneyFormatter.setText(holder.price, item.price.cents(), holder.priceChars);
+            holder.quantity.setText("Qty: " + item.quantity);
 
-            // UPDATE BUTTON - Show dialog to change quantity
-            holder.updateBtn.setOnClickListener(v -> {
-                showUpdateDialog(itemId, name, qty);
-            });
-
-            // DELETE BUTTON - Remove item from cart
-            holder.deleteBtn.setOnClickListener(v -> {
-                showDeleteDialog(itemId, name);
-            });
-
-            // PURCHASE/BUY BUTTON - Go to purchase page for this single item
-            holder.purchaseBtn.setOnClickListener(v -> {
-                Intent intent = new Intent(context, PurchasePage.class);
-                intent.putExtra("singleItem", true);
-                intent.putExtra("itemId", itemId);
-                intent.putExtra("itemName", name);
-                intent.putExtra("itemPrice", price);
-                intent.putExtra("itemQuantity", qty);
-                intent.putExtra("itemImage", image);
-                context.startActivity(intent);
-            });
-
-        } catch (Exception e) {
-            Log.e("CartAdapter", "Error in onBindViewHolder: " + e.getMessage());
-            e.printStackTrace();
-            holder.name.setText("Error loading item");
-            holder.price.setText("$0.00");
-            holder.quantity.setText("Qty: 0");
+            // Decoded off the main thread; falls back to a placeholder if the image is missing
+            imageLoader.load(holder.image, item.productImage);
+        } finally {
+            BIND.stop(start);
         }
     }
 
@@ -174,14 +136,13 @@ public class CartAdapter extends RecyclerView.Adapter<CartAdapter.ViewHolder> {
                     return;
                 }
 
-                if (dbHelper.updateQuantityById(itemId, newQty)) {
-                    Toast.makeText(context, "Quantity updated to " + newQty, Toast.LENGTH_SHORT).show();
-                    if (updateListener != null) {
-                        updateListener.onCartUpdated();
+                cartRepository.updateQuantityById(itemId, newQty, success -> {
+                    if (success) {
+                        Toast.makeText(context, "Quantity updated to " + newQty, Toast.LENGTH_SHORT).show();
+                    } else {
+                        Toast.makeText(context, "Failed to update quantity", Toast.LENGTH_SHORT).show();
                     }
-                } else {
-                    Toast.makeText(context, "Failed to update quantity", Toast.LENGTH_SHORT).show();
-                }
+                });
             } catch (NumberFormatException e) {
                 Toast.makeText(context, "Invalid quantity", Toast.LENGTH_SHORT).show();
             }
@@ -197,53 +158,34 @@ public class CartAdapter extends RecyclerView.Adapter<CartAdapter.ViewHolder> {
                 .setTitle("Delete Item")
                 .setMessage("Are you sure you want to remove " + itemName + " from cart?")
                 .setPositiveButton("Delete", (dialog, which) -> {
-                    if (dbHelper.deleteCartItemById(itemId)) {
-                        Toast.makeText(context, itemName + " removed from cart", Toast.LENGTH_SHORT).show();
-                        if (updateListener != null) {
-                            updateListener.onCartUpdated();
+                    cartRepository.deleteCartItemById(itemId, success -> {
+                        if (success) {
+                            Toast.makeText(context, itemName + " removed from cart", Toast.LENGTH_SHORT).show();
+                        } else {
+                            Toast.makeText(context, "Failed to delete item", Toast.LENGTH_SHORT).show();
                         }
-                    } else {
-                        Toast.makeText(context, "Failed to delete item", Toast.LENGTH_SHORT).show();
-                    }
+                    });
                 })
                 .setNegativeButton("Cancel", null)
                 .show();
     }
 
-    @Override
-    public int getItemCount() {
-        int count = (cursor != null) ? cursor.getCount() : 0;
-        Log.d("CartAdapter", "getItemCount: " + count);
-        return count;
-    }
-
     public static class ViewHolder extends RecyclerView.ViewHolder {
         ImageView image;
         TextView name, price, quantity;
         Button updateBtn, deleteBtn, purchaseBtn;
+        // Reused on every bind so formatting the price allocates nothing
+        final char[] priceChars = new char[MoneyFormatter.MAX_CHARS];
 
         public ViewHolder(@NonNull View itemView) {
             super(itemView);
-            try {
-                image = itemView.findViewById(R.id.cartItemImage);
-                name = itemView.findViewById(R.id.cartItemName);
-                price = itemView.findViewById(R.id.cartItemPrice);
-                quantity = itemView.findViewById(R.id.cartItemQuantity);
-                updateBtn = itemView.findViewById(R.id.update);
-                deleteBtn = itemView.findViewById(R.id.delete);
-                purchaseBtn = itemView.findViewById(R.id.purchase);
-
-                if (image == null) Log.e("CartAdapter", "cartItemImage not found");
-                if (name == null) Log.e("CartAdapter", "cartItemName not found");
-                if (price == null) Log.e("CartAdapter", "cartItemPrice not found");
-                if (quantity == null) Log.e("CartAdapter", "cartItemQuantity not found");
-                if (updateBtn == null) Log.e("CartAdapter", "update button not found");
-                if (deleteBtn == null) Log.e("CartAdapter", "delete button not found");
-                if (purchaseBtn == null) Log.e("CartAdapter", "purchase button not found");
-
-            } catch (Exception e) {
-                Log.e("CartAdapter", "Error in ViewHolder constructor: " + e.getMessage());
-            }
+            image = itemView.findViewById(R.id.cartItemImage);
+            name = itemView.findViewById(R.id.cartItemName);
+            price = itemView.findViewById(R.id.cartItemPrice);
+            quantity = itemView.findViewById(R.id.cartItemQuantity);
+            updateBtn = itemView.findViewById(R.id.update);
+            deleteBtn = itemView.findViewById(R.id.delete);
+            purchaseBtn = itemView.findViewById(R.id.purchase);
         }
     }
 }
@@ -0,0 +1,43 @@
+package com.example.mobstore;
+
+/**
+ * One committed change to a cart row. Inserted and updated rows carry their full new state,
+ * so applying a change twice, or to a copy that already has it, leaves the same result.
+ */
+public final class CartChange {
+
+    public enum Type { INSERTED, UPDATED, DELETED, CLEARED }
+
+    public final Type type;
+    /** The changed row, or 0 for {@link Type#CLEARED}. */
+    public final long rowId;
+    /** The row as it now is; null for {@link Type#DELETED} and {@link Type#CLEARED}. */
+    public final CartItem item;
+
+    private CartChange(Type type, long rowId, CartItem item) {
+        this.type = type;
+        this.rowId = rowId;
+        this.item = item;
+    }
+
+    static CartChange inserted(CartItem item) {
+        return new CartChange(Type.INSERTED, item.id, item);
+    }
+
+    static CartChange updated(CartItem item) {
+        return new CartChange(Type.UPDATED, item.id, item);
+    }
+
+    static CartChange deleted(long rowId) {
+        return new CartChange(Type.DELETED, rowId, null);
+    }
+
+    static CartChange cleared() {
+        return new CartChange(Type.CLEARED, 0, null);
+    }
+
+    @Override
+    public String toString() {
+        return type + " " + rowId;
+    }
+}
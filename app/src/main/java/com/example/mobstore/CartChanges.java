@@ -0,0 +1,58 @@
+package com.example.mobstore;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes every committed cart write as a list of {@link CartChange}s. Each commit gets the
+ * next version number, and listeners receive commits on the main thread in version order.
+ * A screen that remembers the last version it applied can tell on resume whether anything
+ * changed while it was away.
+ */
+public final class CartChanges {
+
+    public interface Listener {
+        /** Called on the main thread once per commit. */
+        void onCartChanged(long version, List<CartChange> changes);
+    }
+
+    private static final Metrics.Counter PUBLISHED = Metrics.counter("cart.changesPublished");
+
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final AtomicLong version = new AtomicLong();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /** The version of the latest commit, 0 before the first. */
+    public long version() {
+        return version.get();
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /** Called by the writer after a transaction commits, on the thread that committed it. */
+    void publish(List<CartChange> changes) {
+        if (changes.isEmpty()) return;
+        List<CartChange> published = Collections.unmodifiableList(changes);
+        PUBLISHED.add(changes.size());
+        // Numbered and posted under one lock so versions reach the main thread in order
+        synchronized (this) {
+            long v = version.incrementAndGet();
+            mainHandler.post(() -> {
+                for (Listener listener : listeners) {
+                    listener.onCartChanged(v, published);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.mobstore;
+
+import java.util.Objects;
+
+/**
+ * Immutable snapshot of one row of the cart table.
+ */
+public final class CartItem {
+
+    public final long id;
+    /** The product's id in the catalog, or 0 for a row not yet linked to a product. */
+    public final long productId;
+    public final String productName;
+    public final int productImage;
+    public final Money price;
+    public final int quantity;
+
+    public CartItem(long id, long productId, String productName, int productImage, Money price, int quantity) {
+        this.id = id;
+        this.productId = productId;
+        this.productName = productName;
+        this.productImage = productImage;
+        this.price = price;
+        this.quantity = quantity;
+    }
+
+    public CartItem withQuantity(int newQuantity) {
+        return new CartItem(id, productId, productName, productImage, price, newQuantity);
+    }
+
+    /** Line total in cents. */
+    long subtotalCents() {
+        return price.cents() * quantity;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof CartItem)) return false;
+        CartItem other = (CartItem) o;
+        return id == other.id
+                && productId == other.productId
+                && productImage == other.productImage
+                && Objects.equals(price, other.price)
+                && quantity == other.quantity
+                && Objects.equals(productName, other.productName);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, productId, productName, productImage, price, quantity);
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.mobstore;
+
+import android.util.LongSparseArray;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A screen's own copy of the cart, kept current by applying {@link CartChange}s instead of
+ * reloading. Main thread only. Changes at or below the version of the last snapshot are
+ * already part of it and are skipped.
+ */
+final class CartLines {
+
+    /** The cart as it stood at one change version. */
+    static final class Snapshot {
+        final long version;
+        final List<CartItem> items;
+
+        Snapshot(long version, List<CartItem> items) {
+            this.version = version;
+            this.items = items;
+        }
+    }
+
+    private final LongSparseArray<CartItem> items = new LongSparseArray<>();
+    private long version = -1;
+    private long totalCents;
+    private int totalQuantity;
+
+    /** Replaces the contents with the snapshot. */
+    void reset(Snapshot snapshot) {
+        items.clear();
+        totalCents = 0;
+        totalQuantity = 0;
+        for (CartItem item : snapshot.items) {
+            put(item);
+        }
+        version = snapshot.version;
+    }
+
+    /** @return true if the lines changed */
+    boolean apply(long version, List<CartChange> changes) {
+        // Until the first snapshot arrives there is nothing to apply the change to
+        if (!isLoaded() || version <= this.version) return false;
+        this.version = version;
+        for (CartChange change : changes) {
+            switch (change.type) {
+                case INSERTED:
+                case UPDATED:
+                    remove(change.rowId);
+                    put(change.item);
+                    break;
+                case DELETED:
+                    remove(change.rowId);
+                    break;
+                case CLEARED:
+                    items.clear();
+                    totalCents = 0;
+                    totalQuantity = 0;
+                    break;
+            }
+        }
+        return true;
+    }
+
+    /** True once a snapshot has been loaded. */
+    boolean isLoaded() {
+        return version >= 0;
+    }
+
+    /** True if no commit has happened since this copy was last brought up to date. */
+    boolean isCurrent(CartChanges changes) {
+        return isLoaded() && version >= changes.version();
+    }
+
+    CartItem get(long rowId) {
+        return items.get(rowId);
+    }
+
+    int size() {
+        return items.size();
+    }
+
+    long totalCents() {
+        return totalCents;
+    }
+
+    int totalQuantity() {
+        return totalQuantity;
+    }
+
+    /** A new list of the rows in id order, ready for ListAdapter.submitList. */
+    List<CartItem> toList() {
+        List<CartItem> list = new ArrayList<>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            list.add(items.valueAt(i));
+        }
+        return list;
+    }
+
+    private void put(CartItem item) {
+        items.put(item.id, item);
+        totalCents += item.subtotalCents();
+        totalQuantity += item.quantity;
+    }
+
+    private void remove(long rowId) {
+        CartItem old = items.get(rowId);
+        if (old == null) return;
+        items.remove(rowId);
+        totalCents -= old.subtotalCents();
+        totalQuantity -= old.quantity;
+    }
+}
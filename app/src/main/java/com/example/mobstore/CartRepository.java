@@ -0,0 +1,184 @@
+package com.example.mobstore;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs every cart database call off the main thread.
+ * Writes go through a single bounded writer so they apply in order; reads use a small pool.
+ * Results are always delivered back on the main thread. Every call ends in its callback: if the
+ * writer's queue is full the call is dropped and the callback gets the failure value the
+ * matching DbHelper method returns, so the screen waiting on it is never left hanging.
+ */
+public class CartRepository {
+
+    private static final int READ_THREADS = 2;
+    private static final int MAX_PENDING_WRITES = 64;
+
+    private final DbHelper dbHelper;
+    private final CheckoutService checkoutService;
+    private final ExecutorService writeExecutor;
+    private final ExecutorService readExecutor;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    public interface Callback<T> {
+        void onResult(T result);
+    }
+
+    private interface Task<T> {
+        T run();
+    }
+
+    /** The app-wide repository, owned by {@link MobStoreApp}. */
+    public static CartRepository getInstance(Context context) {
+        return MobStoreApp.from(context).getCartRepository();
+    }
+
+    CartRepository(DbHelper dbHelper) {
+        this(dbHelper,
+                new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                        new LinkedBlockingQueue<>(MAX_PENDING_WRITES), threadFactory("cart-writer")),
+                new ThreadPoolExecutor(READ_THREADS, READ_THREADS, 0L, TimeUnit.MILLISECONDS,
+                        new LinkedBlockingQueue<>(), threadFactory("cart-reader")));
+    }
+
+    // For tests that need to fill the writer's queue
+    CartRepository(DbHelper dbHelper, ExecutorService writeExecutor, ExecutorService readExecutor) {
+        this.dbHelper = dbHelper;
+        this.checkoutService = new CheckoutService(dbHelper);
+        this.writeExecutor = writeExecutor;
+        this.readExecutor = readExecutor;
+    }
+
+    private static ThreadFactory threadFactory(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(() -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                r.run();
+            }, name + "-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    // ---- Reads ----
+
+    /**
+     * Loads all cart rows. The cursor window is filled on the reader thread, so the caller
+     * can bind from it without touching disk. The caller owns the cursor and must close it.
+     */
+    public void loadCartItems(Callback<Cursor> callback) {
+        submit(readExecutor, () -> {
+            Cursor cursor = dbHelper.getAllCartItems();
+            if (cursor != null) {
+                cursor.getCount();
+            }
+            return cursor;
+        }, null, callback);
+    }
+
+    /** Loads an immutable snapshot of the cart, in row id order. */
+    public void loadCartSnapshot(Callback<List<CartItem>> callback) {
+        submit(readExecutor, dbHelper::getCartItems, Collections.emptyList(), callback);
+    }
+
+    /**
+     * Loads the cart along with the change version it reflects. Runs on the writer, so every
+     * change committed after the snapshot is delivered after it too. Delivers null if the writer
+     * is too backed up to take the load; the caller's copy then stays stale until it asks again.
+     */
+    void loadCartLines(Callback<CartLines.Snapshot> callback) {
+        submit(writeExecutor, () -> {
+            long version = dbHelper.changes().version();
+            return new CartLines.Snapshot(version, dbHelper.getCartItems());
+        }, null, callback);
+    }
+
+    /** Committed cart writes, delivered on the main thread. */
+    public CartChanges changes() {
+        return dbHelper.changes();
+    }
+
+    public void getTotalCartPrice(Callback<Money> callback) {
+        submit(readExecutor, dbHelper::getTotalCartPrice, Money.ZERO, callback);
+    }
+
+    public void getTotalItemCount(Callback<Integer> callback) {
+        submit(readExecutor, dbHelper::getTotalItemCount, 0, callback);
+    }
+
+    public void getTotalQuantity(Callback<Integer> callback) {
+        submit(readExecutor, dbHelper::getTotalQuantity, 0, callback);
+    }
+
+    // ---- Writes ----
+
+    public void addOrIncrement(Product product, int delta, Callback<Integer> callback) {
+        submit(writeExecutor, () -> dbHelper.addOrIncrement(product, delta), -1, callback);
+    }
+
+    public void updateQuantityById(int id, int newQuantity, Callback<Boolean> callback) {
+        submit(writeExecutor, () -> dbHelper.updateQuantityById(id, newQuantity), false, callback);
+    }
+
+    public void deleteCartItemById(int id, Callback<Boolean> callback) {
+        submit(writeExecutor, () -> dbHelper.deleteCartItemById(id), false, callback);
+    }
+
+    public void deleteByIds(long[] ids, Callback<Integer> callback) {
+        submit(writeExecutor, () -> dbHelper.deleteByIds(ids), 0, callback);
+    }
+
+    public void updateQuantities(Map<Long, Integer> quantities, Callback<Integer> callback) {
+        submit(writeExecutor, () -> dbHelper.updateQuantities(quantities), 0, callback);
+    }
+
+    /** Runs on the writer, so a checkout is ordered after every cart edit queued before it. */
+    public void checkout(CheckoutService.Request request, Callback<CheckoutService.Result> callback) {
+        submit(writeExecutor, () -> checkoutService.checkout(request),
+                CheckoutService.Result.of(CheckoutService.Status.FAILED), callback);
+    }
+
+    /**
+     * Switches to {@code userId}'s cart, first merging the guest cart into it if asked. Runs on
+     * the writer, so edits queued before the switch land in the old cart and later ones in the new.
+     */
+    public void switchUser(long userId, boolean mergeGuestCart, Callback<Boolean> callback) {
+        submit(writeExecutor, () -> dbHelper.switchUser(userId, mergeGuestCart), false, callback);
+    }
+
+    public void clearCart(Callback<Boolean> callback) {
+        submit(writeExecutor, dbHelper::clearCart, false, callback);
+    }
+
+    private <T> void submit(ExecutorService executor, Task<T> task, T failure, Callback<T> callback) {
+        try {
+            executor.execute(() -> {
+                T result = task.run();
+                if (callback != null) {
+                    mainHandler.post(() -> callback.onResult(result));
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            AppLog.e("CartRepository", "Too many pending cart operations: " + e.getMessage());
+            if (callback != null) {
+                mainHandler.post(() -> callback.onResult(failure));
+            }
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.example.mobstore;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+/**
+ * Lazily compiled statements for DbHelper's hot queries, tied to one open database.
+ * A statement keeps its bind arguments between calls, so callers must hold the
+ * statement's monitor while binding and executing it.
+ *
+ * <p>Every statement is scoped to one user's cart. Lookups by product bind the user first
+ * and seek on the (user_id, product_id) index; lookups by row id seek on the primary key
+ * and check the owner.
+ */
+final class CartStatements {
+
+    private static final String INSERT_COLUMNS =
+            "INSERT INTO cart(user_id, product_id, productName, productImage, price_cents, quantity)" +
+                    " VALUES (?, ?, ?, ?, ?, ?)";
+
+    private final SQLiteDatabase db;
+
+    private SQLiteStatement insert;
+    private SQLiteStatement upsert;
+    private SQLiteStatement incrementByProduct;
+    private SQLiteStatement updateQuantityById;
+    private SQLiteStatement updateQuantityByProduct;
+    private SQLiteStatement deleteById;
+    private SQLiteStatement deleteByProduct;
+    private SQLiteStatement idByProduct;
+    private SQLiteStatement quantityByProduct;
+    private SQLiteStatement quantityById;
+    private SQLiteStatement countRows;
+    private SQLiteStatement sumQuantity;
+    private SQLiteStatement sumPriceCents;
+
+    CartStatements(SQLiteDatabase db) {
+        this.db = db;
+    }
+
+    boolean isFor(SQLiteDatabase other) {
+        return db == other && db.isOpen();
+    }
+
+    synchronized SQLiteStatement insert() {
+        if (insert == null) insert = db.compileStatement(INSERT_COLUMNS);
+        return insert;
+    }
+
+    /**
+     * Insert-or-increment keyed on user and product; needs SQLite 3.24 (API 30). The name and image
+     * follow the catalog, so a renamed product shows its new name on the existing row.
+     */
+    synchronized SQLiteStatement upsert() {
+        if (upsert == null) {
+            upsert = db.compileStatement(INSERT_COLUMNS +
+                    " ON CONFLICT(user_id, product_id) DO UPDATE SET quantity = quantity + excluded.quantity," +
+                    " productName = excluded.productName, productImage = excluded.productImage");
+        }
+        return upsert;
+    }
+
+    /** Binds: delta, name, image, user id, product id. */
+    synchronized SQLiteStatement incrementByProduct() {
+        if (incrementByProduct == null) {
+            incrementByProduct = db.compileStatement(
+                    "UPDATE cart SET quantity = quantity + ?, productName = ?, productImage = ? WHERE user_id = ? AND product_id = ?");
+        }
+        return incrementByProduct;
+    }
+
+    /** Binds: quantity, row id, user id. */
+    synchronized SQLiteStatement updateQuantityById() {
+        if (updateQuantityById == null) {
+            updateQuantityById = db.compileStatement("UPDATE cart SET quantity = ? WHERE id = ? AND user_id = ?");
+        }
+        return updateQuantityById;
+    }
+
+    /** Binds: quantity, user id, product id. */
+    synchronized SQLiteStatement updateQuantityByProduct() {
+        if (updateQuantityByProduct == null) {
+            updateQuantityByProduct = db.compileStatement(
+                    "UPDATE cart SET quantity = ? WHERE user_id = ? AND product_id = ?");
+        }
+        return updateQuantityByProduct;
+    }
+
+    /** Binds: row id, user id. */
+    synchronized SQLiteStatement deleteById() {
+        if (deleteById == null) deleteById = db.compileStatement("DELETE FROM cart WHERE id = ? AND user_id = ?");
+        return deleteById;
+    }
+
+    /** Binds: user id, product id. */
+    synchronized SQLiteStatement deleteByProduct() {
+        if (deleteByProduct == null) {
+            deleteByProduct = db.compileStatement("DELETE FROM cart WHERE user_id = ? AND product_id = ?");
+        }
+        return deleteByProduct;
+    }
+
+    // The scalar lookups are wrapped in IFNULL so simpleQueryForLong always gets a row
+
+    /** Row id for a user and product id, or -1. */
+    synchronized SQLiteStatement idByProduct() {
+        if (idByProduct == null) {
+            idByProduct = db.compileStatement(
+                    "SELECT IFNULL((SELECT id FROM cart WHERE user_id = ? AND product_id = ?), -1)");
+        }
+        return idByProduct;
+    }
+
+    /** Quantity for a user and product id, or 0. */
+    synchronized SQLiteStatement quantityByProduct() {
+        if (quantityByProduct == null) {
+            quantityByProduct = db.compileStatement(
+                    "SELECT IFNULL((SELECT quantity FROM cart WHERE user_id = ? AND product_id = ?), 0)");
+        }
+        return quantityByProduct;
+    }
+
+    /** Quantity for a row id and user id, or -1. */
+    synchronized SQLiteStatement quantityById() {
+        if (quantityById == null) {
+            quantityById = db.compileStatement(
+                    "SELECT IFNULL((SELECT quantity FROM cart WHERE id = ? AND user_id = ?), -1)");
+        }
+        return quantityById;
+    }
+
+    // The aggregates bind the user id and scan only that user's range of the index
+
+    synchronized SQLiteStatement countRows() {
+        if (countRows == null) countRows = db.compileStatement("SELECT COUNT(*) FROM cart WHERE user_id = ?");
+        return countRows;
+    }
+
+    synchronized SQLiteStatement sumQuantity() {
+        if (sumQuantity == null) {
+            sumQuantity = db.compileStatement("SELECT IFNULL(SUM(quantity), 0) FROM cart WHERE user_id = ?");
+        }
+        return sumQuantity;
+    }
+
+    synchronized SQLiteStatement sumPriceCents() {
+        if (sumPriceCents == null) {
+            sumPriceCents = db.compileStatement("SELECT IFNULL(SUM(price_cents * quantity), 0) FROM cart WHERE user_id = ?");
+        }
+        return sumPriceCents;
+    }
+
+    synchronized void close() {
+        SQLiteStatement[] all = {insert, upsert, incrementByProduct, updateQuantityById, updateQuantityByProduct,
+                deleteById, deleteByProduct, idByProduct, quantityByProduct, quantityById, countRows, sumQuantity,
+                sumPriceCents};
+        for (SQLiteStatement statement : all) {
+            if (statement != null) statement.close();
+        }
+        insert = upsert = incrementByProduct = updateQuantityById = updateQuantityByProduct = null;
+        deleteById = deleteByProduct = idByProduct = quantityByProduct = quantityById = null;
+        countRows = sumQuantity = sumPriceCents = null;
+    }
+}
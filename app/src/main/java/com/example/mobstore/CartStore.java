@@ -0,0 +1,153 @@
+package com.example.mobstore;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.LongSparseArray;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Process-wide, write-through copy of the current user's cart.
+ * DbHelper loads it once and reports every committed mutation to it, so the aggregate
+ * getters are O(1) and never touch disk. Mutation hooks set absolute row state rather
+ * than apply deltas, which keeps them safe to replay against a freshly loaded copy.
+ */
+public final class CartStore {
+
+    private static final CartStore INSTANCE = new CartStore();
+    private static final Metrics.Timer LOAD = Metrics.tracedTimer("cartStore.load");
+
+    private final LongSparseArray<CartItem> items = new LongSparseArray<>();
+    // product id -> row id; a product has at most one row per cart
+    private final LongSparseArray<Long> rowByProduct = new LongSparseArray<>();
+    private boolean loaded;
+    private long loadedUser;
+    private long totalCents;
+    private int totalQuantity;
+
+    public static CartStore getInstance() {
+        return INSTANCE;
+    }
+
+    CartStore() {
+    }
+
+    /** Reads the user's whole cart into memory the first time it is needed, or when the user changes. */
+    synchronized void ensureLoaded(SQLiteDatabase db, long userId) {
+        if (loaded && loadedUser == userId) return;
+        long start = LOAD.start();
+        clear();
+        Cursor c = null;
+        try {
+            c = db.rawQuery("SELECT id, product_id, productName, productImage, price_cents, quantity FROM cart" +
+                    " WHERE user_id = ?", new String[]{String.valueOf(userId)});
+            while (c.moveToNext()) {
+                add(new CartItem(c.getLong(0), c.getLong(1), c.getString(2), c.getInt(3),
+                        Money.ofCents(c.getLong(4)), c.getInt(5)));
+            }
+            loaded = true;
+            loadedUser = userId;
+            if (AppLog.DEBUG) AppLog.d("CartStore", "Loaded " + items.size() + " cart rows");
+        } finally {
+            if (c != null) c.close();
+            LOAD.stop(start);
+        }
+    }
+
+    synchronized boolean isLoaded() {
+        return loaded;
+    }
+
+    synchronized boolean isLoadedFor(long userId) {
+        return loaded && loadedUser == userId;
+    }
+
+    /** Drops the in-memory copy; the next read reloads it from disk. */
+    synchronized void invalidate() {
+        loaded = false;
+        clear();
+    }
+
+    // ---- Mutation hooks, called by DbHelper after a write has committed ----
+
+    synchronized void onRowWritten(CartItem item) {
+        if (!loaded) return;
+        remove(item.id);
+        add(item);
+    }
+
+    synchronized void onDeleted(long id) {
+        if (!loaded) return;
+        remove(id);
+    }
+
+    synchronized void onCleared() {
+        if (!loaded) return;
+        clear();
+    }
+
+    // ---- Reads ----
+
+    synchronized CartItem get(long id) {
+        return items.get(id);
+    }
+
+    synchronized CartItem findByProduct(long productId) {
+        Long rowId = rowByProduct.get(productId);
+        return rowId != null ? items.get(rowId) : null;
+    }
+
+    synchronized Money getTotalPrice() {
+        return Money.ofCents(totalCents);
+    }
+
+    synchronized long getTotalCents() {
+        return totalCents;
+    }
+
+    synchronized int getTotalQuantity() {
+        return totalQuantity;
+    }
+
+    synchronized int getItemCount() {
+        return items.size();
+    }
+
+    synchronized boolean isEmpty() {
+        return items.size() == 0;
+    }
+
+    /** Rows in id order, which matches the table's insertion order. */
+    synchronized List<CartItem> snapshot() {
+        List<CartItem> list = new ArrayList<>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            list.add(items.valueAt(i));
+        }
+        return list;
+    }
+
+    private void add(CartItem item) {
+        items.put(item.id, item);
+        rowByProduct.put(item.productId, item.id);
+        totalCents += item.subtotalCents();
+        totalQuantity += item.quantity;
+    }
+
+    private void remove(long id) {
+        CartItem old = items.get(id);
+        if (old == null) return;
+        items.remove(id);
+        Long indexed = rowByProduct.get(old.productId);
+        if (indexed != null && indexed == id) rowByProduct.remove(old.productId);
+        totalCents -= old.subtotalCents();
+        totalQuantity -= old.quantity;
+    }
+
+    private void clear() {
+        items.clear();
+        rowByProduct.clear();
+        totalCents = 0;
+        totalQuantity = 0;
+    }
+}
@@ -0,0 +1,272 @@
+package com.example.mobstore;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Turns the cart into an order. Reading the cart, totalling it, writing the order and
+ * removing the purchased rows all happen under one {@code BEGIN IMMEDIATE} transaction, so
+ * the order holds exactly the rows that leave the cart, at the prices stored with them,
+ * whatever else is writing to the database. The same transaction queues the order in the
+ * {@link OrderOutbox} for sending.
+ *
+ * <p>Every checkout carries an idempotency key. A second checkout with a key that has
+ * already produced an order returns that order instead of placing another one, so a
+ * double-tap or a retried request cannot charge twice.
+ */
+public final class CheckoutService {
+
+    /** Checkout everything in the cart rather than a single row. Cart row ids start at 1. */
+    public static final long ALL_ITEMS = 0;
+
+    public static final class Request {
+        final String idempotencyKey;
+        final String customerName;
+        final String address;
+        final String phone;
+        final long cartRowId;
+
+        /**
+         * @param idempotencyKey stays the same for every attempt at the same purchase
+         * @param cartRowId      the cart row to buy, or {@link #ALL_ITEMS}
+         */
+        public Request(String idempotencyKey, String customerName, String address, String phone, long cartRowId) {
+            this.idempotencyKey = idempotencyKey;
+            this.customerName = customerName;
+            this.address = address;
+            this.phone = phone;
+            this.cartRowId = cartRowId;
+        }
+    }
+
+    public enum Status {
+        /** A new order was written. */
+        PLACED,
+        /** An earlier checkout with the same key already placed this order. */
+        ALREADY_PLACED,
+        /** Nothing to buy: the cart is empty, or the chosen row has left it. */
+        NOTHING_TO_BUY,
+        FAILED
+    }
+
+    public static final class Result {
+        public final Status status;
+        /** The order's id, or -1 when no order exists. */
+        public final long orderId;
+        public final Money total;
+        public final int itemCount;
+        /** The lines as they were charged; empty for an order placed by an earlier attempt. */
+        public final List<CartItem> items;
+
+        Result(Status status, long orderId, Money total, int itemCount, List<CartItem> items) {
+            this.status = status;
+            this.orderId = orderId;
+            this.total = total;
+            this.itemCount = itemCount;
+            this.items = items;
+        }
+
+        static Result of(Status status) {
+            return new Result(status, -1, Money.ZERO, 0, Collections.emptyList());
+        }
+
+        public boolean succeeded() {
+            return status == Status.PLACED || status == Status.ALREADY_PLACED;
+        }
+    }
+
+    // The whole checkout, then each step in order; the commit is where the WAL write happens
+    private static final Metrics.Timer CHECKOUT = Metrics.tracedTimer("checkout.total");
+    private static final Metrics.Timer BEGIN = Metrics.timer("checkout.1.begin");
+    private static final Metrics.Timer FIND_ORDER = Metrics.timer("checkout.2.findOrder");
+    private static final Metrics.Timer READ_CART = Metrics.timer("checkout.3.readCart");
+    private static final Metrics.Timer WRITE_ORDER = Metrics.timer("checkout.4.writeOrder");
+    private static final Metrics.Timer DELETE_ROWS = Metrics.timer("checkout.5.deleteRows");
+    private static final Metrics.Timer COMMIT = Metrics.timer("checkout.6.commit");
+    private static final Metrics.Counter[] OUTCOMES = new Metrics.Counter[Status.values().length];
+
+    static {
+        for (Status status : Status.values()) {
+            OUTCOMES[status.ordinal()] = Metrics.counter("checkout." + status.name().toLowerCase(Locale.US));
+        }
+    }
+
+    private final DbHelper dbHelper;
+
+    CheckoutService(DbHelper dbHelper) {
+        this.dbHelper = dbHelper;
+    }
+
+    /** Places the order, or finds the one this request's key already placed. Call off the main thread. */
+    public Result checkout(Request request) {
+        long start = CHECKOUT.start();
+        Result result;
+        try {
+            result = placeOrder(request);
+        } finally {
+            CHECKOUT.stop(start);
+        }
+        OUTCOMES[result.status.ordinal()].increment();
+        return result;
+    }
+
+    private Result placeOrder(Request request) {
+        if (request.idempotencyKey == null || request.idempotencyKey.isEmpty()) {
+            AppLog.w("CheckoutService", "Checkout needs an idempotency key");
+            return Result.of(Status.FAILED);
+        }
+        SQLiteStatement delete;
+        try {
+            delete = dbHelper.statements().deleteById();
+        } catch (Exception e) {
+            AppLog.e("CheckoutService", "Error placing order: " + e.getMessage());
+            return Result.of(Status.FAILED);
+        }
+        // The cached delete is shared with the single-row deletes, which take its monitor before
+        // the database's write lock; holding it across the transaction keeps that order
+        synchronized (delete) {
+            return placeOrder(request, delete);
+        }
+    }
+
+    private Result placeOrder(Request request, SQLiteStatement delete) {
+        SQLiteDatabase db = null;
+        Result result;
+        try {
+            // Each step stops its timer in a finally, so failed and early-exit checkouts are
+            // in the step histograms too
+            long step = BEGIN.start();
+            try {
+                db = dbHelper.getWritableDatabase();
+                // IMMEDIATE takes the write lock before the cart is read, so no other write can
+                // land between the snapshot and the deletion
+                db.beginTransactionNonExclusive();
+            } finally {
+                BEGIN.stop(step);
+            }
+
+            Result existing;
+            step = FIND_ORDER.start();
+            try {
+                existing = findOrder(db, request.idempotencyKey);
+            } finally {
+                FIND_ORDER.stop(step);
+            }
+            if (existing != null) {
+                db.setTransactionSuccessful();
+                if (AppLog.DEBUG) AppLog.d("CheckoutService", "Order " + existing.orderId + " already placed for this checkout");
+                return existing;
+            }
+
+            long userId = dbHelper.userId();
+            List<CartItem> items;
+            step = READ_CART.start();
+            try {
+                items = readCart(db, userId, request.cartRowId);
+            } finally {
+                READ_CART.stop(step);
+            }
+            if (items.isEmpty()) {
+                AppLog.w("CheckoutService", "Nothing to check out");
+                return Result.of(Status.NOTHING_TO_BUY);
+            }
+
+            long orderId;
+            step = WRITE_ORDER.start();
+            try {
+                orderId = OrderStore.insert(db, userId, request.idempotencyKey, request.customerName,
+                        request.address, request.phone, items, System.currentTimeMillis());
+                OrderOutbox.enqueue(db, orderId);
+            } finally {
+                WRITE_ORDER.stop(step);
+            }
+
+            step = DELETE_ROWS.start();
+            try {
+                for (CartItem item : items) {
+                    delete.bindLong(1, item.id);
+                    delete.bindLong(2, userId);
+                    delete.executeUpdateDelete();
+                }
+            } finally {
+                DELETE_ROWS.stop(step);
+            }
+
+            db.setTransactionSuccessful();
+            step = COMMIT.start();
+            try {
+                db.endTransaction();
+            } finally {
+                COMMIT.stop(step);
+            }
+            result = placed(orderId, items);
+            if (AppLog.DEBUG) AppLog.d("CheckoutService", "Placed order " + orderId + " with " + items.size() + " lines, total " + result.total);
+        } catch (Exception e) {
+            AppLog.e("CheckoutService", "Error placing order: " + e.getMessage());
+            return Result.of(Status.FAILED);
+        } finally {
+            if (db != null && db.inTransaction()) {
+                db.endTransaction();
+            }
+        }
+
+        List<CartChange> deleted = new ArrayList<>(result.items.size());
+        for (CartItem item : result.items) {
+            deleted.add(CartChange.deleted(item.id));
+        }
+        dbHelper.committed(deleted);
+        return result;
+    }
+
+    private static Result placed(long orderId, List<CartItem> items) {
+        long totalCents = 0;
+        int itemCount = 0;
+        for (CartItem item : items) {
+            totalCents += item.subtotalCents();
+            itemCount += item.quantity;
+        }
+        return new Result(Status.PLACED, orderId, Money.ofCents(totalCents), itemCount,
+                Collections.unmodifiableList(items));
+    }
+
+    private static Result findOrder(SQLiteDatabase db, String idempotencyKey) {
+        Cursor c = null;
+        try {
+            c = db.rawQuery("SELECT id, total_cents, item_count FROM " + OrderStore.TABLE_ORDERS +
+                    " WHERE idempotency_key = ?", new String[]{idempotencyKey});
+            if (!c.moveToFirst()) return null;
+            return new Result(Status.ALREADY_PLACED, c.getLong(0), Money.ofCents(c.getLong(1)), c.getInt(2),
+                    Collections.emptyList());
+        } finally {
+            if (c != null) c.close();
+        }
+    }
+
+    // Reads only the checking-out user's rows, so one account can never buy from another's cart
+    private static List<CartItem> readCart(SQLiteDatabase db, long userId, long cartRowId) {
+        List<CartItem> items = new ArrayList<>();
+        String sql = "SELECT id, product_id, productName, productImage, price_cents, quantity FROM cart WHERE user_id = ?";
+        String[] args = {String.valueOf(userId)};
+        if (cartRowId != ALL_ITEMS) {
+            sql += " AND id = ?";
+            args = new String[]{String.valueOf(userId), String.valueOf(cartRowId)};
+        }
+        Cursor c = null;
+        try {
+            c = db.rawQuery(sql + " ORDER BY id", args);
+            while (c.moveToNext()) {
+                items.add(new CartItem(c.getLong(0), c.getLong(1), c.getString(2), c.getInt(3),
+                        Money.ofCents(c.getLong(4)), c.getInt(5)));
+            }
+        } finally {
+            if (c != null) c.close();
+        }
+        return items;
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.mobstore;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * Journal mode and connection pragmas shared by DbHelper and UserDbHelper.
+ */
+final class DbConfig {
+
+    /** WAL with NORMAL sync: commits skip the per-write journal fsync and readers don't block on writers. */
+    static final DbConfig DEFAULT = new DbConfig(true, "NORMAL", 2048, "MEMORY", 8L * 1024 * 1024);
+
+    /** Rollback journal with FULL sync, the SQLite defaults the app used to run with. */
+    static final DbConfig LEGACY = new DbConfig(false, "FULL", 0, null, 0);
+
+    final boolean writeAheadLogging;
+    /** PRAGMA synchronous: OFF, NORMAL, FULL or EXTRA. */
+    final String synchronous;
+    /** Page cache size in KiB; 0 keeps SQLite's default. */
+    final int cacheSizeKb;
+    /** PRAGMA temp_store: DEFAULT, FILE or MEMORY; null keeps the default. */
+    final String tempStore;
+    /** Bytes of the database file to memory-map; 0 disables mmap. */
+    final long mmapSize;
+
+    DbConfig(boolean writeAheadLogging, String synchronous, int cacheSizeKb, String tempStore, long mmapSize) {
+        this.writeAheadLogging = writeAheadLogging;
+        this.synchronous = synchronous;
+        this.cacheSizeKb = cacheSizeKb;
+        this.tempStore = tempStore;
+        this.mmapSize = mmapSize;
+    }
+
+    /**
+     * Applies the pragmas; call from SQLiteOpenHelper.onConfigure. Android only runs onConfigure
+     * on the primary connection, so WAL read-only connections keep the SQLite defaults.
+     */
+    void applyPragmas(SQLiteDatabase db) {
+        if (synchronous != null) pragma(db, "synchronous = " + synchronous);
+        // A negative cache_size is in KiB rather than pages
+        if (cacheSizeKb > 0) pragma(db, "cache_size = -" + cacheSizeKb);
+        if (tempStore != null) pragma(db, "temp_store = " + tempStore);
+        if (mmapSize > 0) pragma(db, "mmap_size = " + mmapSize);
+    }
+
+    // Some pragmas return a row, which execSQL rejects, so they all go through rawQuery
+    private static void pragma(SQLiteDatabase db, String pragma) {
+        Cursor c = null;
+        try {
+            c = db.rawQuery("PRAGMA " + pragma, null);
+            c.moveToFirst();
+        } catch (Exception e) {
+            if (AppLog.WARN) AppLog.w("DbConfig", "Could not apply PRAGMA " + pragma + ": " + e.getMessage());
+        } finally {
+            if (c != null) c.close();
+        }
+    }
+}
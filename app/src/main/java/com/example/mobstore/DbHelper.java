@@ -1,86 +1,554 @@
 package com.example.mobstore;
 
-import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
-import android.util.Log;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Build;
+import android.util.LongSparseArray;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
 
 public class DbHelper extends SQLiteOpenHelper {
 
-    private static final String DB_NAME = "CartDB4";
-    private static final int DB_VERSION = 4;
+    static final String DB_NAME = "CartDB4";
+    static final int DB_VERSION = 14;
     private static final String TABLE_CART = "cart";
+    private static final String INDEX_CART_PRODUCT_NAME = "idx_cart_product_name";
+    private static final String INDEX_CART_PRODUCT_ID = "idx_cart_product_id";
+    private static final String INDEX_CART_USER_PRODUCT = "idx_cart_user_product";
+
+    /** The owner of the cart kept while nobody is logged in. User ids start at 1. */
+    static final long GUEST = 0;
+
+    // Stays well under SQLite's 999 bound-parameter limit on older Android releases
+    private static final int MAX_IN_CHUNK = 500;
 
     // Column names
     private static final String COL_ID = "id";
+    private static final String COL_USER_ID = "user_id";
+    private static final String COL_PRODUCT_ID = "product_id";
     private static final String COL_PRODUCT_NAME = "productName";
     private static final String COL_PRODUCT_IMAGE = "productImage";
     private static final String COL_PRICE = "price";
+    private static final String COL_PRICE_CENTS = "price_cents";
     private static final String COL_QUANTITY = "quantity";
 
+    // One timer and trace section per cart method, named db.<method>; see Metrics
+    private static final Metrics.Timer SWITCH_USER = Metrics.tracedTimer("db.switchUser");
+    private static final Metrics.Timer ADD_OR_INCREMENT = Metrics.tracedTimer("db.addOrIncrement");
+    private static final Metrics.Timer INSERT_CART_ITEM = Metrics.tracedTimer("db.insertCartItem");
+    private static final Metrics.Timer GET_ALL_CART_ITEMS = Metrics.tracedTimer("db.getAllCartItems");
+    private static final Metrics.Timer GET_CART_ITEMS = Metrics.tracedTimer("db.getCartItems");
+    private static final Metrics.Timer GET_CART_ITEM_BY_ID = Metrics.tracedTimer("db.getCartItemById");
+    private static final Metrics.Timer IS_PRODUCT_IN_CART = Metrics.tracedTimer("db.isProductInCart");
+    private static final Metrics.Timer GET_PRODUCT_QUANTITY = Metrics.tracedTimer("db.getProductQuantity");
+    private static final Metrics.Timer GET_TOTAL_CART_PRICE = Metrics.tracedTimer("db.getTotalCartPrice");
+    private static final Metrics.Timer GET_TOTAL_ITEM_COUNT = Metrics.tracedTimer("db.getTotalItemCount");
+    private static final Metrics.Timer GET_TOTAL_QUANTITY = Metrics.tracedTimer("db.getTotalQuantity");
+    private static final Metrics.Timer UPDATE_QUANTITY = Metrics.tracedTimer("db.updateQuantity");
+    private static final Metrics.Timer UPDATE_QUANTITY_BY_ID = Metrics.tracedTimer("db.updateQuantityById");
+    private static final Metrics.Timer INCREMENT_QUANTITY = Metrics.tracedTimer("db.incrementQuantity");
+    private static final Metrics.Timer DECREMENT_QUANTITY = Metrics.tracedTimer("db.decrementQuantity");
+    private static final Metrics.Timer DELETE_CART_ITEM = Metrics.tracedTimer("db.deleteCartItem");
+    private static final Metrics.Timer DELETE_CART_ITEM_BY_ID = Metrics.tracedTimer("db.deleteCartItemById");
+    private static final Metrics.Timer CLEAR_CART = Metrics.tracedTimer("db.clearCart");
+    private static final Metrics.Timer DELETE_BY_IDS = Metrics.tracedTimer("db.deleteByIds");
+    private static final Metrics.Timer UPDATE_QUANTITIES = Metrics.tracedTimer("db.updateQuantities");
+    private static final Metrics.Timer IS_CART_EMPTY = Metrics.tracedTimer("db.isCartEmpty");
+    private static final Metrics.Timer GET_CART_SUMMARY = Metrics.tracedTimer("db.getCartSummary");
+
+    private final CartStore cartStore;
+    private final CartChanges changes = new CartChanges();
+    private CartStatements statements;
+    // Whose cart every cart method reads and writes; changed on the cart writer thread
+    private volatile long userId = GUEST;
+    // Where the first cart call finds the signed-in user, so the lookup stays off the main thread
+    private volatile LongSupplier initialUser;
+
+    private final DbConfig config;
+
     public DbHelper(Context context) {
+        this(context, CartStore.getInstance(), DbConfig.DEFAULT);
+    }
+
+    DbHelper(Context context, CartStore cartStore) {
+        this(context, cartStore, DbConfig.DEFAULT);
+    }
+
+    DbHelper(Context context, CartStore cartStore, DbConfig config) {
         super(context, DB_NAME, null, DB_VERSION);
+        this.cartStore = cartStore;
+        this.config = config;
+        setWriteAheadLoggingEnabled(config.writeAheadLogging);
     }
 
-    @Override
-    public void onCreate(SQLiteDatabase db) {
+    /** Every committed cart write, as typed changes delivered on the main thread. */
+    public CartChanges changes() {
+        return changes;
+    }
+
+    /**
+     * Reports changes that have just committed: the in-memory copy is updated first, then
+     * listeners are told, so a snapshot read after a version is seen always includes it.
+     */
+    void committed(List<CartChange> committed) {
+        for (CartChange change : committed) {
+            switch (change.type) {
+                case INSERTED:
+                case UPDATED:
+                    cartStore.onRowWritten(change.item);
+                    break;
+                case DELETED:
+                    cartStore.onDeleted(change.rowId);
+                    break;
+                case CLEARED:
+                    cartStore.onCleared();
+                    break;
+            }
+        }
+        changes.publish(committed);
+    }
+
+    private void committed(CartChange change) {
+        committed(Collections.singletonList(change));
+    }
+
+    // Quantity and by-product writes need the row's current state to describe the change
+    private CartStore loadedCart() {
+        cartStore.ensureLoaded(getReadableDatabase(), userId());
+        return cartStore;
+    }
+
+    /** The user whose cart this helper works on, or {@link #GUEST}. */
+    long userId() {
+        if (initialUser != null) {
+            synchronized (this) {
+                if (initialUser != null) {
+                    userId = initialUser.getAsLong();
+                    initialUser = null;
+                }
+            }
+        }
+        return userId;
+    }
+
+    /**
+     * Sets where the first cart call looks up whose cart to use, e.g. the saved session.
+     * Only for startup, before anything has read the cart; use {@link #switchUser} after that.
+     */
+    synchronized void setInitialUser(LongSupplier initialUser) {
+        this.initialUser = initialUser;
+        cartStore.invalidate();
+    }
+
+    /** Points the cart methods at {@code userId}'s cart without reading it or telling anyone. */
+    synchronized void setUser(long userId) {
+        this.userId = userId;
+        initialUser = null;
+        cartStore.invalidate();
+    }
+
+    /**
+     * Makes {@code userId}'s cart the current one and publishes it as a replacement of the
+     * old one, so open screens follow along. With {@code mergeGuestCart}, the guest cart is
+     * first moved into the user's cart in one transaction: products already there gain the
+     * guest quantity and keep their own price, the rest change owner.
+     *
+     * @return false if the merge failed, in which case the current cart is unchanged
+     */
+    boolean switchUser(long userId, boolean mergeGuestCart) {
+        long start = SWITCH_USER.start();
         try {
-            String createTable = "CREATE TABLE " + TABLE_CART + "(" +
-                    COL_ID + " INTEGER PRIMARY KEY AUTOINCREMENT," +
-                    COL_PRODUCT_NAME + " TEXT," +
-                    COL_PRODUCT_IMAGE + " INTEGER," +
-                    COL_PRICE + " REAL," +
-                    COL_QUANTITY + " INTEGER DEFAULT 1)";
-            db.execSQL(createTable);
-            Log.d("DbHelper", "Table created successfully");
-        } catch (Exception e) {
-            Log.e("DbHelper", "Error creating table: " + e.getMessage());
+            if (mergeGuestCart && userId != GUEST) {
+                SQLiteDatabase db = null;
+                try {
+                    db = getWritableDatabase();
+                    db.beginTransaction();
+                    String[] args = {String.valueOf(userId), String.valueOf(GUEST)};
+                    db.execSQL("UPDATE " + TABLE_CART + " SET " + COL_QUANTITY + " = " + COL_QUANTITY + " + (" +
+                            "SELECT g." + COL_QUANTITY + " FROM " + TABLE_CART + " g" +
+                            " WHERE g." + COL_USER_ID + " = ?2 AND g." + COL_PRODUCT_ID + " = " + TABLE_CART + "." + COL_PRODUCT_ID + ")" +
+                            " WHERE " + COL_USER_ID + " = ?1 AND " + COL_PRODUCT_ID + " IN (" +
+                            "SELECT " + COL_PRODUCT_ID + " FROM " + TABLE_CART + " WHERE " + COL_USER_ID + " = ?2)", args);
+                    db.execSQL("DELETE FROM " + TABLE_CART + " WHERE " + COL_USER_ID + " = ?2 AND " + COL_PRODUCT_ID + " IN (" +
+                            "SELECT " + COL_PRODUCT_ID + " FROM " + TABLE_CART + " WHERE " + COL_USER_ID + " = ?1)", args);
+                    db.execSQL("UPDATE " + TABLE_CART + " SET " + COL_USER_ID + " = ?1 WHERE " + COL_USER_ID + " = ?2", args);
+                    db.setTransactionSuccessful();
+                } catch (Exception e) {
+                    AppLog.e("DbHelper", "Error merging guest cart: " + e.getMessage());
+                    return false;
+                } finally {
+                    if (db != null && db.inTransaction()) {
+                        db.endTransaction();
+                    }
+                }
+            }
+
+            setUser(userId);
+            List<CartItem> items = getCartItems();
+            List<CartChange> replaced = new ArrayList<>(items.size() + 1);
+            replaced.add(CartChange.cleared());
+            for (CartItem item : items) {
+                replaced.add(CartChange.inserted(item));
+            }
+            changes.publish(replaced);
+            if (AppLog.DEBUG) AppLog.d("DbHelper", "Switched to the cart of user " + userId + " with " + items.size() + " rows");
+            return true;
+        } finally {
+            SWITCH_USER.stop(start);
+        }
+    }
+
+    /** Compiled statements for the currently open database, recompiled if it was reopened. */
+    synchronized CartStatements statements() {
+        SQLiteDatabase db = getWritableDatabase();
+        if (statements == null || !statements.isFor(db)) {
+            if (statements != null) statements.close();
+            statements = new CartStatements(db);
+        }
+        return statements;
+    }
+
+    private static void bindInsert(SQLiteStatement insert, long userId, long productId, String name, int image,
+                                   Money price, int qty) {
+        insert.bindLong(1, userId);
+        insert.bindLong(2, productId);
+        bindText(insert, 3, name);
+        insert.bindLong(4, image);
+        insert.bindLong(5, price.cents());
+        insert.bindLong(6, qty);
+    }
+
+    private static void bindText(SQLiteStatement statement, int index, String value) {
+        if (value != null) {
+            statement.bindString(index, value);
+        } else {
+            statement.bindNull(index);
+        }
+    }
+
+    private static long queryLong(SQLiteStatement statement, long arg) {
+        synchronized (statement) {
+            statement.bindLong(1, arg);
+            return statement.simpleQueryForLong();
+        }
+    }
+
+    private static long queryLong(SQLiteStatement statement, long arg1, long arg2) {
+        synchronized (statement) {
+            statement.bindLong(1, arg1);
+            statement.bindLong(2, arg2);
+            return statement.simpleQueryForLong();
         }
     }
 
+    @Override
+    public synchronized void close() {
+        if (statements != null) {
+            statements.close();
+            statements = null;
+        }
+        super.close();
+    }
+
+    // Schema history. Versions 1-3 predate the migration framework and their exact shape is
+    // unknown, so they are rebuilt into the v4 layout keeping whatever columns still match.
+    // Each step must create the schema of its own version, never the current one.
+    static final Migration[] MIGRATIONS = {
+            new Migration(1, 4, DbHelper::rebuildCartTable),
+            new Migration(2, 4, DbHelper::rebuildCartTable),
+            new Migration(3, 4, DbHelper::rebuildCartTable),
+            new Migration(4, 5, db -> {
+                mergeDuplicateProducts(db);
+                createProductNameIndex(db);
+            }),
+            new Migration(5, 6, ProductCatalog::createProductsTableV6),
+            new Migration(6, 7, ProductCatalog::createSearchIndex),
+            new Migration(7, 8, DbHelper::keyCartByProductId),
+            new Migration(8, 9, DbHelper::storePricesInCents),
+            new Migration(9, 10, OrderStore::createTables),
+            new Migration(10, 11, OrderStore::addIdempotencyKey),
+            new Migration(11, 12, OrderOutbox::createTable),
+            new Migration(12, 13, DbHelper::partitionCartByUser),
+            new Migration(13, 14, OrderStore::addUserId),
+    };
+
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        config.applyPragmas(db);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        createCartTable(db, TABLE_CART);
+        createUserProductIndex(db);
+        ProductCatalog.createProductsTable(db);
+        ProductCatalog.createSearchIndex(db);
+        OrderStore.createTables(db);
+        OrderStore.addIdempotencyKey(db);
+        OrderStore.addUserId(db);
+        OrderOutbox.createTable(db);
+        AppLog.d("DbHelper", "Table created successfully");
+    }
+
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
         try {
-            db.execSQL("DROP TABLE IF EXISTS " + TABLE_CART);
-            onCreate(db);
-            Log.d("DbHelper", "Database upgraded from version " + oldVersion + " to " + newVersion);
-        } catch (Exception e) {
-            Log.e("DbHelper", "Error upgrading database: " + e.getMessage());
+            Migration.migrate(db, oldVersion, newVersion, MIGRATIONS);
+            if (AppLog.DEBUG) AppLog.d("DbHelper", "Database upgraded from version " + oldVersion + " to " + newVersion);
+        } catch (RuntimeException e) {
+            // Rethrow so the upgrade transaction rolls back instead of recording the new version
+            AppLog.e("DbHelper", "Error upgrading database: " + e.getMessage());
+            throw e;
         }
     }
 
-    public long insertCartItem(String name, int image, double price, int qty) {
-        SQLiteDatabase db = null;
+    // Version 13 rebuilds the table with this layout, so a fresh table matches an upgraded one
+    private static void createCartTable(SQLiteDatabase db, String tableName) {
+        db.execSQL("CREATE TABLE " + tableName + "(" +
+                COL_ID + " INTEGER PRIMARY KEY AUTOINCREMENT," +
+                COL_PRODUCT_NAME + " TEXT," +
+                COL_PRODUCT_IMAGE + " INTEGER," +
+                COL_PRICE_CENTS + " INTEGER NOT NULL DEFAULT 0," +
+                COL_QUANTITY + " INTEGER DEFAULT 1," +
+                COL_PRODUCT_ID + " INTEGER," +
+                COL_USER_ID + " INTEGER NOT NULL DEFAULT " + GUEST + ")");
+    }
+
+    /** The cart table as of version 9, when prices moved to cents. */
+    private static void createCartTableV9(SQLiteDatabase db, String tableName) {
+        db.execSQL("CREATE TABLE " + tableName + "(" +
+                COL_ID + " INTEGER PRIMARY KEY AUTOINCREMENT," +
+                COL_PRODUCT_NAME + " TEXT," +
+                COL_PRODUCT_IMAGE + " INTEGER," +
+                COL_PRICE_CENTS + " INTEGER NOT NULL DEFAULT 0," +
+                COL_QUANTITY + " INTEGER DEFAULT 1," +
+                COL_PRODUCT_ID + " INTEGER)");
+    }
+
+    /** The cart table as of version 4, which the pre-migration versions are rebuilt into. */
+    private static void createCartTableV4(SQLiteDatabase db, String tableName) {
+        db.execSQL("CREATE TABLE " + tableName + "(" +
+                COL_ID + " INTEGER PRIMARY KEY AUTOINCREMENT," +
+                COL_PRODUCT_NAME + " TEXT," +
+                COL_PRODUCT_IMAGE + " INTEGER," +
+                COL_PRICE + " REAL," +
+                COL_QUANTITY + " INTEGER DEFAULT 1)");
+    }
+
+    private static void rebuildCartTable(SQLiteDatabase db) {
+        Migration.rebuildTable(db, TABLE_CART, DbHelper::createCartTableV4);
+    }
+
+    private static void createProductNameIndex(SQLiteDatabase db) {
+        db.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS " + INDEX_CART_PRODUCT_NAME +
+                " ON " + TABLE_CART + "(" + COL_PRODUCT_NAME + ")");
+    }
+
+    private static void createProductIdIndex(SQLiteDatabase db) {
+        db.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS " + INDEX_CART_PRODUCT_ID +
+                " ON " + TABLE_CART + "(" + COL_PRODUCT_ID + ")");
+    }
+
+    // Every cart query leads with user_id, so they all seek on this index or the primary key
+    private static void createUserProductIndex(SQLiteDatabase db) {
+        db.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS " + INDEX_CART_USER_PRODUCT +
+                " ON " + TABLE_CART + "(" + COL_USER_ID + ", " + COL_PRODUCT_ID + ")");
+    }
+
+    /**
+     * Version 8: cart rows point at their catalog product by id instead of by name. Rows whose
+     * name matches no product yet keep a NULL product_id until the catalog is imported and
+     * {@link #linkCartToProducts} runs.
+     */
+    private static void keyCartByProductId(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE " + TABLE_CART + " ADD COLUMN " + COL_PRODUCT_ID + " INTEGER");
+        linkCartToProducts(db);
+        db.execSQL("DROP INDEX IF EXISTS " + INDEX_CART_PRODUCT_NAME);
+        createProductIdIndex(db);
+    }
+
+    /**
+     * Version 9: prices move from REAL dollars to INTEGER cents. The platform SQLite cannot
+     * drop a column before Android 14, so the cart is rebuilt without the old price column
+     * once the cents have been copied across; the products table gets the same treatment.
+     */
+    private static void storePricesInCents(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE " + TABLE_CART + " ADD COLUMN " + COL_PRICE_CENTS + " INTEGER NOT NULL DEFAULT 0");
+        db.execSQL("UPDATE " + TABLE_CART + " SET " + COL_PRICE_CENTS +
+                " = CAST(ROUND(IFNULL(" + COL_PRICE + ", 0) * 100) AS INTEGER)");
+        Migration.rebuildTable(db, TABLE_CART, DbHelper::createCartTableV9);
+        createProductIdIndex(db);
+        ProductCatalog.storePricesInCents(db);
+    }
+
+    /**
+     * Version 13: each cart row belongs to a user. Rows from before then become the guest
+     * cart, which merges into the account cart at the next login. A product is unique per
+     * user rather than across the table, so the product index is replaced.
+     */
+    private static void partitionCartByUser(SQLiteDatabase db) {
+        Migration.rebuildTable(db, TABLE_CART, DbHelper::createCartTable);
+        db.execSQL("DROP INDEX IF EXISTS " + INDEX_CART_PRODUCT_ID);
+        createUserProductIndex(db);
+    }
+
+    /** Fills in product_id for cart rows that have none, matching them to the catalog by name. */
+    static void linkCartToProducts(SQLiteDatabase db) {
+        db.execSQL("UPDATE OR IGNORE " + TABLE_CART + " SET " + COL_PRODUCT_ID + " = (" +
+                "SELECT MIN(p.id) FROM " + ProductCatalog.TABLE_PRODUCTS + " p" +
+                " WHERE p.name = " + TABLE_CART + "." + COL_PRODUCT_NAME + ")" +
+                " WHERE " + COL_PRODUCT_ID + " IS NULL");
+    }
+
+    // Collapses rows that share a product name into the oldest row so the unique index can be built
+    private static void mergeDuplicateProducts(SQLiteDatabase db) {
+        db.execSQL("UPDATE " + TABLE_CART + " SET " + COL_QUANTITY + " = (" +
+                "SELECT SUM(c2." + COL_QUANTITY + ") FROM " + TABLE_CART + " c2" +
+                " WHERE c2." + COL_PRODUCT_NAME + " IS " + TABLE_CART + "." + COL_PRODUCT_NAME + ")" +
+                " WHERE " + COL_ID + " IN (SELECT MIN(" + COL_ID + ") FROM " + TABLE_CART +
+                " GROUP BY " + COL_PRODUCT_NAME + ")");
+        db.execSQL("DELETE FROM " + TABLE_CART + " WHERE " + COL_ID + " NOT IN (" +
+                "SELECT MIN(" + COL_ID + ") FROM " + TABLE_CART + " GROUP BY " + COL_PRODUCT_NAME + ")");
+    }
+
+    /**
+     * Adds the product to the cart, or bumps its quantity by {@code delta} if it is already there.
+     * Runs as one indexed upsert inside a transaction, so repeated taps cannot race each other.
+     *
+     * @return the quantity now stored for the product, or -1 on failure
+     */
+    public int addOrIncrement(Product product, int delta) {
+        long start = ADD_OR_INCREMENT.start();
         try {
-            db = getWritableDatabase();
-            ContentValues cv = new ContentValues();
-            cv.put(COL_PRODUCT_NAME, name);
-            cv.put(COL_PRODUCT_IMAGE, image);
-            cv.put(COL_PRICE, price);
-            cv.put(COL_QUANTITY, qty);
-
-            long result = db.insert(TABLE_CART, null, cv);
-            Log.d("DbHelper", "Inserted item: " + name + " | Result: " + result);
+            SQLiteDatabase db = null;
+            long rowId = -1;
+            int qty = -1;
+            long userId = userId();
+            try {
+                if (delta < 1) {
+                    AppLog.w("DbHelper", "Quantity delta must be at least 1");
+                    return -1;
+                }
+                if (product.id <= 0) {
+                    if (AppLog.WARN) AppLog.w("DbHelper", "Product " + product.name + " has no catalog id");
+                    return -1;
+                }
+
+                db = getWritableDatabase();
+                CartStatements st = statements();
+                loadedCart();
+                db.beginTransaction();
+
+                // ON CONFLICT ... DO UPDATE needs SQLite 3.24, which ships from Android 11 (API 30)
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+                    SQLiteStatement upsert = st.upsert();
+                    synchronized (upsert) {
+                        bindInsert(upsert, userId, product.id, product.name, product.image, product.price, delta);
+                        upsert.executeInsert();
+                    }
+                } else {
+                    SQLiteStatement increment = st.incrementByProduct();
+                    int updated;
+                    synchronized (increment) {
+                        increment.bindLong(1, delta);
+                        bindText(increment, 2, product.name);
+                        increment.bindLong(3, product.image);
+                        increment.bindLong(4, userId);
+                        increment.bindLong(5, product.id);
+                        updated = increment.executeUpdateDelete();
+                    }
+                    if (updated == 0) {
+                        SQLiteStatement insert = st.insert();
+                        synchronized (insert) {
+                            bindInsert(insert, userId, product.id, product.name, product.image, product.price, delta);
+                            insert.executeInsert();
+                        }
+                    }
+                }
+
+                rowId = queryLong(st.idByProduct(), userId, product.id);
+                qty = (int) queryLong(st.quantityByProduct(), userId, product.id);
+
+                db.setTransactionSuccessful();
+                if (AppLog.DEBUG) AppLog.d("DbHelper", "Upserted " + product.name + " | Quantity: " + qty);
+            } catch (Exception e) {
+                AppLog.e("DbHelper", "Error adding item to cart: " + e.getMessage());
+                return -1;
+            } finally {
+                if (db != null && db.inTransaction()) {
+                    db.endTransaction();
+                }
+            }
+
+            // An existing row keeps the price it was added at
+            CartItem cached = cartStore.get(rowId);
+            CartItem item = new CartItem(rowId, product.id, product.name, product.image,
+                    cached != null ? cached.price : product.price, qty);
+            committed(qty == delta ? CartChange.inserted(item) : CartChange.updated(item));
+            return qty;
+        } finally {
+            ADD_OR_INCREMENT.stop(start);
+        }
+    }
+
+    public long insertCartItem(long productId, String name, int image, Money price, int qty) {
+        long start = INSERT_CART_ITEM.start();
+        try {
+            SQLiteStatement insert = statements().insert();
+            long result;
+            synchronized (insert) {
+                bindInsert(insert, userId(), productId, name, image, price, qty);
+                result = insert.executeInsert();
+            }
+            if (AppLog.DEBUG) AppLog.d("DbHelper", "Inserted item: " + name + " | Result: " + result);
+            if (result != -1) {
+                committed(CartChange.inserted(new CartItem(result, productId, name, image, price, qty)));
+            }
             return result;
         } catch (Exception e) {
-            Log.e("DbHelper", "Error inserting item: " + e.getMessage());
+            AppLog.e("DbHelper", "Error inserting item: " + e.getMessage());
             return -1;
+        } finally {
+            INSERT_CART_ITEM.stop(start);
         }
     }
 
 
     public Cursor getAllCartItems() {
         SQLiteDatabase db = null;
+        long start = GET_ALL_CART_ITEMS.start();
         try {
             db = getReadableDatabase();
-            Cursor cursor = db.rawQuery("SELECT * FROM " + TABLE_CART, null);
-            Log.d("DbHelper", "Retrieved " + cursor.getCount() + " items from cart");
+            Cursor cursor = db.rawQuery("SELECT * FROM " + TABLE_CART + " WHERE " + COL_USER_ID + " = ?",
+                    new String[]{String.valueOf(userId())});
+            if (AppLog.DEBUG) AppLog.d("DbHelper", "Retrieved " + cursor.getCount() + " items from cart");
             return cursor;
         } catch (Exception e) {
-            Log.e("DbHelper", "Error getting cart items: " + e.getMessage());
+            AppLog.e("DbHelper", "Error getting cart items: " + e.getMessage());
             return null;
+        } finally {
+            GET_ALL_CART_ITEMS.stop(start);
+        }
+    }
+
+
+    /** Immutable copy of the cart in id order, served from memory once the cart is loaded. */
+    public List<CartItem> getCartItems() {
+        long start = GET_CART_ITEMS.start();
+        try {
+            return loadedCart().snapshot();
+        } catch (Exception e) {
+            AppLog.e("DbHelper", "Error getting cart items: " + e.getMessage());
+            return new ArrayList<>();
+        } finally {
+            GET_CART_ITEMS.stop(start);
         }
     }
 
@@ -88,77 +556,65 @@ public class DbHelper extends SQLiteOpenHelper {
     public Cursor getCartItemById(int id) {
         SQLiteDatabase db = null;
         Cursor cursor = null;
+        long start = GET_CART_ITEM_BY_ID.start();
         try {
             db = getReadableDatabase();
-            cursor = db.rawQuery("SELECT * FROM " + TABLE_CART + " WHERE " + COL_ID + "=?",
-                    new String[]{String.valueOf(id)});
+            cursor = db.rawQuery("SELECT * FROM " + TABLE_CART + " WHERE " + COL_ID + "=? AND " + COL_USER_ID + "=?",
+                    new String[]{String.valueOf(id), String.valueOf(userId())});
             return cursor;
         } catch (Exception e) {
-            Log.e("DbHelper", "Error getting item by ID: " + e.getMessage());
+            AppLog.e("DbHelper", "Error getting item by ID: " + e.getMessage());
             if (cursor != null) cursor.close();
             return null;
+        } finally {
+            GET_CART_ITEM_BY_ID.stop(start);
         }
     }
 
 
-    public boolean isProductInCart(String name) {
-        Cursor c = null;
+    public boolean isProductInCart(long productId) {
+        long start = IS_PRODUCT_IN_CART.start();
         try {
-            c = getReadableDatabase().rawQuery(
-                    "SELECT 1 FROM " + TABLE_CART + " WHERE " + COL_PRODUCT_NAME + "=?",
-                    new String[]{name});
-            boolean exists = c.getCount() > 0;
-            return exists;
+            return queryLong(statements().idByProduct(), userId(), productId) != -1;
         } catch (Exception e) {
-            Log.e("DbHelper", "Error checking if product in cart: " + e.getMessage());
+            AppLog.e("DbHelper", "Error checking if product in cart: " + e.getMessage());
             return false;
         } finally {
-            if (c != null) c.close();
+            IS_PRODUCT_IN_CART.stop(start);
         }
     }
 
 
-    public int getProductQuantity(String name) {
-        Cursor c = null;
+    public int getProductQuantity(long productId) {
+        long start = GET_PRODUCT_QUANTITY.start();
         try {
-            c = getReadableDatabase().rawQuery(
-                    "SELECT " + COL_QUANTITY + " FROM " + TABLE_CART +
-                            " WHERE " + COL_PRODUCT_NAME + "=?",
-                    new String[]{name});
-            if (c != null && c.moveToFirst()) {
-                int qty = c.getInt(0);
-                return qty;
-            }
-            return 0;
+            return (int) queryLong(statements().quantityByProduct(), userId(), productId);
         } catch (Exception e) {
-            Log.e("DbHelper", "Error getting product quantity: " + e.getMessage());
+            AppLog.e("DbHelper", "Error getting product quantity: " + e.getMessage());
             return 0;
         } finally {
-            if (c != null) c.close();
+            GET_PRODUCT_QUANTITY.stop(start);
         }
     }
 
 
-    public double getTotalCartPrice() {
-        double total = 0.0;
-        Cursor cursor = null;
+    // The aggregates come from CartStore once it is loaded; before that a single compiled
+    // aggregate query answers them without reading every row into memory.
+
+    public Money getTotalCartPrice() {
+        Money total = Money.ZERO;
+        long start = GET_TOTAL_CART_PRICE.start();
         try {
-            SQLiteDatabase db = getReadableDatabase();
-            cursor = db.rawQuery(
-                    "SELECT " + COL_PRICE + ", " + COL_QUANTITY + " FROM " + TABLE_CART,
-                    null);
-            if (cursor != null && cursor.moveToFirst()) {
-                do {
-                    double price = cursor.getDouble(0);
-                    int quantity = cursor.getInt(1);
-                    total += price * quantity;
-                } while (cursor.moveToNext());
+            if (cartStore.isLoadedFor(userId())) {
+                total = cartStore.getTotalPrice();
+            } else {
+                total = Money.ofCents(queryLong(statements().sumPriceCents(), userId()));
             }
-            Log.d("DbHelper", "Total cart price: $" + String.format("%.2f", total));
+            if (AppLog.DEBUG) AppLog.d("DbHelper", "Total cart price: " + total);
         } catch (Exception e) {
-            Log.e("DbHelper", "Error calculating total: " + e.getMessage());
+            AppLog.e("DbHelper", "Error calculating total: " + e.getMessage());
         } finally {
-            if (cursor != null) cursor.close();
+            GET_TOTAL_CART_PRICE.stop(start);
         }
         return total;
     }
@@ -166,16 +622,17 @@ public class DbHelper extends SQLiteOpenHelper {
 
     public int getTotalItemCount() {
         int count = 0;
-        Cursor cursor = null;
+        long start = GET_TOTAL_ITEM_COUNT.start();
         try {
-            cursor = getAllCartItems();
-            if (cursor != null) {
-                count = cursor.getCount();
+            if (cartStore.isLoadedFor(userId())) {
+                count = cartStore.getItemCount();
+            } else {
+                count = (int) queryLong(statements().countRows(), userId());
             }
         } catch (Exception e) {
-            Log.e("DbHelper", "Error getting item count: " + e.getMessage());
+            AppLog.e("DbHelper", "Error getting item count: " + e.getMessage());
         } finally {
-            if (cursor != null) cursor.close();
+            GET_TOTAL_ITEM_COUNT.stop(start);
         }
         return count;
     }
@@ -183,216 +640,396 @@ public class DbHelper extends SQLiteOpenHelper {
 
     public int getTotalQuantity() {
         int total = 0;
-        Cursor cursor = null;
+        long start = GET_TOTAL_QUANTITY.start();
         try {
-            SQLiteDatabase db = getReadableDatabase();
-            cursor = db.rawQuery("SELECT SUM(" + COL_QUANTITY + ") FROM " + TABLE_CART, null);
-            if (cursor != null && cursor.moveToFirst()) {
-                total = cursor.getInt(0);
+            if (cartStore.isLoadedFor(userId())) {
+                total = cartStore.getTotalQuantity();
+            } else {
+                total = (int) queryLong(statements().sumQuantity(), userId());
             }
-            Log.d("DbHelper", "Total quantity: " + total);
+            if (AppLog.DEBUG) AppLog.d("DbHelper", "Total quantity: " + total);
         } catch (Exception e) {
-            Log.e("DbHelper", "Error getting total quantity: " + e.getMessage());
+            AppLog.e("DbHelper", "Error getting total quantity: " + e.getMessage());
         } finally {
-            if (cursor != null) cursor.close();
+            GET_TOTAL_QUANTITY.stop(start);
         }
         return total;
     }
 
 
-    public int updateQuantity(String name, int qty) {
-        SQLiteDatabase db = null;
+    public int updateQuantity(long productId, int qty) {
+        long start = UPDATE_QUANTITY.start();
         try {
             if (qty < 1) {
-                Log.w("DbHelper", "Quantity must be at least 1");
+                AppLog.w("DbHelper", "Quantity must be at least 1");
                 return 0;
             }
 
-            db = getWritableDatabase();
-            ContentValues cv = new ContentValues();
-            cv.put(COL_QUANTITY, qty);
-
-            int result = db.update(TABLE_CART, cv, COL_PRODUCT_NAME + "=?",
-                    new String[]{name});
-            Log.d("DbHelper", "Updated quantity for " + name + " to " + qty + " | Rows affected: " + result);
+            CartItem cached = loadedCart().findByProduct(productId);
+            SQLiteStatement update = statements().updateQuantityByProduct();
+            int result;
+            synchronized (update) {
+                update.bindLong(1, qty);
+                update.bindLong(2, userId());
+                update.bindLong(3, productId);
+                result = update.executeUpdateDelete();
+            }
+            if (AppLog.DEBUG) AppLog.d("DbHelper", "Updated quantity for product " + productId + " to " + qty + " | Rows affected: " + result);
+            if (result > 0 && cached != null) {
+                committed(CartChange.updated(cached.withQuantity(qty)));
+            }
             return result;
         } catch (Exception e) {
-            Log.e("DbHelper", "Error updating quantity: " + e.getMessage());
+            AppLog.e("DbHelper", "Error updating quantity: " + e.getMessage());
             return 0;
+        } finally {
+            UPDATE_QUANTITY.stop(start);
         }
     }
 
 
     public boolean updateQuantityById(int id, int newQuantity) {
-        SQLiteDatabase db = null;
+        long start = UPDATE_QUANTITY_BY_ID.start();
         try {
             if (newQuantity < 1) {
-                Log.w("DbHelper", "Quantity must be at least 1");
+                AppLog.w("DbHelper", "Quantity must be at least 1");
                 return false;
             }
 
-            db = getWritableDatabase();
-            ContentValues cv = new ContentValues();
-            cv.put(COL_QUANTITY, newQuantity);
-
-            int rowsAffected = db.update(TABLE_CART, cv, COL_ID + "=?",
-                    new String[]{String.valueOf(id)});
+            CartItem cached = loadedCart().get(id);
+            SQLiteStatement update = statements().updateQuantityById();
+            int rowsAffected;
+            synchronized (update) {
+                update.bindLong(1, newQuantity);
+                update.bindLong(2, id);
+                update.bindLong(3, userId());
+                rowsAffected = update.executeUpdateDelete();
+            }
 
             boolean success = rowsAffected > 0;
-            Log.d("DbHelper", "Updated item ID " + id + " to quantity " + newQuantity +
+            if (AppLog.DEBUG) AppLog.d("DbHelper", "Updated item ID " + id + " to quantity " + newQuantity +
                     " | Success: " + success);
+            if (success && cached != null) {
+                committed(CartChange.updated(cached.withQuantity(newQuantity)));
+            }
             return success;
         } catch (Exception e) {
-            Log.e("DbHelper", "Error updating quantity by ID: " + e.getMessage());
+            AppLog.e("DbHelper", "Error updating quantity by ID: " + e.getMessage());
             return false;
+        } finally {
+            UPDATE_QUANTITY_BY_ID.stop(start);
         }
     }
 
 
     public boolean incrementQuantity(int id) {
-        Cursor cursor = null;
+        long start = INCREMENT_QUANTITY.start();
         try {
-            cursor = getCartItemById(id);
-            if (cursor != null && cursor.moveToFirst()) {
-                int currentQty = cursor.getInt(cursor.getColumnIndexOrThrow(COL_QUANTITY));
-                return updateQuantityById(id, currentQty + 1);
-            }
-            return false;
+            int currentQty = (int) queryLong(statements().quantityById(), id, userId());
+            if (currentQty < 0) return false;
+            return updateQuantityById(id, currentQty + 1);
         } catch (Exception e) {
-            Log.e("DbHelper", "Error incrementing quantity: " + e.getMessage());
+            AppLog.e("DbHelper", "Error incrementing quantity: " + e.getMessage());
             return false;
         } finally {
-            if (cursor != null) cursor.close();
+            INCREMENT_QUANTITY.stop(start);
         }
     }
 
 
     public boolean decrementQuantity(int id) {
-        Cursor cursor = null;
+        long start = DECREMENT_QUANTITY.start();
         try {
-            cursor = getCartItemById(id);
-            if (cursor != null && cursor.moveToFirst()) {
-                int currentQty = cursor.getInt(cursor.getColumnIndexOrThrow(COL_QUANTITY));
-                if (currentQty > 1) {
-                    return updateQuantityById(id, currentQty - 1);
-                } else {
-                    Log.w("DbHelper", "Cannot decrement below 1");
-                    return false;
-                }
+            int currentQty = (int) queryLong(statements().quantityById(), id, userId());
+            if (currentQty < 0) return false;
+            if (currentQty > 1) {
+                return updateQuantityById(id, currentQty - 1);
+            } else {
+                AppLog.w("DbHelper", "Cannot decrement below 1");
+                return false;
             }
-            return false;
         } catch (Exception e) {
-            Log.e("DbHelper", "Error decrementing quantity: " + e.getMessage());
+            AppLog.e("DbHelper", "Error decrementing quantity: " + e.getMessage());
             return false;
         } finally {
-            if (cursor != null) cursor.close();
+            DECREMENT_QUANTITY.stop(start);
         }
     }
 
 
-    public boolean deleteCartItem(String productName) {
-        SQLiteDatabase db = null;
+    public boolean deleteCartItem(long productId) {
+        long start = DELETE_CART_ITEM.start();
         try {
-            db = getWritableDatabase();
-            int rowsDeleted = db.delete(TABLE_CART, COL_PRODUCT_NAME + "=?",
-                    new String[]{productName});
+            CartItem cached = loadedCart().findByProduct(productId);
+            SQLiteStatement delete = statements().deleteByProduct();
+            int rowsDeleted;
+            synchronized (delete) {
+                delete.bindLong(1, userId());
+                delete.bindLong(2, productId);
+                rowsDeleted = delete.executeUpdateDelete();
+            }
 
             boolean success = rowsDeleted > 0;
-            Log.d("DbHelper", "Deleted " + rowsDeleted + " item(s): " + productName +
+            if (AppLog.DEBUG) AppLog.d("DbHelper", "Deleted " + rowsDeleted + " item(s) for product " + productId +
                     " | Success: " + success);
+            if (success && cached != null) {
+                committed(CartChange.deleted(cached.id));
+            }
             return success;
         } catch (Exception e) {
-            Log.e("DbHelper", "Error deleting item: " + e.getMessage());
+            AppLog.e("DbHelper", "Error deleting item: " + e.getMessage());
             return false;
+        } finally {
+            DELETE_CART_ITEM.stop(start);
         }
     }
 
 
     public boolean deleteCartItemById(int id) {
-        SQLiteDatabase db = null;
+        long start = DELETE_CART_ITEM_BY_ID.start();
         try {
-            db = getWritableDatabase();
-            int rowsDeleted = db.delete(TABLE_CART, COL_ID + "=?",
-                    new String[]{String.valueOf(id)});
+            SQLiteStatement delete = statements().deleteById();
+            int rowsDeleted;
+            synchronized (delete) {
+                delete.bindLong(1, id);
+                delete.bindLong(2, userId());
+                rowsDeleted = delete.executeUpdateDelete();
+            }
 
             boolean success = rowsDeleted > 0;
-            Log.d("DbHelper", "Deleted item with ID: " + id + " | Rows affected: " +
+            if (AppLog.DEBUG) AppLog.d("DbHelper", "Deleted item with ID: " + id + " | Rows affected: " +
                     rowsDeleted + " | Success: " + success);
+            if (success) {
+                committed(CartChange.deleted(id));
+            }
             return success;
         } catch (Exception e) {
-            Log.e("DbHelper", "Error deleting item by ID: " + e.getMessage());
+            AppLog.e("DbHelper", "Error deleting item by ID: " + e.getMessage());
             return false;
+        } finally {
+            DELETE_CART_ITEM_BY_ID.stop(start);
         }
     }
 
-    public void clearCart() {
+    /** @return false if the cart could not be cleared */
+    public boolean clearCart() {
         SQLiteDatabase db = null;
+        long start = CLEAR_CART.start();
         try {
             db = getWritableDatabase();
-            int rowsDeleted = db.delete(TABLE_CART, null, null);
-            Log.d("DbHelper", "Cart cleared | " + rowsDeleted + " items removed");
+            int rowsDeleted = db.delete(TABLE_CART, COL_USER_ID + " = ?", new String[]{String.valueOf(userId())});
+            if (AppLog.DEBUG) AppLog.d("DbHelper", "Cart cleared | " + rowsDeleted + " items removed");
+            committed(CartChange.cleared());
+            return true;
         } catch (Exception e) {
-            Log.e("DbHelper", "Error clearing cart: " + e.getMessage());
+            AppLog.e("DbHelper", "Error clearing cart: " + e.getMessage());
+            return false;
+        } finally {
+            CLEAR_CART.stop(start);
         }
     }
 
 
     public int deleteMultipleItems(int[] ids) {
-        SQLiteDatabase db = null;
-        int totalDeleted = 0;
+        long[] rowIds = new long[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            rowIds[i] = ids[i];
+        }
+        return deleteByIds(rowIds);
+    }
+
+
+    /**
+     * Deletes the given rows in one transaction, using chunked {@code id IN (...)} statements
+     * so each chunk is a single statement instead of one DELETE per id.
+     *
+     * @return the number of rows actually deleted
+     */
+    public int deleteByIds(long[] ids) {
+        long startNanos = DELETE_BY_IDS.start();
         try {
-            db = getWritableDatabase();
-            db.beginTransaction();
+            SQLiteDatabase db = null;
+            SQLiteStatement fullChunk = null;
+            int totalDeleted = 0;
+            boolean committed = false;
+            long userId = userId();
+            CartStore cart = null;
+            try {
+                cart = loadedCart();
+                db = getWritableDatabase();
+                db.beginTransaction();
 
-            for (int id : ids) {
-                int deleted = db.delete(TABLE_CART, COL_ID + "=?",
-                        new String[]{String.valueOf(id)});
-                totalDeleted += deleted;
-            }
+                for (int start = 0; start < ids.length; start += MAX_IN_CHUNK) {
+                    int size = Math.min(MAX_IN_CHUNK, ids.length - start);
+                    SQLiteStatement statement;
+                    if (size == MAX_IN_CHUNK) {
+                        // Every full chunk has the same shape, so it is compiled once and reused
+                        if (fullChunk == null) fullChunk = compileDeleteIn(db, MAX_IN_CHUNK);
+                        statement = fullChunk;
+                    } else {
+                        statement = compileDeleteIn(db, size);
+                    }
+                    statement.clearBindings();
+                    statement.bindLong(1, userId);
+                    for (int i = 0; i < size; i++) {
+                        statement.bindLong(i + 2, ids[start + i]);
+                    }
+                    totalDeleted += statement.executeUpdateDelete();
+                    if (statement != fullChunk) statement.close();
+                }
 
-            db.setTransactionSuccessful();
-            Log.d("DbHelper", "Deleted " + totalDeleted + " items");
-        } catch (Exception e) {
-            Log.e("DbHelper", "Error deleting multiple items: " + e.getMessage());
+                db.setTransactionSuccessful();
+                committed = true;
+                if (AppLog.DEBUG) AppLog.d("DbHelper", "Deleted " + totalDeleted + " items");
+            } catch (Exception e) {
+                AppLog.e("DbHelper", "Error deleting multiple items: " + e.getMessage());
+                totalDeleted = 0;
+            } finally {
+                if (fullChunk != null) fullChunk.close();
+                if (db != null && db.inTransaction()) {
+                    db.endTransaction();
+                }
+            }
+            if (committed && totalDeleted > 0) {
+                // Only ids that were rows of this user's cart; the rest matched nothing. The
+                // store has not heard of the delete yet, so it still holds the removed rows
+                List<CartChange> deleted = new ArrayList<>(totalDeleted);
+                LongSparseArray<Boolean> seen = new LongSparseArray<>(totalDeleted);
+                for (long id : ids) {
+                    if (cart.get(id) == null || seen.get(id) != null) continue;
+                    seen.put(id, Boolean.TRUE);
+                    deleted.add(CartChange.deleted(id));
+                }
+                if (!deleted.isEmpty()) committed(deleted);
+            }
+            return totalDeleted;
         } finally {
-            if (db != null && db.inTransaction()) {
-                db.endTransaction();
+            DELETE_BY_IDS.stop(startNanos);
+        }
+    }
+
+    private SQLiteStatement compileDeleteIn(SQLiteDatabase db, int size) {
+        StringBuilder sql = new StringBuilder("DELETE FROM " + TABLE_CART + " WHERE " + COL_USER_ID + " = ? AND " +
+                COL_ID + " IN (");
+        for (int i = 0; i < size; i++) {
+            sql.append(i == 0 ? "?" : ",?");
+        }
+        return db.compileStatement(sql.append(')').toString());
+    }
+
+
+    /**
+     * Sets the quantity of several rows in one transaction through the cached compiled UPDATE.
+     * Entries with a quantity below 1 are skipped.
+     *
+     * @return the number of rows actually updated
+     */
+    public int updateQuantities(Map<Long, Integer> quantities) {
+        long start = UPDATE_QUANTITIES.start();
+        try {
+            SQLiteDatabase db = null;
+            long[] updatedIds = new long[quantities.size()];
+            int[] updatedQty = new int[quantities.size()];
+            int totalUpdated = 0;
+            boolean committed = false;
+            CartStore cart = null;
+            long userId = userId();
+            try {
+                cart = loadedCart();
+                SQLiteStatement update = statements().updateQuantityById();
+                db = getWritableDatabase();
+
+                // The statement's monitor is taken before the transaction, in the same order
+                // as the single-row writes that share it
+                synchronized (update) {
+                    db.beginTransaction();
+                    for (Map.Entry<Long, Integer> entry : quantities.entrySet()) {
+                        int qty = entry.getValue();
+                        if (qty < 1) {
+                            if (AppLog.WARN) AppLog.w("DbHelper", "Skipping item ID " + entry.getKey() + ": quantity must be at least 1");
+                            continue;
+                        }
+                        update.bindLong(1, qty);
+                        update.bindLong(2, entry.getKey());
+                        update.bindLong(3, userId);
+                        if (update.executeUpdateDelete() > 0) {
+                            updatedIds[totalUpdated] = entry.getKey();
+                            updatedQty[totalUpdated] = qty;
+                            totalUpdated++;
+                        }
+                    }
+                }
+
+                db.setTransactionSuccessful();
+                committed = true;
+                if (AppLog.DEBUG) AppLog.d("DbHelper", "Updated quantity for " + totalUpdated + " items");
+            } catch (Exception e) {
+                AppLog.e("DbHelper", "Error updating quantities: " + e.getMessage());
+                totalUpdated = 0;
+            } finally {
+                if (db != null && db.inTransaction()) {
+                    db.endTransaction();
+                }
             }
+            if (committed && totalUpdated > 0) {
+                List<CartChange> updated = new ArrayList<>(totalUpdated);
+                for (int i = 0; i < totalUpdated; i++) {
+                    CartItem cached = cart.get(updatedIds[i]);
+                    if (cached != null) updated.add(CartChange.updated(cached.withQuantity(updatedQty[i])));
+                }
+                committed(updated);
+            }
+            return totalUpdated;
+        } finally {
+            UPDATE_QUANTITIES.stop(start);
         }
-        return totalDeleted;
     }
 
 
     public boolean isCartEmpty() {
-        return getTotalItemCount() == 0;
+        long start = IS_CART_EMPTY.start();
+        try {
+            return loadedCart().isEmpty();
+        } catch (Exception e) {
+            AppLog.e("DbHelper", "Error checking if cart is empty: " + e.getMessage());
+            return true;
+        } finally {
+            IS_CART_EMPTY.stop(start);
+        }
     }
 
 
     public String getCartSummary() {
-        StringBuilder summary = new StringBuilder();
-        Cursor cursor = null;
+        long start = GET_CART_SUMMARY.start();
         try {
-            cursor = getAllCartItems();
-            if (cursor != null && cursor.moveToFirst()) {
-                summary.append("=== CART SUMMARY ===\n");
-                do {
-                    String name = cursor.getString(cursor.getColumnIndexOrThrow(COL_PRODUCT_NAME));
-                    double price = cursor.getDouble(cursor.getColumnIndexOrThrow(COL_PRICE));
-                    int qty = cursor.getInt(cursor.getColumnIndexOrThrow(COL_QUANTITY));
-                    summary.append(String.format("%s | $%.2f x %d = $%.2f\n",
-                            name, price, qty, price * qty));
-                } while (cursor.moveToNext());
-                summary.append(String.format("TOTAL: $%.2f\n", getTotalCartPrice()));
-                summary.append("====================");
-            } else {
-                summary.append("Cart is empty");
+            StringBuilder summary = new StringBuilder();
+            Cursor cursor = null;
+            try {
+                cursor = getAllCartItems();
+                if (cursor != null && cursor.moveToFirst()) {
+                    summary.append("=== CART SUMMARY ===\n");
+                    do {
+                        String name = cursor.getString(cursor.getColumnIndexOrThrow(COL_PRODUCT_NAME));
+                        long cents = cursor.getLong(cursor.getColumnIndexOrThrow(COL_PRICE_CENTS));
+                        int qty = cursor.getInt(cursor.getColumnIndexOrThrow(COL_QUANTITY));
+                        summary.append(name).append(" | ");
+                        MoneyFormatter.append(summary, cents).append(" x ").append(qty).append(" = ");
+                        MoneyFormatter.append(summary, cents * qty).append('\n');
+                    } while (cursor.moveToNext());
+                    summary.append("TOTAL: ").append(getTotalCartPrice()).append('\n');
+                    summary.append("====================");
+                } else {
+                    summary.append("Cart is empty");
+                }
+            } catch (Exception e) {
+                AppLog.e("DbHelper", "Error getting cart summary: " + e.getMessage());
+                summary.append("Error loading cart");
+            } finally {
+                if (cursor != null) cursor.close();
             }
-        } catch (Exception e) {
-            Log.e("DbHelper", "Error getting cart summary: " + e.getMessage());
-            summary.append("Error loading cart");
+            return summary.toString();
         } finally {
-            if (cursor != null) cursor.close();
+            GET_CART_SUMMARY.stop(start);
         }
-        return summary.toString();
     }
 }
\ No newline at end of file
@@ -0,0 +1,52 @@
+package com.example.mobstore;
+
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/** Posts each batch to the backend URL in {@code R.string.order_sync_url}. */
+class HttpOrderSink implements OrderSink {
+
+    private static final int TIMEOUT_MS = 15_000;
+
+    private final URL endpoint;
+
+    HttpOrderSink(URL endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    @Override
+    public void send(Batch batch) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) endpoint.openConnection();
+        try {
+            connection.setRequestMethod("POST");
+            connection.setConnectTimeout(TIMEOUT_MS);
+            connection.setReadTimeout(TIMEOUT_MS);
+            connection.setDoOutput(true);
+            connection.setFixedLengthStreamingMode(batch.body.length);
+            connection.setRequestProperty("Content-Type", Batch.CONTENT_TYPE);
+            connection.setRequestProperty("Content-Encoding", Batch.CONTENT_ENCODING);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(batch.body);
+            }
+
+            int status = connection.getResponseCode();
+            if (status < 200 || status >= 300) {
+                throw new IOException("Order backend answered HTTP " + status);
+            }
+            // Drain the reply so the connection can be reused
+            try (InputStream in = connection.getInputStream()) {
+                byte[] buffer = new byte[512];
+                while (in.read(buffer) != -1) {
+                    // discard
+                }
+            }
+            if (AppLog.DEBUG) AppLog.d("HttpOrderSink", "Sent " + batch.orderIds.length + " orders, " + batch.body.length + " bytes");
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
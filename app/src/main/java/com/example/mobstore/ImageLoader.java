@@ -0,0 +1,210 @@
+package com.example.mobstore;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.drawable.BitmapDrawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.DisplayMetrics;
+import android.util.LruCache;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Loads drawable resources as bitmaps sized for the view that shows them.
+ * Decoding runs on a background pool and downsamples with inSampleSize; results go into an
+ * LRU cache sized as a fraction of the heap. A bitmap that leaves the cache may still be on
+ * screen, so it is never reused for another decode; the GC frees it once no view holds it.
+ */
+public final class ImageLoader {
+
+    private static final int DECODE_THREADS = 2;
+    /** Share of the max heap the bitmap cache may use. */
+    private static final int CACHE_HEAP_DIVISOR = 8;
+
+    private static volatile ImageLoader instance;
+
+    private final Resources resources;
+    private final LruCache<String, Bitmap> memoryCache;
+    private final ExecutorService decodeExecutor;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final AtomicLong decodedBytes = new AtomicLong();
+
+    public static ImageLoader getInstance(Context context) {
+        if (instance == null) {
+            synchronized (ImageLoader.class) {
+                if (instance == null) {
+                    instance = new ImageLoader(context.getApplicationContext().getResources(),
+                            (int) (Runtime.getRuntime().maxMemory() / CACHE_HEAP_DIVISOR));
+                }
+            }
+        }
+        return instance;
+    }
+
+    ImageLoader(Resources resources, int cacheBytes) {
+        this.resources = resources;
+        this.memoryCache = new LruCache<String, Bitmap>(cacheBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getAllocationByteCount();
+            }
+        };
+        this.decodeExecutor = Executors.newFixedThreadPool(DECODE_THREADS, r -> {
+            Thread t = new Thread(() -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                r.run();
+            }, "image-decode");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** Shows {@code resId} in {@code view}, decoded at the view's size. */
+    public void load(ImageView view, int resId) {
+        int[] size = targetSize(view);
+        String key = key(resId, size[0], size[1]);
+        view.setTag(R.id.image_loader_key, key);
+
+        Bitmap cached = memoryCache.get(key);
+        if (cached != null) {
+            view.setImageBitmap(cached);
+            return;
+        }
+
+        view.setImageDrawable(null);
+        decodeExecutor.execute(() -> {
+            Bitmap bitmap = decodeAndCache(key, resId, size[0], size[1]);
+            mainHandler.post(() -> {
+                // The view may have been rebound to another image while we were decoding
+                if (!key.equals(view.getTag(R.id.image_loader_key))) return;
+                if (bitmap != null) {
+                    view.setImageBitmap(bitmap);
+                } else {
+                    showFallback(view, resId);
+                }
+            });
+        });
+    }
+
+    // Not a bitmap (e.g. a vector drawable) or a missing resource; let the framework try it
+    private static void showFallback(ImageView view, int resId) {
+        try {
+            view.setImageResource(resId);
+        } catch (Exception e) {
+            AppLog.e("ImageLoader", "Error setting image: " + e.getMessage());
+            view.setImageResource(android.R.drawable.ic_menu_gallery);
+        }
+    }
+
+    /** Sets {@code resId} as the background of {@code view}, decoded at screen size. */
+    public void loadBackground(View view, int resId) {
+        DisplayMetrics metrics = resources.getDisplayMetrics();
+        int width = metrics.widthPixels;
+        int height = metrics.heightPixels;
+        String key = key(resId, width, height);
+        view.setTag(R.id.image_loader_background_key, key);
+
+        Bitmap cached = memoryCache.get(key);
+        if (cached != null) {
+            view.setBackground(new BitmapDrawable(resources, cached));
+            return;
+        }
+
+        decodeExecutor.execute(() -> {
+            Bitmap bitmap = decodeAndCache(key, resId, width, height);
+            if (bitmap == null) return;
+            mainHandler.post(() -> {
+                // A later call may have asked for another background while we were decoding
+                if (!key.equals(view.getTag(R.id.image_loader_background_key))) return;
+                view.setBackground(new BitmapDrawable(resources, bitmap));
+            });
+        });
+    }
+
+    /** Total bytes of bitmap memory this loader has decoded so far. */
+    long getDecodedBytes() {
+        return decodedBytes.get();
+    }
+
+    // Two decode threads can race on the same key; the first bitmap cached wins and the
+    // other is dropped, so a bitmap already handed to a view is never replaced under it
+    Bitmap decodeAndCache(String key, int resId, int width, int height) {
+        Bitmap bitmap = memoryCache.get(key);
+        if (bitmap != null) return bitmap;
+        bitmap = decode(resId, width, height);
+        if (bitmap == null) return null;
+        synchronized (memoryCache) {
+            Bitmap cached = memoryCache.get(key);
+            if (cached != null) return cached;
+            memoryCache.put(key, bitmap);
+        }
+        return bitmap;
+    }
+
+    /** Decodes {@code resId} downsampled to no less than the requested size. Null if it is not a bitmap. */
+    Bitmap decode(int resId, int reqWidth, int reqHeight) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        options.inScaled = false;
+        decodeStream(resId, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight, reqWidth, reqHeight);
+        options.inJustDecodeBounds = false;
+
+        Bitmap bitmap = decodeStream(resId, options);
+        if (bitmap != null) {
+            decodedBytes.addAndGet(bitmap.getAllocationByteCount());
+        }
+        return bitmap;
+    }
+
+    private Bitmap decodeStream(int resId, BitmapFactory.Options options) {
+        try (InputStream in = resources.openRawResource(resId)) {
+            return BitmapFactory.decodeStream(in, null, options);
+        } catch (IOException | Resources.NotFoundException e) {
+            AppLog.e("ImageLoader", "Error decoding resource " + resId + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /** Largest power of two that keeps both sides at or above the requested size. */
+    static int calculateInSampleSize(int width, int height, int reqWidth, int reqHeight) {
+        int sampleSize = 1;
+        if (reqWidth <= 0 || reqHeight <= 0) return sampleSize;
+        while ((width / (sampleSize * 2)) >= reqWidth && (height / (sampleSize * 2)) >= reqHeight) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    // Before layout the view has no size yet, so fall back to its layout params, then the screen
+    private int[] targetSize(ImageView view) {
+        int width = view.getWidth();
+        int height = view.getHeight();
+        ViewGroup.LayoutParams params = view.getLayoutParams();
+        if (width <= 0 && params != null && params.width > 0) width = params.width;
+        if (height <= 0 && params != null && params.height > 0) height = params.height;
+        DisplayMetrics metrics = resources.getDisplayMetrics();
+        if (width <= 0) width = metrics.widthPixels / 2;
+        if (height <= 0) height = width;
+        return new int[]{width, height};
+    }
+
+    private static String key(int resId, int width, int height) {
+        return resId + "@" + width + "x" + height;
+    }
+}
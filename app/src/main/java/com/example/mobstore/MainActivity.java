@@ -1,6 +1,11 @@
 package com.example.mobstore;
 
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.lifecycle.Lifecycle;
+import androidx.paging.Pager;
+import androidx.paging.PagingConfig;
+import androidx.paging.PagingData;
+import androidx.paging.PagingLiveData;
 import androidx.recyclerview.widget.GridLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
@@ -8,47 +13,77 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.os.Bundle;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.view.View;
+import android.view.ViewTreeObserver;
 import android.widget.Button;
+import android.widget.EditText;
 import android.widget.ImageView;
 import android.widget.TextView;
 
-import java.util.ArrayList;
 import java.util.List;
 
 public class MainActivity extends AppCompatActivity {
 
+    // Two columns of ~180dp rows: a page covers a few screens of scrolling
+    private static final int PAGE_SIZE = 30;
+    // Pages further than this from the viewport are dropped and reloaded on scroll back
+    private static final int MAX_LOADED_ITEMS = PAGE_SIZE * 10;
+
     ImageView profile;
     TextView greeting;
+    TextView cartBadge;
+
+    private RecyclerView recyclerView;
+    private AccessoryAdapter adapter;
+    private ProductSearch productSearch;
+    // Latest catalog generation, resubmitted when the search box is cleared
+    private PagingData<Product> catalogData;
+    // Null until onFirstFrame; opening the cart would otherwise hold up the first frame
+    private CartRepository cartRepository;
+    // Set once the saved session has been checked, which also loads the preferences
+    private boolean greetingReady;
+    // Only the badge needs the cart here; it follows change events rather than re-querying
+    private final CartLines cartLines = new CartLines();
+    private final CartChanges.Listener cartListener = (version, changes) -> {
+        if (cartLines.apply(version, changes)) showCartBadge();
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        // Only views and click handlers here; the layout's flat placeholder background stands
+        // in until the photo is decoded, and everything that touches disk waits for onFirstFrame
         setContentView(R.layout.activity_main);
 
         greeting = findViewById(R.id.greet);
         profile = findViewById(R.id.imageView);
-        DbHelper dbHelper = new DbHelper(this);
+        cartBadge = findViewById(R.id.cartBadge);
 
         Button mcart = findViewById(R.id.button);
         mcart.setOnClickListener(v -> startActivity(new Intent(this, MyCart.class)));
 
-        RecyclerView recyclerView = findViewById(R.id.recyclerView);
+        recyclerView = findViewById(R.id.recyclerView);
         recyclerView.setLayoutManager(new GridLayoutManager(this, 2));
-
-        List<Product> products = new ArrayList<>();
-        products.add(new Product("Headphones",   R.drawable.head, 12.99));
-        products.add(new Product("Charger",      R.drawable.charger, 10.00));
-        products.add(new Product("Phone Case",   R.drawable.back, 3.00));
-        products.add(new Product("Power Bank",   R.drawable.bank, 49.99));
-        products.add(new Product("Earbuds",      R.drawable.er, 6.88));
-        products.add(new Product("Earphones",    R.drawable.ep, 100.99));
-        products.add(new Product("Tempered",     R.drawable.tm, 2.99));
-        products.add(new Product("SD Card",      R.drawable.sd, 10.99));
-
         recyclerView.setHasFixedSize(true);
         recyclerView.setItemViewCacheSize(20);
-        recyclerView.setAdapter(new AccessoryAdapter(this, products, dbHelper));
+
+        EditText searchBox = findViewById(R.id.searchBox);
+        searchBox.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                if (productSearch != null) productSearch.onQueryChanged(s.toString());
+            }
+        });
 
         profile.setOnClickListener(new View.OnClickListener() {
             @Override
@@ -58,22 +93,117 @@ public class MainActivity extends AppCompatActivity {
             }
         });
 
-        updateGreeting();
+        View root = findViewById(R.id.main);
+        root.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                root.getViewTreeObserver().removeOnPreDrawListener(this);
+                // Posted from the first traversal, so it runs once that frame has been drawn
+                root.post(() -> {
+                    if (!isDestroyed()) onFirstFrame();
+                });
+                return true;
+            }
+        });
+    }
 
-        SharedPreferences sharedPref = getSharedPreferences("MyPrefs", Context.MODE_PRIVATE);
-        String username = sharedPref.getString("username", null);
-        if (username != null) {
-            greeting.setText("Hi, " + username);
-            greeting.setVisibility(View.VISIBLE);
-        } else {
-            greeting.setText("Hi");
+    /**
+     * The rest of startup: opens the cart and the catalog, starts the background decode and
+     * checks the saved session. Reports the activity fully drawn once the first catalog page
+     * is on screen.
+     */
+    private void onFirstFrame() {
+        MobStoreApp.from(this).warmUp();
+        ImageLoader.getInstance(this).loadBackground(findViewById(R.id.main), R.drawable.back6);
+        cartRepository = CartRepository.getInstance(this);
+
+        adapter = new AccessoryAdapter(this, cartRepository);
+        adapter.registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
+            @Override
+            public void onItemRangeInserted(int positionStart, int itemCount) {
+                adapter.unregisterAdapterDataObserver(this);
+                // After the layout pass that binds the new rows
+                recyclerView.post(MainActivity.this::reportFullyDrawn);
+            }
+        });
+        recyclerView.setAdapter(adapter);
+
+        ProductCatalog catalog = MobStoreApp.from(this).getProductCatalog();
+        productSearch = new ProductSearch(catalog, new ProductSearch.Listener() {
+            @Override
+            public void onResults(String query, List<Product> results) {
+                adapter.submitData(getLifecycle(), PagingData.from(results));
+            }
+
+            @Override
+            public void onCleared() {
+                if (catalogData != null) adapter.submitData(getLifecycle(), catalogData);
+            }
+        });
+
+        // Only pages near the viewport are held in memory, however large the catalog is
+        Pager<Long, Product> pager = new Pager<>(
+                new PagingConfig(PAGE_SIZE, PAGE_SIZE, false, PAGE_SIZE * 2, MAX_LOADED_ITEMS), catalog::newPagingSource);
+        PagingLiveData.cachedIn(PagingLiveData.getLiveData(pager), getLifecycle())
+                .observe(this, data -> {
+                    catalogData = data;
+                    if (!productSearch.isActive()) adapter.submitData(getLifecycle(), data);
+                });
+
+        // The greeting trusts the saved username only while the session behind it is valid.
+        // The check reads the preferences off the main thread, so updateGreeting finds them loaded
+        UserRepository.getInstance(this).restoreSession(session -> {
+            if (isDestroyed()) return;
+            greetingReady = true;
+            updateGreeting();
+        });
+
+        if (getLifecycle().getCurrentState().isAtLeast(Lifecycle.State.STARTED)) {
+            watchCart();
         }
     }
 
+    @Override
+    protected void onStart() {
+        super.onStart();
+        // On a cold start the cart is not open yet; onFirstFrame starts watching it
+        if (cartRepository != null) watchCart();
+    }
+
+    @Override
+    protected void onStop() {
+        if (cartRepository != null) cartRepository.changes().removeListener(cartListener);
+        super.onStop();
+    }
+
+    private void watchCart() {
+        cartRepository.changes().addListener(cartListener);
+        if (!cartLines.isCurrent(cartRepository.changes())) {
+            cartRepository.loadCartLines(snapshot -> {
+                if (isDestroyed() || snapshot == null) return;
+                cartLines.reset(snapshot);
+                showCartBadge();
+            });
+        }
+    }
+
+    private void showCartBadge() {
+        int quantity = cartLines.totalQuantity();
+        cartBadge.setVisibility(quantity > 0 ? View.VISIBLE : View.GONE);
+        cartBadge.setText(quantity > 99 ? "99+" : String.valueOf(quantity));
+    }
+
+    @Override
+    protected void onDestroy() {
+        if (productSearch != null) productSearch.cancel();
+        super.onDestroy();
+    }
+
     @Override
     protected void onResume() {
         super.onResume();
-        updateGreeting();
+        // Back from the login screen; skipped on a cold start, where the session check calls it
+        if (greetingReady) updateGreeting();
     }
 
     private void updateGreeting() {
@@ -81,8 +211,9 @@ public class MainActivity extends AppCompatActivity {
         String username = sharedPref.getString("username", null);
         if (username != null && !username.isEmpty()) {
             greeting.setText("Hi, " + username);
+            greeting.setVisibility(View.VISIBLE);
         } else {
             greeting.setText("Hi");
         }
     }
-}
\ No newline at end of file
+}
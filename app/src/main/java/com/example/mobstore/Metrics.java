@@ -0,0 +1,213 @@
+package com.example.mobstore;
+
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Timers and counters for the database, adapter and checkout hot paths. Recording is lock-free
+ * and allocates nothing: a timer is a {@link System#nanoTime} pair feeding a log-scale
+ * histogram of atomic buckets. Handles are looked up once and kept in static fields.
+ *
+ * <p>Only debug builds record anything ({@code BuildConfig.METRICS}); elsewhere every call is
+ * a branch on a constant. A timer made with {@link #tracedTimer} also marks each timed span as
+ * an {@link AppTrace} section of the same name. Read the numbers with {@link #dump}, which
+ * backs the debug metrics screen and its {@code adb shell dumpsys activity} output.
+ */
+public final class Metrics {
+
+    static final boolean ENABLED = BuildConfig.METRICS;
+
+    private static final ConcurrentMap<String, Timer> TIMERS = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, Counter> COUNTERS = new ConcurrentHashMap<>();
+
+    private Metrics() {
+    }
+
+    /** The timer called {@code name}, created on first use. */
+    public static Timer timer(String name) {
+        return TIMERS.computeIfAbsent(name, Timer::new);
+    }
+
+    /**
+     * Like {@link #timer}, but each span is also a trace section, so it must be stopped on the
+     * thread that started it, in a {@code finally}.
+     */
+    public static Timer tracedTimer(String name) {
+        Timer timer = TIMERS.computeIfAbsent(name, Timer::new);
+        // Also when the name was first looked up through timer(), e.g. by a test
+        timer.traced = true;
+        return timer;
+    }
+
+    /** The counter called {@code name}, created on first use. */
+    public static Counter counter(String name) {
+        return COUNTERS.computeIfAbsent(name, Counter::new);
+    }
+
+    /** Zeroes every timer and counter, e.g. before measuring one flow. */
+    public static void reset() {
+        for (Timer timer : TIMERS.values()) timer.reset();
+        for (Counter counter : COUNTERS.values()) counter.reset();
+    }
+
+    /** Writes every metric that has recorded something, sorted by name, one per line. */
+    public static void dump(PrintWriter out) {
+        if (!ENABLED) {
+            out.println("Metrics are off in this build");
+            return;
+        }
+        out.println("Timers (ms): count total mean p50 p90 p99 max");
+        for (Timer timer : new TreeMap<>(TIMERS).values()) {
+            long count = timer.count();
+            if (count == 0) continue;
+            out.println(String.format(Locale.US, "  %-36s %8d %10.2f %8.3f %8.3f %8.3f %8.3f %8.3f",
+                    timer.name, count, millis(timer.totalNanos()), millis(timer.totalNanos() / count),
+                    millis(timer.percentile(0.5)), millis(timer.percentile(0.9)), millis(timer.percentile(0.99)),
+                    millis(timer.maxNanos())));
+        }
+        out.println("Counters:");
+        for (Map.Entry<String, Counter> entry : new TreeMap<>(COUNTERS).entrySet()) {
+            long value = entry.getValue().get();
+            if (value == 0) continue;
+            out.println(String.format(Locale.US, "  %-36s %8d", entry.getKey(), value));
+        }
+        out.flush();
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    /**
+     * Durations in a histogram with four buckets per power of two, so a percentile is within
+     * about 20% of the true value: good enough to tell a 2 ms query from a 20 ms one.
+     */
+    public static final class Timer {
+
+        static final int SUB_BITS = 2;
+        private static final int SUB_BUCKETS = 1 << SUB_BITS;
+        static final int BUCKETS = (64 - SUB_BITS) << SUB_BITS;
+
+        final String name;
+        private volatile boolean traced;
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+        Timer(String name) {
+            this.name = name;
+        }
+
+        /** A start time to hand to {@link #stop}. */
+        public long start() {
+            if (AppTrace.ENABLED && traced) AppTrace.begin(name);
+            return ENABLED ? System.nanoTime() : 0;
+        }
+
+        /** Records the time since {@code start}, as returned by {@link #start}. */
+        public void stop(long start) {
+            if (ENABLED) record(System.nanoTime() - start);
+            if (AppTrace.ENABLED && traced) AppTrace.end();
+        }
+
+        void record(long nanos) {
+            if (nanos < 0) nanos = 0;
+            buckets.incrementAndGet(bucketOf(nanos));
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+        }
+
+        public long count() {
+            return count.sum();
+        }
+
+        public long totalNanos() {
+            return totalNanos.sum();
+        }
+
+        public long maxNanos() {
+            return maxNanos.get();
+        }
+
+        /**
+         * The smallest bucket bound that at least {@code fraction} of the recorded durations
+         * fall under, capped at the maximum seen; 0 if nothing was recorded.
+         */
+        public long percentile(double fraction) {
+            long[] snapshot = new long[BUCKETS];
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                snapshot[i] = buckets.get(i);
+                total += snapshot[i];
+            }
+            if (total == 0) return 0;
+            long rank = Math.max(1, (long) Math.ceil(fraction * total));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += snapshot[i];
+                if (seen >= rank) return Math.min(upperBound(i), maxNanos());
+            }
+            return maxNanos();
+        }
+
+        void reset() {
+            for (int i = 0; i < BUCKETS; i++) buckets.set(i, 0);
+            count.reset();
+            totalNanos.reset();
+            maxNanos.reset();
+        }
+
+        // Values below SUB_BUCKETS get a bucket each; above that, the leading bit picks the
+        // power of two and the next SUB_BITS bits pick the bucket within it
+        static int bucketOf(long nanos) {
+            if (nanos < SUB_BUCKETS) return (int) nanos;
+            int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+            int sub = (int) (nanos >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+            return ((exponent - SUB_BITS + 1) << SUB_BITS) + sub;
+        }
+
+        /** The largest duration that lands in {@code bucket}. */
+        static long upperBound(int bucket) {
+            if (bucket < SUB_BUCKETS) return bucket;
+            if (bucket == BUCKETS - 1) return Long.MAX_VALUE;
+            int exponent = (bucket >>> SUB_BITS) + SUB_BITS - 1;
+            long sub = bucket & (SUB_BUCKETS - 1);
+            return ((SUB_BUCKETS + sub + 1) << (exponent - SUB_BITS)) - 1;
+        }
+    }
+
+    public static final class Counter {
+
+        final String name;
+        private final LongAdder value = new LongAdder();
+
+        Counter(String name) {
+            this.name = name;
+        }
+
+        public void increment() {
+            if (ENABLED) value.increment();
+        }
+
+        public void add(long delta) {
+            if (ENABLED) value.add(delta);
+        }
+
+        public long get() {
+            return value.sum();
+        }
+
+        void reset() {
+            value.reset();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.mobstore;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One schema step for a SQLiteOpenHelper, from {@code startVersion} to {@code endVersion}.
+ * Helpers list their steps and call {@link #migrate} from onUpgrade, which chains them
+ * from the installed version up to the current one instead of dropping tables.
+ */
+final class Migration {
+
+    interface Step {
+        void apply(SQLiteDatabase db);
+    }
+
+    /** Creates a table under the given name; used when a step has to rebuild one. */
+    interface TableCreator {
+        void create(SQLiteDatabase db, String tableName);
+    }
+
+    final int startVersion;
+    final int endVersion;
+    private final Step step;
+
+    Migration(int startVersion, int endVersion, Step step) {
+        this.startVersion = startVersion;
+        this.endVersion = endVersion;
+        this.step = step;
+    }
+
+    /**
+     * Applies migrations from {@code fromVersion} to {@code toVersion}, always taking the
+     * longest available jump. Runs inside onUpgrade's transaction, so any failure rolls the
+     * whole upgrade back and leaves the old version in place.
+     *
+     * @throws IllegalStateException if there is no path to {@code toVersion}
+     */
+    static void migrate(SQLiteDatabase db, int fromVersion, int toVersion, Migration... migrations) {
+        int version = fromVersion;
+        while (version < toVersion) {
+            Migration next = null;
+            for (Migration m : migrations) {
+                if (m.startVersion == version && m.endVersion <= toVersion
+                        && (next == null || m.endVersion > next.endVersion)) {
+                    next = m;
+                }
+            }
+            if (next == null) {
+                throw new IllegalStateException("No migration from version " + version + " to " + toVersion);
+            }
+            next.step.apply(db);
+            if (AppLog.DEBUG) AppLog.d("Migration", "Migrated " + db.getPath() + " from " + version + " to " + next.endVersion);
+            version = next.endVersion;
+        }
+    }
+
+    /**
+     * Rebuilds {@code table} with the schema produced by {@code creator}, copying over every
+     * column the old and new schemas share. Columns that only exist in the new schema get
+     * their defaults. Creates the table from scratch if it does not exist yet.
+     */
+    static void rebuildTable(SQLiteDatabase db, String table, TableCreator creator) {
+        List<String> oldColumns = columnsOf(db, table);
+        if (oldColumns.isEmpty()) {
+            creator.create(db, table);
+            return;
+        }
+
+        String temp = table + "_new";
+        db.execSQL("DROP TABLE IF EXISTS " + temp);
+        creator.create(db, temp);
+
+        StringBuilder shared = new StringBuilder();
+        for (String column : columnsOf(db, temp)) {
+            if (oldColumns.contains(column)) {
+                if (shared.length() > 0) shared.append(", ");
+                shared.append(column);
+            }
+        }
+        if (shared.length() > 0) {
+            db.execSQL("INSERT INTO " + temp + " (" + shared + ") SELECT " + shared + " FROM " + table);
+        }
+        db.execSQL("DROP TABLE " + table);
+        db.execSQL("ALTER TABLE " + temp + " RENAME TO " + table);
+    }
+
+    static List<String> columnsOf(SQLiteDatabase db, String table) {
+        List<String> columns = new ArrayList<>();
+        Cursor c = null;
+        try {
+            c = db.rawQuery("PRAGMA table_info(" + table + ")", null);
+            int nameCol = c.getColumnIndexOrThrow("name");
+            while (c.moveToNext()) {
+                columns.add(c.getString(nameCol));
+            }
+        } finally {
+            if (c != null) c.close();
+        }
+        return columns;
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.mobstore;
+
+import android.app.Application;
+import android.content.Context;
+import android.os.Process;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+
+/**
+ * Owns the app's database helpers. There is one DbHelper and one UserDbHelper per process,
+ * bound to the Application context, so activities share their connections instead of each
+ * opening (and leaking) their own.
+ */
+public class MobStoreApp extends Application {
+
+    private DbHelper cartDb;
+    private UserDbHelper userDb;
+    private CartRepository cartRepository;
+    private UserRepository userRepository;
+    private ProductCatalog productCatalog;
+    private OrderStore orderStore;
+    private OrderOutbox orderOutbox;
+    private OrderSink orderSink;
+    private boolean orderSinkResolved;
+    private boolean warmedUp;
+
+    public static MobStoreApp from(Context context) {
+        return (MobStoreApp) context.getApplicationContext();
+    }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        cartDb = new DbHelper(this);
+        userDb = new UserDbHelper(this);
+    }
+
+    public DbHelper getCartDb() {
+        return cartDb;
+    }
+
+    public UserDbHelper getUserDb() {
+        return userDb;
+    }
+
+    public synchronized CartRepository getCartRepository() {
+        if (cartRepository == null) {
+            // The cart of whoever was signed in last, looked up by the first cart call on a
+            // background thread. The session itself is checked later and switches back to the
+            // guest cart if it has lapsed
+            cartDb.setInitialUser(() -> getSharedPreferences(UserRepository.PREFS, MODE_PRIVATE)
+                    .getLong(UserRepository.PREF_USER_ID, DbHelper.GUEST));
+            cartRepository = new CartRepository(cartDb);
+        }
+        return cartRepository;
+    }
+
+    public synchronized UserRepository getUserRepository() {
+        if (userRepository == null) {
+            userRepository = new UserRepository(userDb, getSharedPreferences(UserRepository.PREFS, MODE_PRIVATE),
+                    new SessionTokens(SessionTokens.keyStore()), new UserRepository.SessionListener() {
+                        @Override
+                        public void onLogin(long userId) {
+                            getCartRepository().switchUser(userId, true, null);
+                        }
+
+                        @Override
+                        public void onSessionEnded() {
+                            getCartRepository().switchUser(DbHelper.GUEST, false, null);
+                        }
+                    });
+        }
+        return userRepository;
+    }
+
+    public synchronized ProductCatalog getProductCatalog() {
+        if (productCatalog == null) {
+            productCatalog = new ProductCatalog(this, cartDb);
+        }
+        return productCatalog;
+    }
+
+    public synchronized OrderStore getOrderStore() {
+        if (orderStore == null) {
+            orderStore = new OrderStore(cartDb);
+        }
+        return orderStore;
+    }
+
+    public synchronized OrderOutbox getOrderOutbox() {
+        if (orderOutbox == null) {
+            orderOutbox = new OrderOutbox(cartDb);
+        }
+        return orderOutbox;
+    }
+
+    /**
+     * Where queued orders are sent: the backend in {@code R.string.order_sync_url}, or null
+     * when none is configured, in which case orders stay queued until one is.
+     */
+    public synchronized OrderSink getOrderSink() {
+        if (!orderSinkResolved) {
+            orderSinkResolved = true;
+            String url = getString(R.string.order_sync_url);
+            if (!url.isEmpty()) {
+                try {
+                    orderSink = new HttpOrderSink(new URL(url));
+                } catch (MalformedURLException e) {
+                    AppLog.e("MobStoreApp", "Bad order_sync_url: " + e.getMessage());
+                }
+            }
+        }
+        return orderSink;
+    }
+
+    /** Replaces the order backend, e.g. with an in-process fake in tests. */
+    public synchronized void setOrderSink(OrderSink sink) {
+        orderSink = sink;
+        orderSinkResolved = true;
+    }
+
+    /**
+     * Opens both databases (and runs any pending migrations) in the background. Called by
+     * {@link MainActivity} once its first frame is up, so the disk work does not compete with
+     * drawing it; later calls do nothing.
+     */
+    synchronized void warmUp() {
+        if (warmedUp) return;
+        warmedUp = true;
+        Thread warmer = new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            try {
+                cartDb.getWritableDatabase();
+                userDb.getWritableDatabase();
+                AppLog.d("MobStoreApp", "Databases warmed up");
+                // Orders left queued by an earlier process, e.g. one that died mid-sync
+                if (getOrderOutbox().pendingCount() > 0) {
+                    OrderSyncWorker.enqueue(this);
+                }
+            } catch (Exception e) {
+                AppLog.e("MobStoreApp", "Error warming up databases: " + e.getMessage());
+            }
+        }, "db-warmup");
+        warmer.start();
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.mobstore;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * An amount of money in whole cents. Prices are stored, summed and multiplied as cents so
+ * totals are exact; only {@link MoneyFormatter} turns them into text.
+ */
+public final class Money implements Comparable<Money> {
+
+    public static final Money ZERO = new Money(0);
+
+    private final long cents;
+
+    private Money(long cents) {
+        this.cents = cents;
+    }
+
+    public static Money ofCents(long cents) {
+        return cents == 0 ? ZERO : new Money(cents);
+    }
+
+    /**
+     * Parses a decimal amount such as {@code "12.99"}, rounding half up to the nearest cent.
+     *
+     * @throws NumberFormatException if the text is not a decimal number
+     */
+    public static Money parse(String amount) {
+        BigDecimal value = new BigDecimal(amount.trim()).setScale(2, RoundingMode.HALF_UP);
+        return ofCents(value.unscaledValue().longValueExact());
+    }
+
+    /** Nearest cent to a legacy floating-point amount, rounding the decimal it prints as. */
+    public static Money fromDouble(double amount) {
+        return ofCents(BigDecimal.valueOf(amount).setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact());
+    }
+
+    public long cents() {
+        return cents;
+    }
+
+    public Money plus(Money other) {
+        return ofCents(Math.addExact(cents, other.cents));
+    }
+
+    public Money times(int quantity) {
+        return ofCents(Math.multiplyExact(cents, (long) quantity));
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        return Long.compare(cents, other.cents);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || (o instanceof Money && cents == ((Money) o).cents);
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(cents);
+    }
+
+    /** The amount as {@code $12.99}; allocates, so keep it out of bind paths. */
+    @Override
+    public String toString() {
+        return MoneyFormatter.toString(cents);
+    }
+}
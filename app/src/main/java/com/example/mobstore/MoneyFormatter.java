@@ -0,0 +1,83 @@
+package com.example.mobstore;
+
+import android.widget.TextView;
+
+/**
+ * Formats cents as {@code $1234.56} without String.format, which builds a Formatter, a
+ * regex matcher and several strings per call. The char[] and StringBuilder variants write
+ * into caller-owned buffers and allocate nothing, so a view holder can keep one buffer and
+ * reuse it on every bind. The decimal point is always '.', whatever the default locale.
+ */
+final class MoneyFormatter {
+
+    /** Enough for any long: sign, '$', 17 whole digits, '.', 2 cents digits. */
+    static final int MAX_CHARS = 22;
+
+    private MoneyFormatter() {
+    }
+
+    /**
+     * Writes the amount into {@code dst} starting at {@code offset}.
+     *
+     * @return the index just past the last char written
+     */
+    static int format(long cents, char[] dst, int offset) {
+        int pos = offset;
+        // Work in negative numbers so Long.MIN_VALUE needs no special case
+        long n = cents;
+        if (n < 0) {
+            dst[pos++] = '-';
+        } else {
+            n = -n;
+        }
+        dst[pos++] = '$';
+        long whole = n / 100;
+        for (long pow = powerOfTen(whole); pow > 0; pow /= 10) {
+            dst[pos++] = (char) ('0' - (whole / pow) % 10);
+        }
+        int fraction = (int) -(n % 100);
+        dst[pos++] = '.';
+        dst[pos++] = (char) ('0' + fraction / 10);
+        dst[pos++] = (char) ('0' + fraction % 10);
+        return pos;
+    }
+
+    /** Appends the amount; allocates nothing once the builder has the capacity. */
+    static StringBuilder append(StringBuilder sb, long cents) {
+        long n = cents;
+        if (n < 0) {
+            sb.append('-');
+        } else {
+            n = -n;
+        }
+        sb.append('$');
+        long whole = n / 100;
+        for (long pow = powerOfTen(whole); pow > 0; pow /= 10) {
+            sb.append((char) ('0' - (whole / pow) % 10));
+        }
+        int fraction = (int) -(n % 100);
+        return sb.append('.').append((char) ('0' + fraction / 10)).append((char) ('0' + fraction % 10));
+    }
+
+    /**
+     * Shows the amount in {@code view}. The view keeps a reference to {@code buffer}, so
+     * give each view its own buffer of at least {@link #MAX_CHARS}.
+     */
+    static void setText(TextView view, long cents, char[] buffer) {
+        view.setText(buffer, 0, format(cents, buffer, 0));
+    }
+
+    static String toString(long cents) {
+        char[] buffer = new char[MAX_CHARS];
+        return new String(buffer, 0, format(cents, buffer, 0));
+    }
+
+    // Largest power of ten not above |whole|, for a whole part that is zero or negative
+    private static long powerOfTen(long whole) {
+        long pow = 1;
+        while (whole / pow <= -10) {
+            pow *= 10;
+        }
+        return pow;
+    }
+}
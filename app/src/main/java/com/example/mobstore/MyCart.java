@@ -5,21 +5,24 @@ import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import android.content.Intent;
-import android.database.Cursor;
 import android.os.Bundle;
-import android.util.Log;
 import android.view.View;
 import android.widget.Button;
 import android.widget.TextView;
 import android.widget.Toast;
 
-public class MyCart extends AppCompatActivity implements CartAdapter.OnCartUpdateListener {
+public class MyCart extends AppCompatActivity {
 
     RecyclerView recyclerView;
     TextView emptyText, totalPriceText;
-    DbHelper dbHelper;
+    CartRepository cartRepository;
     CartAdapter adapter;
     Button homepg, purchaseAllBtn;
+    // This screen's copy of the cart: loaded once, then kept current from change events
+    private final CartLines cartLines = new CartLines();
+    private final CartChanges.Listener cartListener = (version, changes) -> {
+        if (cartLines.apply(version, changes)) showCart();
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -37,30 +40,30 @@ public class MyCart extends AppCompatActivity implements CartAdapter.OnCartUpdat
 
             // Check if views are properly initialized
             if (recyclerView == null) {
-                Log.e("MyCart", "RecyclerView is null!");
+                AppLog.e("MyCart", "RecyclerView is null!");
                 Toast.makeText(this, "Error: RecyclerView not found", Toast.LENGTH_LONG).show();
                 return;
             }
 
             if (emptyText == null) {
-                Log.e("MyCart", "EmptyText is null!");
+                AppLog.e("MyCart", "EmptyText is null!");
                 Toast.makeText(this, "Error: EmptyText not found", Toast.LENGTH_LONG).show();
                 return;
             }
 
             if (totalPriceText == null) {
-                Log.e("MyCart", "TotalPriceText is null!");
+                AppLog.e("MyCart", "TotalPriceText is null!");
                 Toast.makeText(this, "Error: TotalPriceText not found", Toast.LENGTH_LONG).show();
                 return;
             }
 
             if (purchaseAllBtn == null) {
-                Log.e("MyCart", "PurchaseAllBtn is null!");
+                AppLog.e("MyCart", "PurchaseAllBtn is null!");
                 Toast.makeText(this, "Error: PurchaseAllBtn not found", Toast.LENGTH_LONG).show();
                 return;
             }
 
-            Log.d("MyCart", "All views initialized successfully");
+            AppLog.d("MyCart", "All views initialized successfully");
 
             // Home button
             homepg.setOnClickListener(v -> {
@@ -68,9 +71,12 @@ public class MyCart extends AppCompatActivity implements CartAdapter.OnCartUpdat
                 startActivity(i);
             });
 
+            Button ordersBtn = findViewById(R.id.orders);
+            ordersBtn.setOnClickListener(v -> startActivity(new Intent(MyCart.this, OrderHistory.class)));
+
             // Purchase All button - Purchase all items in cart
             purchaseAllBtn.setOnClickListener(v -> {
-                if (dbHelper.getTotalItemCount() > 0) {
+                if (cartLines.size() > 0) {
                     Intent intent = new Intent(MyCart.this, PurchasePage.class);
                     intent.putExtra("singleItem", false); // Purchasing all items
                     startActivity(intent);
@@ -80,79 +86,57 @@ public class MyCart extends AppCompatActivity implements CartAdapter.OnCartUpdat
             });
 
             // Initialize database
-            dbHelper = new DbHelper(this);
-            Log.d("MyCart", "DbHelper initialized");
+            cartRepository = CartRepository.getInstance(this);
+            AppLog.d("MyCart", "CartRepository initialized");
 
             // Setup RecyclerView
             recyclerView.setLayoutManager(new LinearLayoutManager(this));
-            Log.d("MyCart", "LayoutManager set");
-
-            // Load cart items
-            loadCart();
+            adapter = new CartAdapter(this, cartRepository);
+            recyclerView.setAdapter(adapter);
+            AppLog.d("MyCart", "LayoutManager and adapter set");
 
         } catch (Exception e) {
-            Log.e("MyCart", "Error in onCreate: " + e.getMessage());
+            AppLog.e("MyCart", "Error in onCreate: " + e.getMessage());
             e.printStackTrace();
             Toast.makeText(this, "Error: " + e.getMessage(), Toast.LENGTH_LONG).show();
         }
     }
 
     private void loadCart() {
-        Cursor cursor = null;
-        try {
-            Log.d("MyCart", "Loading cart...");
-            cursor = dbHelper.getAllCartItems();
-
-            if (cursor == null) {
-                Log.e("MyCart", "Cursor is null!");
-                showEmptyCart();
-                return;
+        if (cartRepository == null) return;
+        AppLog.d("MyCart", "Loading cart...");
+        // Requested here and shown when the lines come back, so the section is an async one
+        int cookie = AppTrace.beginAsync("MyCart.loadCart");
+        cartRepository.loadCartLines(snapshot -> {
+            try {
+                if (isDestroyed() || snapshot == null) return;
+                cartLines.reset(snapshot);
+                showCart();
+            } finally {
+                AppTrace.endAsync("MyCart.loadCart", cookie);
             }
+        });
+    }
 
-            int count = cursor.getCount();
-            Log.d("MyCart", "Cart items count: " + count);
-
-            if (count > 0) {
-                // Show RecyclerView and controls, hide empty message
-                recyclerView.setVisibility(View.VISIBLE);
-                emptyText.setVisibility(View.GONE);
-                totalPriceText.setVisibility(View.VISIBLE);
-                purchaseAllBtn.setVisibility(View.VISIBLE);
-
-                // Update total price
-                updateTotalPrice();
-
-                // Create and set adapter
-                adapter = new CartAdapter(this, cursor, dbHelper, this);
-                recyclerView.setAdapter(adapter);
-                Log.d("MyCart", "Adapter set with " + count + " items");
-            } else {
-                // No items in cart
-                showEmptyCart();
-                if (cursor != null) {
-                    cursor.close();
-                }
-            }
+    private void showCart() {
+        if (AppLog.DEBUG) AppLog.d("MyCart", "Cart items count: " + cartLines.size());
 
-        } catch (Exception e) {
-            Log.e("MyCart", "Error loading cart: " + e.getMessage());
-            e.printStackTrace();
+        if (cartLines.size() > 0) {
+            // Show RecyclerView and controls, hide empty message
+            recyclerView.setVisibility(View.VISIBLE);
+            emptyText.setVisibility(View.GONE);
+            totalPriceText.setVisibility(View.VISIBLE);
+            purchaseAllBtn.setVisibility(View.VISIBLE);
+
+            // The total follows the lines, so it needs no query of its own
+            totalPriceText.setText("Total: " + Money.ofCents(cartLines.totalCents()));
+        } else {
+            // No items in cart
             showEmptyCart();
-            if (cursor != null && !cursor.isClosed()) {
-                cursor.close();
-            }
-            Toast.makeText(this, "Error loading cart", Toast.LENGTH_SHORT).show();
         }
-    }
 
-    private void updateTotalPrice() {
-        try {
-            double total = dbHelper.getTotalCartPrice();
-            totalPriceText.setText(String.format("Total: $%.2f", total));
-        } catch (Exception e) {
-            Log.e("MyCart", "Error updating total price: " + e.getMessage());
-            totalPriceText.setText("Total: $0.00");
-        }
+        // DiffUtil works out which rows actually changed, so only those get rebound
+        adapter.submitList(cartLines.toList());
     }
 
     private void showEmptyCart() {
@@ -164,30 +148,22 @@ public class MyCart extends AppCompatActivity implements CartAdapter.OnCartUpdat
     }
 
     @Override
-    public void onCartUpdated() {
-        // Reload cart when item is updated or deleted
-        loadCart();
-    }
-
-    @Override
-    protected void onResume() {
-        super.onResume();
-        // Reload cart when returning from purchase page
-        loadCart();
+    protected void onStart() {
+        super.onStart();
+        if (cartRepository == null) return;
+        // Edits made here, or anywhere else while this screen is showing, arrive as changes
+        cartRepository.changes().addListener(cartListener);
+        // Coming back from another screen only costs a reload if the cart changed meanwhile
+        if (!cartLines.isCurrent(cartRepository.changes())) {
+            loadCart();
+        }
     }
 
     @Override
-    protected void onDestroy() {
-        super.onDestroy();
-        try {
-            if (adapter != null) {
-                Cursor cursor = adapter.getCursor();
-                if (cursor != null && !cursor.isClosed()) {
-                    cursor.close();
-                }
-            }
-        } catch (Exception e) {
-            Log.e("MyCart", "Error in onDestroy: " + e.getMessage());
+    protected void onStop() {
+        if (cartRepository != null) {
+            cartRepository.changes().removeListener(cartListener);
         }
+        super.onStop();
     }
 }
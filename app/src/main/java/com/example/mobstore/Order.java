@@ -0,0 +1,23 @@
+package com.example.mobstore;
+
+/**
+ * One row of order history: an order and a short description of what was in it.
+ */
+public final class Order {
+
+    public final long id;
+    /** When the order was placed, in milliseconds since the epoch. */
+    public final long createdAt;
+    public final int itemCount;
+    public final Money total;
+    /** Product names of the first few lines of the order, comma separated. */
+    public final String itemsSummary;
+
+    public Order(long id, long createdAt, int itemCount, Money total, String itemsSummary) {
+        this.id = id;
+        this.createdAt = createdAt;
+        this.itemCount = itemCount;
+        this.total = total;
+        this.itemsSummary = itemsSummary;
+    }
+}
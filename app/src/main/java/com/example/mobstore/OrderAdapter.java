@@ -0,0 +1,73 @@
+package com.example.mobstore;
+
+import android.content.Context;
+import android.text.format.DateUtils;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.paging.PagingDataAdapter;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.RecyclerView;
+
+public class OrderAdapter extends PagingDataAdapter<Order, OrderAdapter.ViewHolder> {
+
+    // Orders are append-only, so the same id always means the same contents
+    static final DiffUtil.ItemCallback<Order> DIFF_CALLBACK = new DiffUtil.ItemCallback<Order>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull Order oldItem, @NonNull Order newItem) {
+            return oldItem.id == newItem.id;
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull Order oldItem, @NonNull Order newItem) {
+            return oldItem.id == newItem.id;
+        }
+    };
+
+    private static final Metrics.Timer BIND = Metrics.timer("bind.order");
+
+    private final Context context;
+
+    public OrderAdapter(Context context) {
+        super(DIFF_CALLBACK);
+        this.context = context;
+    }
+
+    @NonNull
+    @Override
+    public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(context).inflate(R.layout.item_order, parent, false);
+        return new ViewHolder(view);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
+        Order order = getItem(position);
+        // Placeholders are disabled, but a dropped page can still leave a null for a moment
+        if (order == null) return;
+        long start = BIND.start();
+
+        holder.title.setText("Order #" + order.id);
+        holder.date.setText(DateUtils.formatDateTime(context, order.createdAt,
+                DateUtils.FORMAT_SHOW_DATE | DateUtils.FORMAT_SHOW_TIME | DateUtils.FORMAT_ABBREV_MONTH));
+        holder.items.setText(order.itemCount + (order.itemCount == 1 ? " item: " : " items: ") + order.itemsSummary);
+        MoneyFormatter.setText(holder.total, order.total.cents(), holder.totalChars);
+        BIND.stop(start);
+    }
+
+    public static class ViewHolder extends RecyclerView.ViewHolder {
+        TextView title, date, items, total;
+        final char[] totalChars = new char[MoneyFormatter.MAX_CHARS];
+
+        public ViewHolder(@NonNull View itemView) {
+            super(itemView);
+            title = itemView.findViewById(R.id.orderTitle);
+            date = itemView.findViewById(R.id.orderDate);
+            items = itemView.findViewById(R.id.orderItems);
+            total = itemView.findViewById(R.id.orderTotal);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.mobstore;
+
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.paging.CombinedLoadStates;
+import androidx.paging.LoadState;
+import androidx.paging.Pager;
+import androidx.paging.PagingConfig;
+import androidx.paging.PagingLiveData;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import android.os.Bundle;
+import android.view.View;
+import android.widget.Button;
+import android.widget.TextView;
+
+import kotlin.Unit;
+
+/**
+ * Past orders, newest first, paged from the orders table so a long history never has to be
+ * loaded in one go.
+ */
+public class OrderHistory extends AppCompatActivity {
+
+    private static final int PAGE_SIZE = 20;
+    private static final int MAX_LOADED_ITEMS = PAGE_SIZE * 10;
+
+    private OrderAdapter adapter;
+    private TextView emptyText;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_order_history);
+
+        emptyText = findViewById(R.id.emptyOrdersText);
+        Button back = findViewById(R.id.back);
+        back.setOnClickListener(v -> finish());
+
+        RecyclerView recyclerView = findViewById(R.id.recyclerViewOrders);
+        recyclerView.setLayoutManager(new LinearLayoutManager(this));
+        recyclerView.setHasFixedSize(true);
+        adapter = new OrderAdapter(this);
+        recyclerView.setAdapter(adapter);
+
+        adapter.addLoadStateListener(this::onLoadStates);
+
+        OrderStore orders = MobStoreApp.from(this).getOrderStore();
+        Pager<Long, Order> pager = new Pager<>(
+                new PagingConfig(PAGE_SIZE, PAGE_SIZE, false, PAGE_SIZE * 2, MAX_LOADED_ITEMS), orders::newPagingSource);
+        PagingLiveData.cachedIn(PagingLiveData.getLiveData(pager), getLifecycle())
+                .observe(this, data -> adapter.submitData(getLifecycle(), data));
+    }
+
+    private Unit onLoadStates(CombinedLoadStates states) {
+        boolean loaded = states.getRefresh() instanceof LoadState.NotLoading;
+        emptyText.setVisibility(loaded && adapter.getItemCount() == 0 ? View.VISIBLE : View.GONE);
+        return Unit.INSTANCE;
+    }
+}
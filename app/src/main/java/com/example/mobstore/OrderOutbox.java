@@ -0,0 +1,243 @@
+package com.example.mobstore;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.JsonWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Orders waiting to be sent to the backend. {@link CheckoutService} adds an order here in the
+ * transaction that places it, so an order can never be saved without also being queued.
+ * {@link #sync} sends the queue in batches through an {@link OrderSink} and removes each batch
+ * only after the sink accepts it, so a crash at any point leaves the orders queued and they go
+ * out again on the next run.
+ *
+ * <p>The queue is keyed by order id: an order is queued at most once, and a failed batch backs
+ * off exponentially per order rather than being retried in a tight loop.
+ */
+public class OrderOutbox {
+
+    static final String TABLE_OUTBOX = "order_outbox";
+    static final int BATCH_SIZE = 50;
+    static final long BASE_BACKOFF_MS = 30_000;
+    static final long MAX_BACKOFF_MS = 6 * 60 * 60 * 1000L;
+
+    /** What one {@link #sync} run achieved. */
+    public static final class SyncResult {
+        public final int sent;
+        /** When the oldest order still queued may be tried again, or 0 if the queue is empty. */
+        public final long nextAttemptAt;
+
+        SyncResult(int sent, long nextAttemptAt) {
+            this.sent = sent;
+            this.nextAttemptAt = nextAttemptAt;
+        }
+    }
+
+    private final DbHelper dbHelper;
+
+    OrderOutbox(DbHelper dbHelper) {
+        this.dbHelper = dbHelper;
+    }
+
+    /** Version 12. Orders placed before the outbox existed are queued too; none were ever sent. */
+    static void createTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_OUTBOX + "(" +
+                "order_id INTEGER PRIMARY KEY REFERENCES " + OrderStore.TABLE_ORDERS + "(id)," +
+                "attempts INTEGER NOT NULL DEFAULT 0," +
+                "next_attempt_at INTEGER NOT NULL DEFAULT 0)");
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_order_outbox_next ON " + TABLE_OUTBOX + "(next_attempt_at)");
+        db.execSQL("INSERT OR IGNORE INTO " + TABLE_OUTBOX + "(order_id) SELECT id FROM " + OrderStore.TABLE_ORDERS);
+    }
+
+    /** Queues an order for sending. Must run inside the transaction that inserted the order. */
+    static void enqueue(SQLiteDatabase db, long orderId) {
+        SQLiteStatement insert = db.compileStatement(
+                "INSERT OR IGNORE INTO " + TABLE_OUTBOX + "(order_id) VALUES (?)");
+        try {
+            insert.bindLong(1, orderId);
+            insert.executeInsert();
+        } finally {
+            insert.close();
+        }
+    }
+
+    /** Orders still waiting to be sent. */
+    public int pendingCount() {
+        try {
+            return (int) DatabaseUtils.queryNumEntries(dbHelper.getReadableDatabase(), TABLE_OUTBOX);
+        } catch (Exception e) {
+            AppLog.e("OrderOutbox", "Error counting queued orders: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * Sends every order that is due, {@link #BATCH_SIZE} at a time, stopping at the first batch
+     * the sink rejects. Call off the main thread.
+     *
+     * @param now the current time in milliseconds; orders backing off until later are skipped
+     */
+    public SyncResult sync(OrderSink sink, long now) {
+        int sent = 0;
+        while (true) {
+            long[] ids = due(now);
+            if (ids.length == 0) break;
+
+            OrderSink.Batch batch;
+            try {
+                batch = new OrderSink.Batch(ids, encode(ids));
+            } catch (IOException e) {
+                // Building the payload only touches memory; treat it like a failed send
+                AppLog.e("OrderOutbox", "Error encoding orders: " + e.getMessage());
+                backOff(ids, now);
+                break;
+            }
+            try {
+                sink.send(batch);
+            } catch (IOException e) {
+                if (AppLog.WARN) AppLog.w("OrderOutbox", "Sending " + ids.length + " orders failed: " + e.getMessage());
+                backOff(ids, now);
+                break;
+            }
+            remove(ids);
+            sent += ids.length;
+        }
+        long next = nextAttemptAt();
+        if (AppLog.DEBUG) AppLog.d("OrderOutbox", "Sent " + sent + " orders" + (next > 0 ? ", more queued" : ""));
+        return new SyncResult(sent, next);
+    }
+
+    private long[] due(long now) {
+        Cursor c = null;
+        try {
+            c = dbHelper.getReadableDatabase().rawQuery("SELECT order_id FROM " + TABLE_OUTBOX +
+                    " WHERE next_attempt_at <= ? ORDER BY order_id LIMIT " + BATCH_SIZE,
+                    new String[]{String.valueOf(now)});
+            long[] ids = new long[c.getCount()];
+            for (int i = 0; c.moveToNext(); i++) {
+                ids[i] = c.getLong(0);
+            }
+            return ids;
+        } finally {
+            if (c != null) c.close();
+        }
+    }
+
+    private long nextAttemptAt() {
+        Cursor c = null;
+        try {
+            c = dbHelper.getReadableDatabase().rawQuery(
+                    "SELECT MIN(next_attempt_at), COUNT(*) FROM " + TABLE_OUTBOX, null);
+            if (!c.moveToFirst() || c.getLong(1) == 0) return 0;
+            // A queued order that is due right now still counts as waiting
+            return Math.max(1, c.getLong(0));
+        } finally {
+            if (c != null) c.close();
+        }
+    }
+
+    private void remove(long[] ids) {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        SQLiteStatement delete = db.compileStatement("DELETE FROM " + TABLE_OUTBOX + " WHERE order_id = ?");
+        db.beginTransaction();
+        try {
+            for (long id : ids) {
+                delete.bindLong(1, id);
+                delete.executeUpdateDelete();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            delete.close();
+        }
+    }
+
+    private void backOff(long[] ids, long now) {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        // 30 s after the first failure, doubling each time up to six hours
+        SQLiteStatement update = db.compileStatement("UPDATE " + TABLE_OUTBOX +
+                " SET attempts = attempts + 1, next_attempt_at = ? + MIN(?, ? << MIN(attempts, 20))" +
+                " WHERE order_id = ?");
+        db.beginTransaction();
+        try {
+            for (long id : ids) {
+                update.bindLong(1, now);
+                update.bindLong(2, MAX_BACKOFF_MS);
+                update.bindLong(3, BASE_BACKOFF_MS);
+                update.bindLong(4, id);
+                update.executeUpdateDelete();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            update.close();
+        }
+    }
+
+    /** The batch as gzip-compressed JSON: {@code {"orders":[{..., "items":[...]}]}}. */
+    byte[] encode(long[] ids) throws IOException {
+        String idList = idList(ids);
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Cursor orders = null;
+        Cursor lines = null;
+        try (JsonWriter json = new JsonWriter(new OutputStreamWriter(new GZIPOutputStream(bytes),
+                StandardCharsets.UTF_8))) {
+            orders = db.rawQuery("SELECT id, idempotency_key, created_at, customer_name, address, phone," +
+                    " item_count, total_cents FROM " + OrderStore.TABLE_ORDERS +
+                    " WHERE id IN (" + idList + ") ORDER BY id", null);
+            lines = db.rawQuery("SELECT order_id, product_id, product_name, price_cents, quantity FROM " +
+                    OrderStore.TABLE_ORDER_ITEMS + " WHERE order_id IN (" + idList + ") ORDER BY order_id, id", null);
+            boolean moreLines = lines.moveToNext();
+
+            json.beginObject().name("orders").beginArray();
+            while (orders.moveToNext()) {
+                long orderId = orders.getLong(0);
+                json.beginObject()
+                        .name("id").value(orderId)
+                        .name("idempotency_key").value(orders.getString(1))
+                        .name("created_at").value(orders.getLong(2))
+                        .name("customer_name").value(orders.getString(3))
+                        .name("address").value(orders.getString(4))
+                        .name("phone").value(orders.getString(5))
+                        .name("item_count").value(orders.getInt(6))
+                        .name("total_cents").value(orders.getLong(7));
+                json.name("items").beginArray();
+                // Both cursors are in order id order, so each order's lines follow on directly
+                while (moreLines && lines.getLong(0) == orderId) {
+                    json.beginObject()
+                            .name("product_id").value(lines.getLong(1))
+                            .name("product_name").value(lines.getString(2))
+                            .name("price_cents").value(lines.getLong(3))
+                            .name("quantity").value(lines.getInt(4))
+                            .endObject();
+                    moreLines = lines.moveToNext();
+                }
+                json.endArray().endObject();
+            }
+            json.endArray().endObject();
+        } finally {
+            if (orders != null) orders.close();
+            if (lines != null) lines.close();
+        }
+        return bytes.toByteArray();
+    }
+
+    // Ids come from the outbox's INTEGER key, so they are safe to inline
+    private static String idList(long[] ids) {
+        StringBuilder list = new StringBuilder(ids.length * 6);
+        for (int i = 0; i < ids.length; i++) {
+            if (i > 0) list.append(',');
+            list.append(ids[i]);
+        }
+        return list.toString();
+    }
+}
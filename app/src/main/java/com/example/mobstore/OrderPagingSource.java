@@ -0,0 +1,72 @@
+package com.example.mobstore;
+
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.paging.ListenableFuturePagingSource;
+import androidx.paging.PagingState;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+
+import java.util.List;
+
+/**
+ * Pages order history by id, newest first. A page's prevKey is its first (newest) id and its
+ * nextKey its last (oldest) id; the adjacent page is then read with {@code id > prevKey} or
+ * {@code id < nextKey}. A refresh key is exclusive: the page starts just below it.
+ */
+final class OrderPagingSource extends ListenableFuturePagingSource<Long, Order> {
+
+    private final OrderStore store;
+    private final ListeningExecutorService executor;
+
+    OrderPagingSource(OrderStore store, ListeningExecutorService executor) {
+        this.store = store;
+        this.executor = executor;
+    }
+
+    @NonNull
+    @Override
+    public ListenableFuture<LoadResult<Long, Order>> loadFuture(@NonNull LoadParams<Long> params) {
+        return executor.submit(() -> load(params));
+    }
+
+    private LoadResult<Long, Order> load(LoadParams<Long> params) {
+        try {
+            Long key = params.getKey();
+            int loadSize = params.getLoadSize();
+
+            if (params instanceof LoadParams.Prepend) {
+                List<Order> page = store.loadNewer(key, loadSize);
+                return page(page, page.size() == loadSize, true);
+            }
+            List<Order> page = store.loadOlder(key != null ? key : Long.MAX_VALUE, loadSize);
+            boolean append = params instanceof LoadParams.Append;
+            return page(page, !append && key != null, page.size() == loadSize);
+        } catch (RuntimeException e) {
+            AppLog.e("OrderPagingSource", "Error loading order page: " + e.getMessage());
+            return new LoadResult.Error<>(e);
+        }
+    }
+
+    private static LoadResult<Long, Order> page(List<Order> page, boolean hasNewer, boolean hasOlder) {
+        if (page.isEmpty()) {
+            return new LoadResult.Page<>(page, null, null);
+        }
+        Long prevKey = hasNewer ? page.get(0).id : null;
+        Long nextKey = hasOlder ? page.get(page.size() - 1).id : null;
+        return new LoadResult.Page<>(page, prevKey, nextKey);
+    }
+
+    // Restart half an initial load above (newer than) the order the user was looking at
+    @Nullable
+    @Override
+    public Long getRefreshKey(@NonNull PagingState<Long, Order> state) {
+        Integer anchor = state.getAnchorPosition();
+        if (anchor == null) return null;
+        Order order = state.closestItemToPosition(anchor);
+        if (order == null) return null;
+        return order.id + 1 + state.getConfig().initialLoadSize / 2;
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.mobstore;
+
+import java.io.IOException;
+
+/**
+ * Where synced orders go. {@link OrderOutbox} hands a sink one batch at a time and only
+ * forgets the batch's orders once {@link #send} returns normally.
+ *
+ * <p>A batch can arrive more than once: if the process dies after the backend accepted it but
+ * before the outbox recorded that, the same orders are sent again. Implementations must treat
+ * an order id they have already accepted as a duplicate and acknowledge it without applying it
+ * twice.
+ */
+public interface OrderSink {
+
+    /** A gzip-compressed JSON document holding every order in {@link #orderIds}, with its lines. */
+    final class Batch {
+        public static final String CONTENT_TYPE = "application/json; charset=utf-8";
+        public static final String CONTENT_ENCODING = "gzip";
+
+        public final long[] orderIds;
+        public final byte[] body;
+
+        Batch(long[] orderIds, byte[] body) {
+            this.orderIds = orderIds;
+            this.body = body;
+        }
+    }
+
+    /**
+     * Delivers the batch. Returning normally acknowledges every order in it.
+     *
+     * @throws IOException if the batch may not have been accepted; the outbox backs off and
+     *                     sends it again later
+     */
+    void send(Batch batch) throws IOException;
+}
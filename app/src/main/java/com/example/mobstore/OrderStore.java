@@ -0,0 +1,212 @@
+package com.example.mobstore;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Process;
+
+import androidx.paging.PagingSource;
+
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+
+/**
+ * Order history, kept in the orders and order_items tables of the cart database. Both tables
+ * are append-only: triggers reject any UPDATE or DELETE, so a placed order reads back exactly
+ * as it was charged. Orders are written by {@link CheckoutService} together with the cart
+ * deletion; this class creates the tables and pages through them, newest first. Each order
+ * belongs to the user whose cart it was placed from, and history only ever lists the current
+ * user's orders.
+ */
+public class OrderStore {
+
+    static final String TABLE_ORDERS = "orders";
+    static final String TABLE_ORDER_ITEMS = "order_items";
+    /** Lines named in an order's summary before it switches to "and N more". */
+    private static final int SUMMARY_LINES = 3;
+
+    private static final String COLUMNS = "id, created_at, item_count, total_cents, items_summary";
+
+    private final DbHelper dbHelper;
+    private final ListeningExecutorService executor;
+
+    OrderStore(DbHelper dbHelper) {
+        this.dbHelper = dbHelper;
+        this.executor = MoreExecutors.listeningDecorator(Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(() -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                r.run();
+            }, "order-reader");
+            t.setDaemon(true);
+            return t;
+        }));
+    }
+
+    static void createTables(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_ORDERS + "(" +
+                "id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                "created_at INTEGER NOT NULL," +
+                "customer_name TEXT," +
+                "address TEXT," +
+                "phone TEXT," +
+                "item_count INTEGER NOT NULL," +
+                "total_cents INTEGER NOT NULL," +
+                "items_summary TEXT)");
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_ORDER_ITEMS + "(" +
+                "id INTEGER PRIMARY KEY," +
+                "order_id INTEGER NOT NULL REFERENCES " + TABLE_ORDERS + "(id)," +
+                "product_id INTEGER," +
+                "product_name TEXT," +
+                "product_image INTEGER," +
+                "price_cents INTEGER NOT NULL," +
+                "quantity INTEGER NOT NULL)");
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_order_items_order ON " + TABLE_ORDER_ITEMS + "(order_id)");
+        for (String table : new String[]{TABLE_ORDERS, TABLE_ORDER_ITEMS}) {
+            for (String op : new String[]{"UPDATE", "DELETE"}) {
+                db.execSQL("CREATE TRIGGER IF NOT EXISTS " + table + "_no_" + op.toLowerCase(Locale.ROOT) +
+                        " BEFORE " + op + " ON " + table +
+                        " BEGIN SELECT RAISE(ABORT, '" + table + " is append-only'); END");
+            }
+        }
+    }
+
+    /**
+     * Version 11: every order records the idempotency key of the checkout that placed it, and
+     * no two orders may share one. Orders from before this have none.
+     */
+    static void addIdempotencyKey(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE " + TABLE_ORDERS + " ADD COLUMN idempotency_key TEXT");
+        db.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS idx_orders_idempotency_key ON " +
+                TABLE_ORDERS + "(idempotency_key)");
+    }
+
+    /**
+     * Version 14: every order records the user it was placed by, and history seeks on
+     * (user_id, id). Orders placed before this cannot be attributed to an account, so they keep
+     * a NULL user and drop out of every user's history; the outbox still sends them.
+     */
+    static void addUserId(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE " + TABLE_ORDERS + " ADD COLUMN user_id INTEGER");
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_orders_user ON " + TABLE_ORDERS + "(user_id, id)");
+    }
+
+    /**
+     * Writes an order and its lines. Must run inside the caller's transaction, which also
+     * removes the items from the cart.
+     *
+     * @return the new order's id
+     */
+    static long insert(SQLiteDatabase db, long userId, String idempotencyKey, String customerName,
+                       String address, String phone, List<CartItem> items, long createdAt) {
+        long totalCents = 0;
+        int itemCount = 0;
+        for (CartItem item : items) {
+            totalCents = Math.addExact(totalCents, item.subtotalCents());
+            itemCount += item.quantity;
+        }
+
+        long orderId;
+        SQLiteStatement order = db.compileStatement("INSERT INTO " + TABLE_ORDERS +
+                "(created_at, customer_name, address, phone, item_count, total_cents, items_summary," +
+                " idempotency_key, user_id) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)");
+        try {
+            order.bindLong(1, createdAt);
+            bindText(order, 2, customerName);
+            bindText(order, 3, address);
+            bindText(order, 4, phone);
+            order.bindLong(5, itemCount);
+            order.bindLong(6, totalCents);
+            order.bindString(7, summarize(items));
+            bindText(order, 8, idempotencyKey);
+            order.bindLong(9, userId);
+            orderId = order.executeInsert();
+        } finally {
+            order.close();
+        }
+        if (orderId == -1) {
+            throw new IllegalStateException("Order row was not inserted");
+        }
+
+        // One compiled statement rebound per line; a 500-line checkout stays a few milliseconds
+        SQLiteStatement line = db.compileStatement("INSERT INTO " + TABLE_ORDER_ITEMS +
+                "(order_id, product_id, product_name, product_image, price_cents, quantity)" +
+                " VALUES (?, ?, ?, ?, ?, ?)");
+        try {
+            for (CartItem item : items) {
+                line.bindLong(1, orderId);
+                line.bindLong(2, item.productId);
+                bindText(line, 3, item.productName);
+                line.bindLong(4, item.productImage);
+                line.bindLong(5, item.price.cents());
+                line.bindLong(6, item.quantity);
+                line.executeInsert();
+            }
+        } finally {
+            line.close();
+        }
+        return orderId;
+    }
+
+    static String summarize(List<CartItem> items) {
+        StringBuilder summary = new StringBuilder();
+        int named = Math.min(SUMMARY_LINES, items.size());
+        for (int i = 0; i < named; i++) {
+            if (i > 0) summary.append(", ");
+            String name = items.get(i).productName;
+            summary.append(name != null ? name : "Unknown");
+        }
+        if (items.size() > named) {
+            summary.append(" and ").append(items.size() - named).append(" more");
+        }
+        return summary.toString();
+    }
+
+    private static void bindText(SQLiteStatement statement, int index, String value) {
+        if (value != null) {
+            statement.bindString(index, value);
+        } else {
+            statement.bindNull(index);
+        }
+    }
+
+    /** A new source for one generation of paged order history; the Pager asks for another on refresh. */
+    public PagingSource<Long, Order> newPagingSource() {
+        return new OrderPagingSource(this, executor);
+    }
+
+    /** Up to {@code limit} of the current user's orders older than {@code beforeId}, newest first. */
+    List<Order> loadOlder(long beforeId, int limit) {
+        return query("SELECT " + COLUMNS + " FROM " + TABLE_ORDERS +
+                " WHERE user_id = ? AND id < ? ORDER BY id DESC LIMIT ?", beforeId, limit);
+    }
+
+    /** Up to {@code limit} of the current user's orders newer than {@code afterId}, newest first. */
+    List<Order> loadNewer(long afterId, int limit) {
+        List<Order> page = query("SELECT " + COLUMNS + " FROM " + TABLE_ORDERS +
+                " WHERE user_id = ? AND id > ? ORDER BY id LIMIT ?", afterId, limit);
+        Collections.reverse(page);
+        return page;
+    }
+
+    private List<Order> query(String sql, long key, int limit) {
+        List<Order> page = new ArrayList<>(limit);
+        Cursor c = null;
+        try {
+            c = dbHelper.getReadableDatabase().rawQuery(sql, new String[]{
+                    String.valueOf(dbHelper.userId()), String.valueOf(key), String.valueOf(limit)});
+            while (c.moveToNext()) {
+                page.add(new Order(c.getLong(0), c.getLong(1), c.getInt(2),
+                        Money.ofCents(c.getLong(3)), c.getString(4)));
+            }
+        } finally {
+            if (c != null) c.close();
+        }
+        return page;
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.mobstore;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.work.BackoffPolicy;
+import androidx.work.Constraints;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drains the {@link OrderOutbox} in the background whenever the device is online. The outbox
+ * decides when a failed order may be retried; when orders are still backing off, this worker
+ * schedules its next run for the moment the first of them is due.
+ */
+public class OrderSyncWorker extends Worker {
+
+    static final String WORK_NAME = "order-sync";
+
+    public OrderSyncWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+
+    /** Sends queued orders as soon as there is a network connection. */
+    public static void enqueue(Context context) {
+        enqueue(context, 0);
+    }
+
+    private static void enqueue(Context context, long delayMs) {
+        OneTimeWorkRequest request = new OneTimeWorkRequest.Builder(OrderSyncWorker.class)
+                .setConstraints(new Constraints.Builder()
+                        .setRequiredNetworkType(NetworkType.CONNECTED)
+                        .build())
+                .setInitialDelay(delayMs, TimeUnit.MILLISECONDS)
+                .setBackoffCriteria(BackoffPolicy.EXPONENTIAL, OrderOutbox.BASE_BACKOFF_MS, TimeUnit.MILLISECONDS)
+                .build();
+        try {
+            // Appending means an order placed while a run is finishing still gets a run of its own
+            WorkManager.getInstance(context)
+                    .enqueueUniqueWork(WORK_NAME, ExistingWorkPolicy.APPEND_OR_REPLACE, request);
+        } catch (IllegalStateException e) {
+            AppLog.e("OrderSyncWorker", "WorkManager unavailable: " + e.getMessage());
+        }
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        MobStoreApp app = MobStoreApp.from(getApplicationContext());
+        OrderSink sink = app.getOrderSink();
+        if (sink == null) {
+            AppLog.d("OrderSyncWorker", "No order backend configured; orders stay queued");
+            return Result.success();
+        }
+        try {
+            long now = System.currentTimeMillis();
+            OrderOutbox.SyncResult result = app.getOrderOutbox().sync(sink, now);
+            if (result.nextAttemptAt > 0) {
+                enqueue(getApplicationContext(), Math.max(0, result.nextAttemptAt - now));
+            }
+            return Result.success();
+        } catch (Exception e) {
+            // The database itself failed; let WorkManager back off and run us again
+            AppLog.e("OrderSyncWorker", "Error syncing orders: " + e.getMessage());
+            return Result.retry();
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.mobstore;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * PBKDF2-HMAC-SHA256 password hashing with a random per-user salt. The iteration count is
+ * stored with each hash, so it can be raised for new hashes (see {@link #calibrate}) while
+ * older ones still verify.
+ *
+ * <p>Implemented on {@link Mac} rather than SecretKeyFactory because the SHA-256 variant of
+ * PBKDF2 only reached SecretKeyFactory in API 26. Each iteration reuses one buffer, so a
+ * hash allocates nothing per iteration.
+ */
+final class PasswordHasher {
+
+    static final int SALT_BYTES = 16;
+    static final int HASH_BYTES = 32;
+    /** Floor for any stored hash, however slow the device. */
+    static final int MIN_ITERATIONS = 20_000;
+    static final int MAX_ITERATIONS = 1_000_000;
+    /** Used when nothing better is known, e.g. while migrating old accounts. */
+    static final int DEFAULT_ITERATIONS = 50_000;
+
+    private static final int CALIBRATION_ITERATIONS = 5_000;
+    private static final int CALIBRATION_ROUNDS = 3;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private PasswordHasher() {
+    }
+
+    static byte[] newSalt() {
+        byte[] salt = new byte[SALT_BYTES];
+        RANDOM.nextBytes(salt);
+        return salt;
+    }
+
+    static byte[] hash(String password, byte[] salt, int iterations) {
+        return pbkdf2(password, salt, iterations, HASH_BYTES);
+    }
+
+    /** Recomputes the hash and compares it in constant time. */
+    static boolean verify(String password, byte[] salt, int iterations, byte[] expected) {
+        if (salt == null || expected == null || iterations < 1) return false;
+        byte[] actual = pbkdf2(password, salt, iterations, expected.length);
+        return MessageDigest.isEqual(actual, expected);
+    }
+
+    /**
+     * The largest iteration count, in steps of 1000, whose hash takes no longer than
+     * {@code budgetMillis} on this device, clamped to {@link #MIN_ITERATIONS}..{@link #MAX_ITERATIONS}.
+     * Takes a few tens of milliseconds; call off the main thread.
+     */
+    static int calibrate(long budgetMillis) {
+        byte[] salt = newSalt();
+        // An untimed round first, so the probes don't measure the interpreter
+        pbkdf2("calibration", salt, CALIBRATION_ITERATIONS, HASH_BYTES);
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < CALIBRATION_ROUNDS; i++) {
+            long start = System.nanoTime();
+            pbkdf2("calibration", salt, CALIBRATION_ITERATIONS, HASH_BYTES);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        long iterations = CALIBRATION_ITERATIONS * (budgetMillis * 1_000_000L) / Math.max(1, best);
+        iterations = iterations / 1000 * 1000;
+        return (int) Math.max(MIN_ITERATIONS, Math.min(MAX_ITERATIONS, iterations));
+    }
+
+    // RFC 8018 section 5.2
+    static byte[] pbkdf2(String password, byte[] salt, int iterations, int length) {
+        byte[] key = password.getBytes(StandardCharsets.UTF_8);
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            // SecretKeySpec rejects an empty key; HMAC zero-pads keys, so one zero byte is equivalent
+            mac.init(new SecretKeySpec(key.length > 0 ? key : new byte[1], "HmacSHA256"));
+            int blockLength = mac.getMacLength();
+            byte[] out = new byte[length];
+            byte[] u = new byte[blockLength];
+            byte[] block = new byte[blockLength];
+            for (int index = 1, offset = 0; offset < length; index++, offset += blockLength) {
+                mac.update(salt);
+                mac.update((byte) (index >>> 24));
+                mac.update((byte) (index >>> 16));
+                mac.update((byte) (index >>> 8));
+                mac.update((byte) index);
+                mac.doFinal(u, 0);
+                System.arraycopy(u, 0, block, 0, blockLength);
+                for (int i = 1; i < iterations; i++) {
+                    mac.update(u);
+                    mac.doFinal(u, 0);
+                    for (int j = 0; j < blockLength; j++) {
+                        block[j] ^= u[j];
+                    }
+                }
+                System.arraycopy(block, 0, out, offset, Math.min(blockLength, length - offset));
+            }
+            return out;
+        } catch (GeneralSecurityException e) {
+            // HmacSHA256 is guaranteed on every Android version
+            throw new IllegalStateException("HmacSHA256 unavailable", e);
+        } finally {
+            Arrays.fill(key, (byte) 0);
+        }
+    }
+}
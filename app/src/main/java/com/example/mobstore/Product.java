@@ -1,13 +1,20 @@
 package com.example.mobstore;
 
 public class Product {
+    /** Row id in the products table, or 0 for products built in code. */
+    public long id;
     public String name;
     public int image;
-    public double price;
+    public Money price;
 
-    public Product(String name, int image, double price) {
+    public Product(String name, int image, Money price) {
+        this(0, name, image, price);
+    }
+
+    public Product(long id, String name, int image, Money price) {
+        this.id = id;
         this.name = name;
         this.image = image;
         this.price = price;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,258 @@
+package com.example.mobstore;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.CancellationSignal;
+import android.os.Process;
+
+import androidx.paging.PagingSource;
+
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * The product catalog, stored in the products table of the cart database and seeded from
+ * assets/catalog.csv the first time it is read. Pages are read by keyset ({@code id > ?}),
+ * so every page costs one index seek no matter how far into the catalog it starts.
+ */
+public class ProductCatalog {
+
+    static final String TABLE_PRODUCTS = "products";
+    static final String TABLE_PRODUCTS_FTS = "products_fts";
+    static final String CATALOG_ASSET = "catalog.csv";
+    private static final String DRAWABLE_PREFIX = "@drawable/";
+
+    private static final String COLUMNS = "id, name, image, price_cents";
+
+    private final Context context;
+    private final DbHelper dbHelper;
+    private final ListeningExecutorService executor;
+    // Searches get their own thread so a type-ahead query never waits behind a page load
+    private final ExecutorService searchExecutor;
+    // Resource lookups by name are slow, and a large catalog reuses a handful of images
+    private final Map<String, Integer> imageIds = new ConcurrentHashMap<>();
+    private volatile boolean seeded;
+
+    ProductCatalog(Context context, DbHelper dbHelper) {
+        this.context = context.getApplicationContext();
+        this.dbHelper = dbHelper;
+        this.executor = MoreExecutors.listeningDecorator(
+                Executors.newSingleThreadExecutor(threadFactory("catalog-reader")));
+        this.searchExecutor = Executors.newSingleThreadExecutor(threadFactory("catalog-search"));
+    }
+
+    private static ThreadFactory threadFactory(String name) {
+        return r -> {
+            Thread t = new Thread(() -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                r.run();
+            }, name);
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    static void createProductsTable(SQLiteDatabase db) {
+        createProductsTable(db, TABLE_PRODUCTS);
+    }
+
+    private static void createProductsTable(SQLiteDatabase db, String tableName) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + tableName + "(" +
+                "id INTEGER PRIMARY KEY," +
+                "name TEXT NOT NULL," +
+                "image TEXT," +
+                "price_cents INTEGER NOT NULL," +
+                "category TEXT," +
+                "description TEXT)");
+    }
+
+    /** The products table as version 6 introduced it, with REAL prices. */
+    static void createProductsTableV6(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_PRODUCTS + "(" +
+                "id INTEGER PRIMARY KEY," +
+                "name TEXT NOT NULL," +
+                "image TEXT," +
+                "price REAL NOT NULL," +
+                "category TEXT," +
+                "description TEXT)");
+    }
+
+    /**
+     * Version 9 step for the products table: copies prices into cents and rebuilds the table
+     * without the REAL column. Rebuilding drops the search triggers, so they are put back.
+     */
+    static void storePricesInCents(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE " + TABLE_PRODUCTS + " ADD COLUMN price_cents INTEGER NOT NULL DEFAULT 0");
+        db.execSQL("UPDATE " + TABLE_PRODUCTS + " SET price_cents = CAST(ROUND(price * 100) AS INTEGER)");
+        Migration.rebuildTable(db, TABLE_PRODUCTS, ProductCatalog::createProductsTable);
+        createSearchIndex(db);
+    }
+
+    /**
+     * Full-text index over name, category and description. It uses external content, so it
+     * stores only the index; triggers keep it in step with the products table. FTS4 rather
+     * than FTS5 because FTS5 is not compiled into the platform SQLite on every release.
+     */
+    static void createSearchIndex(SQLiteDatabase db) {
+        db.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS " + TABLE_PRODUCTS_FTS + " USING fts4(" +
+                "content=\"" + TABLE_PRODUCTS + "\", name, category, description, prefix=\"2,3\")");
+        // The old row must leave the index before the content row changes, hence BEFORE
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS products_fts_bu BEFORE UPDATE ON " + TABLE_PRODUCTS +
+                " BEGIN DELETE FROM " + TABLE_PRODUCTS_FTS + " WHERE docid = old.id; END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS products_fts_bd BEFORE DELETE ON " + TABLE_PRODUCTS +
+                " BEGIN DELETE FROM " + TABLE_PRODUCTS_FTS + " WHERE docid = old.id; END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS products_fts_au AFTER UPDATE ON " + TABLE_PRODUCTS +
+                " BEGIN INSERT INTO " + TABLE_PRODUCTS_FTS + "(docid, name, category, description)" +
+                " VALUES (new.id, new.name, new.category, new.description); END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS products_fts_ai AFTER INSERT ON " + TABLE_PRODUCTS +
+                " BEGIN INSERT INTO " + TABLE_PRODUCTS_FTS + "(docid, name, category, description)" +
+                " VALUES (new.id, new.name, new.category, new.description); END");
+        db.execSQL("INSERT INTO " + TABLE_PRODUCTS_FTS + "(" + TABLE_PRODUCTS_FTS + ") VALUES ('rebuild')");
+    }
+
+    /** A new source for one generation of paged data; the Pager asks for another on refresh. */
+    public PagingSource<Long, Product> newPagingSource() {
+        return new ProductPagingSource(this, executor);
+    }
+
+    /** Imports the bundled catalog if the products table is empty. Call off the main thread. */
+    synchronized void ensureSeeded() {
+        if (seeded) return;
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        if (DatabaseUtils.queryNumEntries(db, TABLE_PRODUCTS) > 0) {
+            seeded = true;
+            return;
+        }
+
+        SQLiteStatement insert = db.compileStatement("INSERT INTO " + TABLE_PRODUCTS +
+                "(name, image, price_cents, category, description) VALUES (?, ?, ?, ?, ?)");
+        int imported = 0;
+        db.beginTransaction();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                context.getAssets().open(CATALOG_ASSET), StandardCharsets.UTF_8))) {
+            reader.readLine(); // header
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) continue;
+                // name,image,price,category,description - only the description may contain commas
+                String[] fields = line.split(",", 5);
+                insert.bindString(1, fields[0]);
+                insert.bindString(2, fields[1].startsWith(DRAWABLE_PREFIX)
+                        ? fields[1].substring(DRAWABLE_PREFIX.length()) : fields[1]);
+                insert.bindLong(3, Money.parse(fields[2]).cents());
+                insert.bindString(4, fields.length > 3 ? fields[3] : "");
+                insert.bindString(5, fields.length > 4 ? fields[4] : "");
+                insert.executeInsert();
+                imported++;
+            }
+            // Cart rows carried over from before product ids existed can be linked now
+            DbHelper.linkCartToProducts(db);
+            db.setTransactionSuccessful();
+            seeded = true;
+            if (AppLog.DEBUG) AppLog.d("ProductCatalog", "Imported " + imported + " products from " + CATALOG_ASSET);
+        } catch (IOException | RuntimeException e) {
+            AppLog.e("ProductCatalog", "Error importing catalog: " + e.getMessage());
+        } finally {
+            db.endTransaction();
+            insert.close();
+        }
+    }
+
+    /** Up to {@code limit} products with ids greater than {@code afterId}, in id order. */
+    List<Product> loadAfter(long afterId, int limit) {
+        return query("SELECT " + COLUMNS + " FROM " + TABLE_PRODUCTS +
+                " WHERE id > ? ORDER BY id LIMIT ?", afterId, limit);
+    }
+
+    /** Up to {@code limit} products with ids less than {@code beforeId}, in id order. */
+    List<Product> loadBefore(long beforeId, int limit) {
+        List<Product> page = query("SELECT " + COLUMNS + " FROM " + TABLE_PRODUCTS +
+                " WHERE id < ? ORDER BY id DESC LIMIT ?", beforeId, limit);
+        Collections.reverse(page);
+        return page;
+    }
+
+    /**
+     * Products matching every word of {@code text} as a prefix, in id order. Returns an empty
+     * list when the text has no searchable words.
+     *
+     * @throws android.os.OperationCanceledException if {@code signal} is cancelled mid-query
+     */
+    List<Product> search(String text, int limit, CancellationSignal signal) {
+        String match = toMatchQuery(text);
+        if (match == null) return new ArrayList<>();
+        ensureSeeded();
+        return query("SELECT " + COLUMNS + " FROM " + TABLE_PRODUCTS + " WHERE id IN (" +
+                        "SELECT docid FROM " + TABLE_PRODUCTS_FTS + " WHERE " + TABLE_PRODUCTS_FTS + " MATCH ?" +
+                        " LIMIT ?) ORDER BY id",
+                new String[]{match, String.valueOf(limit)}, limit, signal);
+    }
+
+    Executor searchExecutor() {
+        return searchExecutor;
+    }
+
+    /**
+     * Turns typed text into an FTS prefix query: {@code "usb-c char"} becomes
+     * {@code "usb* c* char*"}. Everything but letters and digits is dropped and the rest is
+     * lower-cased, so user input can never form FTS quotes or operators.
+     */
+    static String toMatchQuery(String text) {
+        if (text == null) return null;
+        StringBuilder match = new StringBuilder();
+        for (String token : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (token.isEmpty()) continue;
+            if (match.length() > 0) match.append(' ');
+            match.append(token).append('*');
+        }
+        return match.length() > 0 ? match.toString() : null;
+    }
+
+    private List<Product> query(String sql, long key, int limit) {
+        return query(sql, new String[]{String.valueOf(key), String.valueOf(limit)}, limit, null);
+    }
+
+    private List<Product> query(String sql, String[] args, int limit, CancellationSignal signal) {
+        List<Product> page = new ArrayList<>(limit);
+        Cursor c = null;
+        try {
+            c = dbHelper.getReadableDatabase().rawQuery(sql, args, signal);
+            while (c.moveToNext()) {
+                page.add(new Product(c.getLong(0), c.getString(1), imageFor(c.getString(2)),
+                        Money.ofCents(c.getLong(3))));
+            }
+        } finally {
+            if (c != null) c.close();
+        }
+        return page;
+    }
+
+    /** Drawable id for a resource entry name, or 0 if there is no such drawable. */
+    int imageFor(String entryName) {
+        if (entryName == null || entryName.isEmpty()) return 0;
+        Integer id = imageIds.get(entryName);
+        if (id == null) {
+            id = context.getResources().getIdentifier(entryName, "drawable", context.getPackageName());
+            imageIds.put(entryName, id);
+        }
+        return id;
+    }
+}
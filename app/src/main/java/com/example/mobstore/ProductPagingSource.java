@@ -0,0 +1,72 @@
+package com.example.mobstore;
+
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.paging.ListenableFuturePagingSource;
+import androidx.paging.PagingState;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+
+import java.util.List;
+
+/**
+ * Pages the product catalog by id. A page's prevKey is its first id and its nextKey its
+ * last id; the adjacent page is then read with {@code id < prevKey} or {@code id > nextKey}.
+ */
+final class ProductPagingSource extends ListenableFuturePagingSource<Long, Product> {
+
+    private final ProductCatalog catalog;
+    private final ListeningExecutorService executor;
+
+    ProductPagingSource(ProductCatalog catalog, ListeningExecutorService executor) {
+        this.catalog = catalog;
+        this.executor = executor;
+    }
+
+    @NonNull
+    @Override
+    public ListenableFuture<LoadResult<Long, Product>> loadFuture(@NonNull LoadParams<Long> params) {
+        return executor.submit(() -> load(params));
+    }
+
+    private LoadResult<Long, Product> load(LoadParams<Long> params) {
+        try {
+            catalog.ensureSeeded();
+            Long key = params.getKey();
+            int loadSize = params.getLoadSize();
+
+            if (params instanceof LoadParams.Prepend) {
+                List<Product> page = catalog.loadBefore(key, loadSize);
+                return page(page, page.size() == loadSize, true);
+            }
+            List<Product> page = catalog.loadAfter(key != null ? key : 0, loadSize);
+            boolean append = params instanceof LoadParams.Append;
+            return page(page, !append && key != null, page.size() == loadSize);
+        } catch (RuntimeException e) {
+            AppLog.e("ProductPagingSource", "Error loading catalog page: " + e.getMessage());
+            return new LoadResult.Error<>(e);
+        }
+    }
+
+    private static LoadResult<Long, Product> page(List<Product> page, boolean hasBefore, boolean hasAfter) {
+        if (page.isEmpty()) {
+            return new LoadResult.Page<>(page, null, null);
+        }
+        Long prevKey = hasBefore ? page.get(0).id : null;
+        Long nextKey = hasAfter ? page.get(page.size() - 1).id : null;
+        return new LoadResult.Page<>(page, prevKey, nextKey);
+    }
+
+    // Restart half an initial load above the item the user was looking at
+    @Nullable
+    @Override
+    public Long getRefreshKey(@NonNull PagingState<Long, Product> state) {
+        Integer anchor = state.getAnchorPosition();
+        if (anchor == null) return null;
+        Product product = state.closestItemToPosition(anchor);
+        if (product == null) return null;
+        return Math.max(0L, product.id - 1 - state.getConfig().initialLoadSize / 2);
+    }
+}
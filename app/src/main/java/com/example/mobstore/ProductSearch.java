@@ -0,0 +1,112 @@
+package com.example.mobstore;
+
+import android.os.CancellationSignal;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.OperationCanceledException;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Type-ahead search over the product catalog. Keystrokes are debounced, and each new
+ * query cancels the one before it, including a query already running in SQLite.
+ * Call everything on the main thread; results are delivered there too.
+ */
+final class ProductSearch {
+
+    static final long DEBOUNCE_MS = 250;
+    /** Shorter queries match too much of a large catalog to be worth running. */
+    static final int MIN_QUERY_LENGTH = 2;
+    static final int MAX_RESULTS = 100;
+
+    interface Listener {
+        void onResults(String query, List<Product> results);
+
+        /** The query became too short to search; show the full catalog again. */
+        void onCleared();
+    }
+
+    private final ProductCatalog catalog;
+    private final Executor executor;
+    private final Listener listener;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private Runnable pending;
+    private CancellationSignal inFlight;
+    // Bumped on every keystroke; a result is only delivered if nothing was typed since
+    private int generation;
+    private boolean active;
+
+    ProductSearch(ProductCatalog catalog, Listener listener) {
+        this(catalog, catalog.searchExecutor(), listener);
+    }
+
+    ProductSearch(ProductCatalog catalog, Executor executor, Listener listener) {
+        this.catalog = catalog;
+        this.executor = executor;
+        this.listener = listener;
+    }
+
+    /** True while search results, rather than the catalog, are being shown. */
+    boolean isActive() {
+        return active;
+    }
+
+    void onQueryChanged(String text) {
+        cancel();
+        String query = text != null ? text.trim() : "";
+        if (query.length() < MIN_QUERY_LENGTH) {
+            if (active) {
+                active = false;
+                listener.onCleared();
+            }
+            return;
+        }
+
+        int queryGeneration = generation;
+        pending = () -> {
+            pending = null;
+            CancellationSignal signal = new CancellationSignal();
+            inFlight = signal;
+            try {
+                executor.execute(() -> run(query, queryGeneration, signal));
+            } catch (RejectedExecutionException e) {
+                AppLog.e("ProductSearch", "Search rejected: " + e.getMessage());
+            }
+        };
+        mainHandler.postDelayed(pending, DEBOUNCE_MS);
+    }
+
+    /** Drops the pending keystroke and cancels any running query. */
+    void cancel() {
+        generation++;
+        if (pending != null) {
+            mainHandler.removeCallbacks(pending);
+            pending = null;
+        }
+        if (inFlight != null) {
+            inFlight.cancel();
+            inFlight = null;
+        }
+    }
+
+    private void run(String query, int queryGeneration, CancellationSignal signal) {
+        List<Product> results;
+        try {
+            results = catalog.search(query, MAX_RESULTS, signal);
+        } catch (OperationCanceledException e) {
+            return;
+        } catch (RuntimeException e) {
+            AppLog.e("ProductSearch", "Error searching for '" + query + "': " + e.getMessage());
+            return;
+        }
+        mainHandler.post(() -> {
+            if (queryGeneration != generation) return;
+            inFlight = null;
+            active = true;
+            listener.onResults(query, results);
+        });
+    }
+}
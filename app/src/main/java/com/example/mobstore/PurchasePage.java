@@ -7,31 +7,43 @@ import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import android.content.Intent;
-import android.database.Cursor;
 import android.os.Bundle;
-import android.util.Log;
 import android.view.View;
 import android.widget.Button;
 import android.widget.EditText;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import java.util.UUID;
+
 public class PurchasePage extends AppCompatActivity {
 
+    private static final String STATE_IDEMPOTENCY_KEY = "idempotencyKey";
+
     TextView totalAmountText, itemCountText, pageTitle;
     EditText nameInput, addressInput, phoneInput;
     Button confirmBtn, cancelBtn;
     RecyclerView summaryRecyclerView;
-    DbHelper dbHelper;
+    CartRepository cartRepository;
+    PurchaseSummaryAdapter summaryAdapter;
+    // The cart as this page shows it, kept current from change events while the page is visible
+    private final CartLines cartLines = new CartLines();
+    private final CartChanges.Listener cartListener = (version, changes) -> {
+        if (cartLines.apply(version, changes)) showOrderDetails();
+    };
 
     // For single item purchase
     boolean isSingleItem = false;
     int singleItemId;
     String singleItemName;
-    double singleItemPrice;
+    Money singleItemPrice = Money.ZERO;
     int singleItemQuantity;
     int singleItemImage;
 
+    // One key per purchase attempt, kept across rotation, so Confirm can never place two orders
+    String idempotencyKey;
+    boolean checkoutInFlight;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -49,7 +61,13 @@ public class PurchasePage extends AppCompatActivity {
         summaryRecyclerView = findViewById(R.id.summaryRecyclerView);
 
 
-        dbHelper = new DbHelper(this);
+        cartRepository = CartRepository.getInstance(this);
+        idempotencyKey = savedInstanceState != null
+                ? savedInstanceState.getString(STATE_IDEMPOTENCY_KEY)
+                : null;
+        if (idempotencyKey == null) {
+            idempotencyKey = UUID.randomUUID().toString();
+        }
 
 
         Intent intent = getIntent();
@@ -59,63 +77,73 @@ public class PurchasePage extends AppCompatActivity {
             // Get single item details
             singleItemId = intent.getIntExtra("itemId", -1);
             singleItemName = intent.getStringExtra("itemName");
-            singleItemPrice = intent.getDoubleExtra("itemPrice", 0.0);
+            singleItemPrice = Money.ofCents(intent.getLongExtra("itemPriceCents", 0));
             singleItemQuantity = intent.getIntExtra("itemQuantity", 1);
             singleItemImage = intent.getIntExtra("itemImage", 0);
 
             pageTitle.setText("Purchase: " + singleItemName);
-            loadSingleItemSummary();
+            summaryRecyclerView.setVisibility(View.GONE);
+            // Shown from the extras until the cart itself has loaded
+            totalAmountText.setText(singleItemPrice.times(singleItemQuantity).toString());
+            itemCountText.setText("1 item");
         } else {
 
             pageTitle.setText("Complete Your Purchase");
             summaryRecyclerView.setLayoutManager(new LinearLayoutManager(this));
-            loadOrderSummary();
+            summaryAdapter = new PurchaseSummaryAdapter(this);
+            summaryRecyclerView.setAdapter(summaryAdapter);
         }
 
 
-        loadOrderDetails();
-
-
         cancelBtn.setOnClickListener(v -> finish());
 
 
         confirmBtn.setOnClickListener(v -> confirmPurchase());
     }
 
-    private void loadSingleItemSummary() {
-        summaryRecyclerView.setVisibility(View.GONE);
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putString(STATE_IDEMPOTENCY_KEY, idempotencyKey);
     }
 
-    private void loadOrderSummary() {
-        try {
-            Cursor cursor = dbHelper.getAllCartItems();
-            if (cursor != null && cursor.getCount() > 0) {
-                PurchaseSummaryAdapter adapter = new PurchaseSummaryAdapter(this, cursor);
-                summaryRecyclerView.setAdapter(adapter);
-            }
-        } catch (Exception e) {
-            Log.e("PurchasePage", "Error loading summary: " + e.getMessage());
+    @Override
+    protected void onStart() {
+        super.onStart();
+        cartRepository.changes().addListener(cartListener);
+        if (!cartLines.isCurrent(cartRepository.changes())) {
+            cartRepository.loadCartLines(snapshot -> {
+                if (isDestroyed() || snapshot == null) return;
+                cartLines.reset(snapshot);
+                showOrderDetails();
+            });
         }
     }
 
-    private void loadOrderDetails() {
-        try {
-            if (isSingleItem) {
-                // Single item purchase
-                double total = singleItemPrice * singleItemQuantity;
-                totalAmountText.setText(String.format("$%.2f", total));
+    @Override
+    protected void onStop() {
+        cartRepository.changes().removeListener(cartListener);
+        super.onStop();
+    }
+
+    private void showOrderDetails() {
+        if (isSingleItem) {
+            // Single item purchase
+            CartItem item = cartLines.get(singleItemId);
+            if (item != null) {
+                totalAmountText.setText(Money.ofCents(item.subtotalCents()).toString());
                 itemCountText.setText("1 item");
             } else {
-                // All items purchase
-                double total = dbHelper.getTotalCartPrice();
-                int itemCount = dbHelper.getTotalItemCount();
-                totalAmountText.setText(String.format("$%.2f", total));
-                itemCountText.setText(itemCount + " item(s)");
+                totalAmountText.setText(Money.ZERO.toString());
+                itemCountText.setText("No longer in your cart");
             }
-        } catch (Exception e) {
-            Log.e("PurchasePage", "Error loading order details: " + e.getMessage());
-            totalAmountText.setText("$0.00");
-            itemCountText.setText("0 item(s)");
+            confirmBtn.setEnabled(item != null && !checkoutInFlight);
+        } else {
+            // All items purchase
+            totalAmountText.setText(Money.ofCents(cartLines.totalCents()).toString());
+            itemCountText.setText(cartLines.size() + " item(s)");
+            summaryAdapter.submitList(cartLines.toList());
+            confirmBtn.setEnabled(cartLines.size() > 0 && !checkoutInFlight);
         }
     }
 
@@ -157,65 +185,78 @@ public class PurchasePage extends AppCompatActivity {
     }
 
     private void processPurchase(String name, String address, String phone) {
-        try {
-            double totalAmount;
-            int itemCount;
-            String orderDetails;
-
-            if (isSingleItem) {
-                totalAmount = singleItemPrice * singleItemQuantity;
-                itemCount = 1;
-                orderDetails = "Item: " + singleItemName + "\n" +
-                        "Quantity: " + singleItemQuantity + "\n" +
-                        "Price: $" + String.format("%.2f", singleItemPrice) + "\n" +
-                        "Subtotal: $" + String.format("%.2f", totalAmount);
-
-
-                dbHelper.deleteCartItemById(singleItemId);
+        if (checkoutInFlight) return;
+        checkoutInFlight = true;
+        confirmBtn.setEnabled(false);
+
+        // The cart row is re-read inside the checkout transaction; the extras only label the page
+        long cartRowId = isSingleItem ? singleItemId : CheckoutService.ALL_ITEMS;
+        int cookie = AppTrace.beginAsync("PurchasePage.processPurchase");
+        cartRepository.checkout(new CheckoutService.Request(idempotencyKey, name, address, phone, cartRowId),
+                result -> {
+                    try {
+                        onPurchaseCompleted(result, name, address, phone);
+                    } finally {
+                        AppTrace.endAsync("PurchasePage.processPurchase", cookie);
+                    }
+                });
+        if (AppLog.DEBUG) AppLog.d("PurchasePage", isSingleItem ? "Single Item Purchase: " + singleItemName : "All Items Purchase");
+    }
 
-                Log.d("PurchasePage", "Single Item Purchase: " + singleItemName);
-            } else {
-                totalAmount = dbHelper.getTotalCartPrice();
-                itemCount = dbHelper.getTotalItemCount();
-                orderDetails = "Total Items: " + itemCount + "\n" +
-                        "Total Amount: $" + String.format("%.2f", totalAmount);
+    private void onPurchaseCompleted(CheckoutService.Result result, String name, String address, String phone) {
+        if (isDestroyed()) return;
+        checkoutInFlight = false;
+        if (result.status == CheckoutService.Status.NOTHING_TO_BUY) {
+            Toast.makeText(this, "Your cart has changed. There is nothing left to purchase.", Toast.LENGTH_LONG).show();
+            finish();
+            return;
+        }
+        if (!result.succeeded()) {
+            confirmBtn.setEnabled(true);
+            Toast.makeText(this, "Could not place your order. Please try again.", Toast.LENGTH_LONG).show();
+            return;
+        }
 
+        if (AppLog.DEBUG) AppLog.d("PurchasePage", "Purchase Details for order " + result.orderId + ":");
+        if (AppLog.DEBUG) AppLog.d("PurchasePage", "Name: " + name);
+        if (AppLog.DEBUG) AppLog.d("PurchasePage", "Address: " + address);
+        if (AppLog.DEBUG) AppLog.d("PurchasePage", "Phone: " + phone);
+        if (AppLog.DEBUG) AppLog.d("PurchasePage", "Total: " + result.total);
+        OrderSyncWorker.enqueue(this);
 
-                dbHelper.clearCart();
 
-                Log.d("PurchasePage", "All Items Purchase");
-            }
+        new AlertDialog.Builder(this)
+                .setTitle("Purchase Successful!")
+                .setMessage("Thank you for your purchase!\n\n" +
+                        "Order #" + result.orderId + "\n\n" +
+                        "Order Details:\n" +
+                        orderDetails(result) + "\n\n" +
+                        "Customer Details:\n" +
+                        "Name: " + name + "\n" +
+                        "Phone: " + phone + "\n\n" +
+                        "Delivery Address:\n" + address + "\n\n" +
+                        "Your order will be delivered soon!")
+                .setPositiveButton("OK", (dialog, which) -> {
+
+                    Intent intent = new Intent(PurchasePage.this, MainActivity.class);
+                    intent.setFlags(Intent.FLAG_ACTIVITY_CLEAR_TOP);
+                    startActivity(intent);
+                    finish();
+                })
+                .setCancelable(false)
+                .show();
+    }
 
-            Log.d("PurchasePage", "Purchase Details:");
-            Log.d("PurchasePage", "Name: " + name);
-            Log.d("PurchasePage", "Address: " + address);
-            Log.d("PurchasePage", "Phone: " + phone);
-            Log.d("PurchasePage", "Total: $" + totalAmount);
-
-
-            new AlertDialog.Builder(this)
-                    .setTitle("Purchase Successful!")
-                    .setMessage("Thank you for your purchase!\n\n" +
-                            "Order Details:\n" +
-                            orderDetails + "\n\n" +
-                            "Customer Details:\n" +
-                            "Name: " + name + "\n" +
-                            "Phone: " + phone + "\n\n" +
-                            "Delivery Address:\n" + address + "\n\n" +
-                            "Your order will be delivered soon!")
-                    .setPositiveButton("OK", (dialog, which) -> {
-
-                        Intent intent = new Intent(PurchasePage.this, MainActivity.class);
-                        intent.setFlags(Intent.FLAG_ACTIVITY_CLEAR_TOP);
-                        startActivity(intent);
-                        finish();
-                    })
-                    .setCancelable(false)
-                    .show();
-
-        } catch (Exception e) {
-            Log.e("PurchasePage", "Error processing purchase: " + e.getMessage());
-            Toast.makeText(this, "Error processing purchase. Please try again.", Toast.LENGTH_LONG).show();
+    // Describes what was charged, as recorded by the checkout rather than as shown on this page
+    private static String orderDetails(CheckoutService.Result result) {
+        if (result.items.size() == 1) {
+            CartItem item = result.items.get(0);
+            return "Item: " + item.productName + "\n" +
+                    "Quantity: " + item.quantity + "\n" +
+                    "Price: " + item.price + "\n" +
+                    "Subtotal: " + result.total;
         }
+        return "Total Items: " + result.itemCount + "\n" +
+                "Total Amount: " + result.total;
     }
-}
\ No newline at end of file
+}
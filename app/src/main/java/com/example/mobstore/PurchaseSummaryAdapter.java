@@ -1,8 +1,6 @@
 package com.example.mobstore;
 
 import android.content.Context;
-import android.database.Cursor;
-import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -10,18 +8,26 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 
-public class PurchaseSummaryAdapter extends RecyclerView.Adapter<PurchaseSummaryAdapter.ViewHolder> {
+public class PurchaseSummaryAdapter extends ListAdapter<CartItem, PurchaseSummaryAdapter.ViewHolder> {
 
-    private Context context;
-    private Cursor cursor;
+    private static final Metrics.Timer BIND = Metrics.tracedTimer("bind.purchaseSummary");
 
-    public PurchaseSummaryAdapter(Context context, Cursor cursor) {
+    private final Context context;
+    private final ImageLoader imageLoader;
+
+    public PurchaseSummaryAdapter(Context context) {
+        super(CartAdapter.DIFF_CALLBACK);
         this.context = context;
-        this.cursor = cursor;
-        Log.d("PurchaseSummaryAdapter", "Adapter created with cursor count: " +
-                (cursor != null ? cursor.getCount() : "null"));
+        this.imageLoader = ImageLoader.getInstance(context);
+        setHasStableIds(true);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return getItem(position).id;
     }
 
     @NonNull
@@ -33,40 +39,27 @@ public class PurchaseSummaryAdapter extends RecyclerView.Adapter<PurchaseSummary
 
     @Override
     public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
+        long start = BIND.start();
         try {
-            if (cursor == null || !cursor.moveToPosition(position)) {
-                Log.e("PurchaseSummaryAdapter", "Failed to move cursor to position: " + position);
-                return;
-            }
-
-            // Get data from cursor
-            String name = cursor.getString(cursor.getColumnIndexOrThrow("productName"));
-            int image = cursor.getInt(cursor.getColumnIndexOrThrow("productImage"));
-            double price = cursor.getDouble(cursor.getColumnIndexOrThrow("price"));
-            int qty = cursor.getInt(cursor.getColumnIndexOrThrow("quantity"));
-            double subtotal = price * qty;
+            CartItem item = getItem(position);
+            long priceCents = item.price.cents();
 
-            // Set data to views
-            holder.name.setText(name);
-            holder.price.setText(String.format("$%.2f", price));
-            holder.quantity.setText("x " + qty);
-            holder.subtotal.setText(String.format("$%.2f", subtotal));
-            holder.image.setImageResource(image);
-
-        } catch (Exception e) {
-            Log.e("PurchaseSummaryAdapter", "Error in onBindViewHolder: " + e.getMessage());
-            e.printStackTrace();
+            holder.name.setText(item.productName);
+            MoneyFormatter.setText(holder.price, priceCents, holder.priceChars);
+            holder.quantity.setText("x " + item.quantity);
+            MoneyFormatter.setText(holder.subtotal, item.subtotalCents(), holder.subtotalChars);
+            imageLoader.load(holder.image, item.productImage);
+        } finally {
+            BIND.stop(start);
         }
     }
 
-    @Override
-    public int getItemCount() {
-        return (cursor != null) ? cursor.getCount() : 0;
-    }
-
     public static class ViewHolder extends RecyclerView.ViewHolder {
         ImageView image;
         TextView name, price, quantity, subtotal;
+        // Reused on every bind so formatting prices allocates nothing
+        final char[] priceChars = new char[MoneyFormatter.MAX_CHARS];
+        final char[] subtotalChars = new char[MoneyFormatter.MAX_CHARS];
 
         public ViewHolder(@NonNull View itemView) {
             super(itemView);
@@ -0,0 +1,133 @@
+package com.example.mobstore;
+
+import android.security.keystore.KeyGenParameterSpec;
+import android.security.keystore.KeyProperties;
+import android.util.Base64;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.Mac;
+
+/**
+ * Signed login sessions, so a returning user is let back in without hashing their password
+ * again. A token names the user, its expiry and the salt of the password hash it was issued
+ * against, and is signed with HMAC-SHA256. Changing the password changes the salt, which
+ * retires every token issued before.
+ *
+ * <p>On a device the key is generated inside the Android keystore and never leaves it.
+ */
+final class SessionTokens {
+
+    static final long DEFAULT_TTL_MS = 30L * 24 * 60 * 60 * 1000;
+
+    private static final String VERSION = "v1";
+    private static final String KEY_ALIAS = "mobstore-session";
+    private static final int BASE64_FLAGS = Base64.URL_SAFE | Base64.NO_WRAP | Base64.NO_PADDING;
+
+    /** Supplies the signing key; called at most once, off the main thread. */
+    interface KeySource {
+        Key load() throws Exception;
+    }
+
+    /** What a valid token says about its user. */
+    static final class Session {
+        final long userId;
+        final String username;
+        final long expiresAt;
+        final byte[] salt;
+
+        Session(long userId, String username, long expiresAt, byte[] salt) {
+            this.userId = userId;
+            this.username = username;
+            this.expiresAt = expiresAt;
+            this.salt = salt;
+        }
+    }
+
+    private final KeySource keySource;
+    private Key key;
+    private boolean keyResolved;
+
+    SessionTokens(KeySource keySource) {
+        this.keySource = keySource;
+    }
+
+    /** The app's HMAC key in the Android keystore, created the first time it is needed. */
+    static KeySource keyStore() {
+        return () -> {
+            KeyStore keyStore = KeyStore.getInstance("AndroidKeyStore");
+            keyStore.load(null);
+            Key existing = keyStore.getKey(KEY_ALIAS, null);
+            if (existing != null) return existing;
+            KeyGenerator generator = KeyGenerator.getInstance(KeyProperties.KEY_ALGORITHM_HMAC_SHA256, "AndroidKeyStore");
+            generator.init(new KeyGenParameterSpec.Builder(KEY_ALIAS,
+                    KeyProperties.PURPOSE_SIGN | KeyProperties.PURPOSE_VERIFY).build());
+            return generator.generateKey();
+        };
+    }
+
+    /** A token for the user, or null if no signing key is available. */
+    synchronized String issue(long userId, String username, byte[] salt, long expiresAt) {
+        String payload = VERSION + "." + userId + "." + expiresAt + "." + encode(username.getBytes(StandardCharsets.UTF_8))
+                + "." + encode(salt);
+        byte[] signature = sign(payload);
+        return signature == null ? null : payload + "." + encode(signature);
+    }
+
+    /** The session a token describes, or null if it is malformed, forged or expired. */
+    synchronized Session parse(String token, long now) {
+        if (token == null) return null;
+        String[] parts = token.split("\\.", -1);
+        if (parts.length != 6 || !VERSION.equals(parts[0])) return null;
+        try {
+            byte[] expected = sign(token.substring(0, token.lastIndexOf('.')));
+            if (expected == null || !MessageDigest.isEqual(expected, decode(parts[5]))) return null;
+            long expiresAt = Long.parseLong(parts[2]);
+            if (expiresAt <= now) return null;
+            return new Session(Long.parseLong(parts[1]), new String(decode(parts[3]), StandardCharsets.UTF_8),
+                    expiresAt, decode(parts[4]));
+        } catch (IllegalArgumentException e) {
+            // Bad base64 or a bad number; the signature check normally catches these first
+            return null;
+        }
+    }
+
+    private byte[] sign(String payload) {
+        Key signingKey = key();
+        if (signingKey == null) return null;
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(signingKey);
+            return mac.doFinal(payload.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            AppLog.e("SessionTokens", "Error signing session: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Without a key every session check fails, so users are asked for their password
+    private Key key() {
+        if (!keyResolved) {
+            keyResolved = true;
+            try {
+                key = keySource.load();
+            } catch (Exception e) {
+                AppLog.e("SessionTokens", "No session key: " + e.getMessage());
+            }
+        }
+        return key;
+    }
+
+    private static String encode(byte[] bytes) {
+        return Base64.encodeToString(bytes, BASE64_FLAGS);
+    }
+
+    private static byte[] decode(String text) {
+        return Base64.decode(text, BASE64_FLAGS);
+    }
+}
@@ -5,11 +5,12 @@ import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 
 public class UserDbHelper extends SQLiteOpenHelper {
 
-    private static final String DATABASE_NAME = "users.db";
-    private static final int DATABASE_VERSION = 1;
+    static final String DATABASE_NAME = "users.db";
+    static final int DATABASE_VERSION = 2;
 
     // Users table
     private static final String TABLE_USERS = "users";
@@ -18,49 +19,151 @@ public class UserDbHelper extends SQLiteOpenHelper {
     private static final String COLUMN_LAST_NAME = "last_name";
     private static final String COLUMN_USERNAME = "username";
     private static final String COLUMN_PASSWORD = "password";
+    private static final String COLUMN_PASSWORD_HASH = "password_hash";
+    private static final String COLUMN_PASSWORD_SALT = "password_salt";
+    private static final String COLUMN_PASSWORD_ITERATIONS = "password_iterations";
+
+    /** A user's stored password hash and the parameters needed to check a password against it. */
+    static final class Credentials {
+        final long userId;
+        final byte[] hash;
+        final byte[] salt;
+        final int iterations;
+
+        Credentials(long userId, byte[] hash, byte[] salt, int iterations) {
+            this.userId = userId;
+            this.hash = hash;
+            this.salt = salt;
+            this.iterations = iterations;
+        }
+    }
+
+    // Schema steps after version 1 go here; see Migration
+    static final Migration[] MIGRATIONS = {
+            new Migration(1, 2, UserDbHelper::hashPlaintextPasswords),
+    };
+
+    private final DbConfig config;
 
     public UserDbHelper(Context context) {
+        this(context, DbConfig.DEFAULT);
+    }
+
+    UserDbHelper(Context context, DbConfig config) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        this.config = config;
+        setWriteAheadLoggingEnabled(config.writeAheadLogging);
+    }
+
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        config.applyPragmas(db);
     }
 
     @Override
     public void onCreate(SQLiteDatabase db) {
-        // Create users table
-        String CREATE_USERS_TABLE = "CREATE TABLE " + TABLE_USERS + " (" +
+        createUsersTable(db, TABLE_USERS);
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        Migration.migrate(db, oldVersion, newVersion, MIGRATIONS);
+    }
+
+    // Version 2 rebuilds the table with this layout, so a fresh table matches an upgraded one
+    private static void createUsersTable(SQLiteDatabase db, String tableName) {
+        db.execSQL("CREATE TABLE " + tableName + " (" +
                 COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
                 COLUMN_FIRST_NAME + " TEXT, " +
                 COLUMN_LAST_NAME + " TEXT, " +
                 COLUMN_USERNAME + " TEXT UNIQUE, " +
-                COLUMN_PASSWORD + " TEXT);";
-        db.execSQL(CREATE_USERS_TABLE);
+                COLUMN_PASSWORD_HASH + " BLOB NOT NULL, " +
+                COLUMN_PASSWORD_SALT + " BLOB NOT NULL, " +
+                COLUMN_PASSWORD_ITERATIONS + " INTEGER NOT NULL)");
     }
 
-    @Override
-    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        db.execSQL("DROP TABLE IF EXISTS " + TABLE_USERS);
-        onCreate(db);
+    /**
+     * Version 2: passwords were stored in plain text. Each one is hashed with a fresh salt at
+     * the default cost, then the plain text column is dropped. Accounts move to the device's
+     * own cost the next time they log in.
+     */
+    private static void hashPlaintextPasswords(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE " + TABLE_USERS + " ADD COLUMN " + COLUMN_PASSWORD_HASH + " BLOB");
+        db.execSQL("ALTER TABLE " + TABLE_USERS + " ADD COLUMN " + COLUMN_PASSWORD_SALT + " BLOB");
+        db.execSQL("ALTER TABLE " + TABLE_USERS + " ADD COLUMN " + COLUMN_PASSWORD_ITERATIONS + " INTEGER");
+        // Rows without a password could never log in; they are dropped with the column
+        db.execSQL("DELETE FROM " + TABLE_USERS + " WHERE " + COLUMN_PASSWORD + " IS NULL");
+
+        Cursor c = null;
+        SQLiteStatement update = db.compileStatement("UPDATE " + TABLE_USERS + " SET " +
+                COLUMN_PASSWORD_HASH + " = ?, " + COLUMN_PASSWORD_SALT + " = ?, " +
+                COLUMN_PASSWORD_ITERATIONS + " = ? WHERE " + COLUMN_ID + " = ?");
+        try {
+            c = db.rawQuery("SELECT " + COLUMN_ID + ", " + COLUMN_PASSWORD + " FROM " + TABLE_USERS, null);
+            while (c.moveToNext()) {
+                byte[] salt = PasswordHasher.newSalt();
+                update.bindBlob(1, PasswordHasher.hash(c.getString(1), salt, PasswordHasher.DEFAULT_ITERATIONS));
+                update.bindBlob(2, salt);
+                update.bindLong(3, PasswordHasher.DEFAULT_ITERATIONS);
+                update.bindLong(4, c.getLong(0));
+                update.executeUpdateDelete();
+            }
+        } finally {
+            if (c != null) c.close();
+            update.close();
+        }
+        Migration.rebuildTable(db, TABLE_USERS, UserDbHelper::createUsersTable);
+    }
+
+    /** Adds a user whose password has already been hashed; see {@link UserRepository#register}. */
+    boolean addUser(String firstName, String lastName, String username, byte[] hash, byte[] salt, int iterations) {
+        try {
+            SQLiteDatabase db = this.getWritableDatabase();
+            ContentValues values = new ContentValues();
+            values.put(COLUMN_FIRST_NAME, firstName);
+            values.put(COLUMN_LAST_NAME, lastName);
+            values.put(COLUMN_USERNAME, username);
+            values.put(COLUMN_PASSWORD_HASH, hash);
+            values.put(COLUMN_PASSWORD_SALT, salt);
+            values.put(COLUMN_PASSWORD_ITERATIONS, iterations);
+            long result = db.insert(TABLE_USERS, null, values);
+            return result != -1;
+        } catch (Exception e) {
+            AppLog.e("UserDbHelper", "Error adding user: " + e.getMessage());
+            return false;
+        }
     }
 
-    // Method to add a user
-    public boolean addUser(String firstName, String lastName, String username, String password) {
-        SQLiteDatabase db = this.getWritableDatabase();
-        ContentValues values = new ContentValues();
-        values.put(COLUMN_FIRST_NAME, firstName);
-        values.put(COLUMN_LAST_NAME, lastName);
-        values.put(COLUMN_USERNAME, username);
-        values.put(COLUMN_PASSWORD, password); // Note: In production, hash the password
-        long result = db.insert(TABLE_USERS, null, values);
-        return result != -1;
+    /** The stored hash for {@code username}, or null if there is no such user. */
+    Credentials findCredentials(String username) {
+        Cursor cursor = null;
+        try {
+            SQLiteDatabase db = this.getReadableDatabase();
+            cursor = db.query(TABLE_USERS,
+                    new String[]{COLUMN_ID, COLUMN_PASSWORD_HASH, COLUMN_PASSWORD_SALT, COLUMN_PASSWORD_ITERATIONS},
+                    COLUMN_USERNAME + "=?", new String[]{username}, null, null, null);
+            if (!cursor.moveToFirst()) return null;
+            return new Credentials(cursor.getLong(0), cursor.getBlob(1), cursor.getBlob(2), cursor.getInt(3));
+        } catch (Exception e) {
+            AppLog.e("UserDbHelper", "Error reading credentials: " + e.getMessage());
+            return null;
+        } finally {
+            if (cursor != null) cursor.close();
+        }
     }
 
-    // Method to check user credentials
-    public boolean checkUser(String username, String password) {
-        SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = db.query(TABLE_USERS, new String[]{COLUMN_ID},
-                COLUMN_USERNAME + "=? AND " + COLUMN_PASSWORD + "=?",
-                new String[]{username, password}, null, null, null);
-        boolean exists = cursor.getCount() > 0;
-        cursor.close();
-        return exists;
+    /** Replaces a user's hash, e.g. to move it to a higher cost after a successful login. */
+    boolean updatePassword(long userId, byte[] hash, byte[] salt, int iterations) {
+        try {
+            ContentValues values = new ContentValues();
+            values.put(COLUMN_PASSWORD_HASH, hash);
+            values.put(COLUMN_PASSWORD_SALT, salt);
+            values.put(COLUMN_PASSWORD_ITERATIONS, iterations);
+            return getWritableDatabase().update(TABLE_USERS, values, COLUMN_ID + "=?",
+                    new String[]{String.valueOf(userId)}) > 0;
+        } catch (Exception e) {
+            AppLog.e("UserDbHelper", "Error updating password: " + e.getMessage());
+            return false;
+        }
     }
-}
\ No newline at end of file
+}
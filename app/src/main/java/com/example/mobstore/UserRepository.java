@@ -0,0 +1,200 @@
+package com.example.mobstore;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Registration, login and sessions. Password hashing is deliberately slow, so every call
+ * runs on one background thread and delivers its result on the main thread.
+ *
+ * <p>The hash cost is measured once per device, the first time one is needed, as the most
+ * PBKDF2 iterations that fit in {@link #HASH_BUDGET_MS}, and remembered. A successful login
+ * issues a signed session token (see {@link SessionTokens}); later launches restore the
+ * session from it without hashing at all.
+ *
+ * <p>Who is signed in decides whose cart is shown; a {@link SessionListener} hears about it.
+ */
+public class UserRepository {
+
+    static final String PREFS = "MyPrefs";
+    static final String PREF_USERNAME = "username";
+    static final String PREF_SESSION = "session_token";
+    /** The signed-in user's id, read at startup to pick the cart before the session is checked. */
+    static final String PREF_USER_ID = "user_id";
+    static final String PREF_ITERATIONS = "password_iterations";
+    /** How long one password hash may take, so a login answers within about a quarter second. */
+    static final long HASH_BUDGET_MS = 250;
+
+    // Checked against when the username is unknown, so a miss costs as long as a wrong password
+    private static final byte[] DUMMY_SALT = new byte[PasswordHasher.SALT_BYTES];
+    private static final byte[] DUMMY_HASH = new byte[PasswordHasher.HASH_BYTES];
+
+    public interface Callback<T> {
+        void onResult(T result);
+    }
+
+    /** Told when the signed-in user changes; called on the auth thread. */
+    interface SessionListener {
+        /** A login succeeded; the guest cart should be merged into {@code userId}'s. */
+        void onLogin(long userId);
+
+        /** The saved session was rejected, so the app is back to the guest cart. */
+        void onSessionEnded();
+    }
+
+    private interface Task<T> {
+        T run();
+    }
+
+    private final UserDbHelper userDb;
+    private final SharedPreferences prefs;
+    private final SessionTokens tokens;
+    private final SessionListener sessionListener;
+    private final ExecutorService executor;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private int deviceIterations;
+
+    /** The app-wide repository, owned by {@link MobStoreApp}. */
+    public static UserRepository getInstance(Context context) {
+        return MobStoreApp.from(context).getUserRepository();
+    }
+
+    UserRepository(UserDbHelper userDb, SharedPreferences prefs, SessionTokens tokens,
+                   SessionListener sessionListener) {
+        this.userDb = userDb;
+        this.prefs = prefs;
+        this.tokens = tokens;
+        this.sessionListener = sessionListener;
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(() -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                r.run();
+            }, "user-auth");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** Creates the account; delivers false if the username is taken. */
+    public void register(String firstName, String lastName, String username, String password,
+                         Callback<Boolean> callback) {
+        submit(() -> {
+            int iterations = deviceIterations();
+            byte[] salt = PasswordHasher.newSalt();
+            byte[] hash = PasswordHasher.hash(password, salt, iterations);
+            return userDb.addUser(firstName, lastName, username, hash, salt, iterations);
+        }, callback);
+    }
+
+    /** Checks the password and starts a session; delivers the session, or null if the login failed. */
+    public void login(String username, String password, Callback<SessionTokens.Session> callback) {
+        submit(() -> {
+            UserDbHelper.Credentials credentials = userDb.findCredentials(username);
+            if (credentials == null) {
+                PasswordHasher.verify(password, DUMMY_SALT, deviceIterations(), DUMMY_HASH);
+                AppLog.d("UserRepository", "Login failed");
+                return null;
+            }
+            if (!PasswordHasher.verify(password, credentials.salt, credentials.iterations, credentials.hash)) {
+                AppLog.d("UserRepository", "Login failed");
+                return null;
+            }
+            byte[] salt = credentials.salt;
+            int iterations = deviceIterations();
+            if (credentials.iterations < iterations) {
+                // The password is in hand, so this is the one chance to move it to the current cost
+                byte[] newSalt = PasswordHasher.newSalt();
+                byte[] newHash = PasswordHasher.hash(password, newSalt, iterations);
+                if (userDb.updatePassword(credentials.userId, newHash, newSalt, iterations)) {
+                    salt = newSalt;
+                    if (AppLog.DEBUG) AppLog.d("UserRepository", "Rehashed password from " + credentials.iterations + " to " + iterations + " iterations");
+                }
+            }
+            SessionTokens.Session session = startSession(credentials.userId, username, salt);
+            sessionListener.onLogin(credentials.userId);
+            return session;
+        }, callback);
+    }
+
+    /**
+     * The session saved by the last login, if it is still valid; delivers null otherwise and
+     * forgets it. No password hashing is involved.
+     */
+    public void restoreSession(Callback<SessionTokens.Session> callback) {
+        submit(() -> {
+            String token = prefs.getString(PREF_SESSION, null);
+            SessionTokens.Session session = token == null ? null : tokens.parse(token, System.currentTimeMillis());
+            if (session != null) {
+                // The account must still exist with the password the session was issued for
+                UserDbHelper.Credentials credentials = userDb.findCredentials(session.username);
+                if (credentials == null || credentials.userId != session.userId
+                        || !Arrays.equals(credentials.salt, session.salt)) {
+                    session = null;
+                }
+            }
+            // Also catches a username left by a login from before sessions were signed
+            if (session == null && (token != null || prefs.contains(PREF_USERNAME) || prefs.contains(PREF_USER_ID))) {
+                AppLog.d("UserRepository", "Saved session is no longer valid");
+                prefs.edit().remove(PREF_SESSION).remove(PREF_USERNAME).remove(PREF_USER_ID).apply();
+                sessionListener.onSessionEnded();
+            }
+            return session;
+        }, callback);
+    }
+
+    private SessionTokens.Session startSession(long userId, String username, byte[] salt) {
+        long expiresAt = System.currentTimeMillis() + SessionTokens.DEFAULT_TTL_MS;
+        String token = tokens.issue(userId, username, salt, expiresAt);
+        SharedPreferences.Editor editor = prefs.edit()
+                .putString(PREF_USERNAME, username)
+                .putLong(PREF_USER_ID, userId);
+        if (token != null) {
+            editor.putString(PREF_SESSION, token);
+        } else {
+            editor.remove(PREF_SESSION);
+        }
+        editor.apply();
+        return new SessionTokens.Session(userId, username, expiresAt, salt);
+    }
+
+    // Only touched on the auth thread
+    private int deviceIterations() {
+        if (deviceIterations == 0) {
+            deviceIterations = prefs.getInt(PREF_ITERATIONS, 0);
+            if (deviceIterations == 0) {
+                deviceIterations = PasswordHasher.calibrate(HASH_BUDGET_MS);
+                prefs.edit().putInt(PREF_ITERATIONS, deviceIterations).apply();
+                if (AppLog.DEBUG) AppLog.d("UserRepository", "Password hashing calibrated to " + deviceIterations + " iterations");
+            }
+        }
+        return deviceIterations;
+    }
+
+    private <T> void submit(Task<T> task, Callback<T> callback) {
+        try {
+            executor.execute(() -> {
+                T result;
+                try {
+                    result = task.run();
+                } catch (Exception e) {
+                    AppLog.e("UserRepository", "Error in account operation: " + e.getMessage());
+                    result = null;
+                }
+                T delivered = result;
+                if (callback != null) {
+                    mainHandler.post(() -> callback.onResult(delivered));
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            AppLog.e("UserRepository", "Account operation rejected: " + e.getMessage());
+        }
+    }
+}
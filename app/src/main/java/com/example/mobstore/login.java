@@ -1,8 +1,6 @@
 package com.example.mobstore;
 
-import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.os.Bundle;
 import android.view.View;
 import android.widget.Button;
@@ -21,19 +19,20 @@ public class login extends AppCompatActivity {
     private EditText etUsername, etPassword;
     private Button log;
     private TextView notreg;
-    private UserDbHelper dbHelper;
+    private UserRepository users;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_login);
+        ImageLoader.getInstance(this).loadBackground(findViewById(R.id.main), R.drawable.back3);
 
         etUsername = findViewById(R.id.uname);
         etPassword = findViewById(R.id.pass);
         log = findViewById(R.id.btn2);
         notreg = findViewById(R.id.notreg);
 
-        dbHelper = new UserDbHelper(this);
+        users = UserRepository.getInstance(this);
 
         log.setOnClickListener(new View.OnClickListener() {
             @Override
@@ -46,20 +45,19 @@ public class login extends AppCompatActivity {
                     return;
                 }
 
-                boolean isValid = dbHelper.checkUser(username, password);
-                if (isValid) {
-                    SharedPreferences sharedPref = getSharedPreferences("MyPrefs", Context.MODE_PRIVATE);
-                    SharedPreferences.Editor editor = sharedPref.edit();
-                    editor.putString("username", username);
-                    editor.apply();
-
-                    Toast.makeText(login.this, "Login successful", Toast.LENGTH_SHORT).show();
-                    Intent i = new Intent(login.this, MainActivity.class);
-                    startActivity(i);
-                    finish();
-                } else {
-                    Toast.makeText(login.this, "Invalid username or password", Toast.LENGTH_SHORT).show();
-                }
+                log.setEnabled(false);
+                users.login(username, password, session -> {
+                    if (isDestroyed()) return;
+                    if (session != null) {
+                        Toast.makeText(login.this, "Login successful", Toast.LENGTH_SHORT).show();
+                        Intent i = new Intent(login.this, MainActivity.class);
+                        startActivity(i);
+                        finish();
+                    } else {
+                        log.setEnabled(true);
+                        Toast.makeText(login.this, "Invalid username or password", Toast.LENGTH_SHORT).show();
+                    }
+                });
             }
         });
 
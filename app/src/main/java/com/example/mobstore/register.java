@@ -18,13 +18,14 @@ public class register extends AppCompatActivity {
 
     private EditText etFirstName, etLastName, etUsername, etPassword;
     private Button reg, login;
-    private UserDbHelper dbHelper;
+    private UserRepository users;
 
     @SuppressLint("MissingInflatedId")
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_register);
+        ImageLoader.getInstance(this).loadBackground(findViewById(R.id.main), R.drawable.back5);
 
         etFirstName = findViewById(R.id.fname);
         etLastName = findViewById(R.id.lname);
@@ -33,7 +34,7 @@ public class register extends AppCompatActivity {
         reg = findViewById(R.id.btn1);
         login = findViewById(R.id.btn2);
 
-        dbHelper = new UserDbHelper(this);
+        users = UserRepository.getInstance(this);
 
         reg.setOnClickListener(new View.OnClickListener() {
             @Override
@@ -48,22 +49,26 @@ public class register extends AppCompatActivity {
                     return;
                 }
 
-                boolean added = dbHelper.addUser(firstName, lastName, username, password);
-                if (added) {
-                    Toast.makeText(register.this, "Registration successful", Toast.LENGTH_SHORT).show();
-                    Intent intent = new Intent(register.this, login.class);
-                    startActivity(intent);
-                    finish();
-                } else {
-                    Toast.makeText(register.this, "Registration failed. Username may already exist.", Toast.LENGTH_SHORT).show();
-                }
+                reg.setEnabled(false);
+                users.register(firstName, lastName, username, password, added -> {
+                    if (isDestroyed()) return;
+                    if (Boolean.TRUE.equals(added)) {
+                        Toast.makeText(register.this, "Registration successful", Toast.LENGTH_SHORT).show();
+                        Intent intent = new Intent(register.this, login.class);
+                        startActivity(intent);
+                        finish();
+                    } else {
+                        reg.setEnabled(true);
+                        Toast.makeText(register.this, "Registration failed. Username may already exist.", Toast.LENGTH_SHORT).show();
+                    }
+                });
             }
         });
 
         login.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
-                Intent i3 = new Intent(register.this, com.example.mobstore.login.class);
+                Intent i3 = new Intent(register.this, login.class);
                 startActivity(i3);
             }
         });
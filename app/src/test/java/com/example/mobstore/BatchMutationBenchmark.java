@@ -0,0 +1,116 @@
+package com.example.mobstore;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Set-based deleteByIds / updateQuantities against the per-id loop they replace, for 10k ids.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class BatchMutationBenchmark {
+
+    private static final int IDS = 10_000;
+    private static final int ROUNDS = 5;
+
+    private DbHelper dbHelper;
+
+    @Before
+    public void setUp() {
+        dbHelper = new DbHelper(RuntimeEnvironment.getApplication(), new CartStore());
+    }
+
+    @After
+    public void tearDown() {
+        dbHelper.close();
+    }
+
+    @Test
+    public void delete10kIds() throws Exception {
+        long[] ids = new long[IDS];
+        MicroBench.run("delete 10k ids (per-id loop)", 1, ROUNDS, i -> {
+            long first = seed();
+            fill(ids, first);
+            assertEquals(IDS, deleteLoop(ids));
+        });
+        MicroBench.run("delete 10k ids (deleteByIds)", 1, ROUNDS, i -> {
+            long first = seed();
+            fill(ids, first);
+            assertEquals(IDS, dbHelper.deleteByIds(ids));
+        });
+    }
+
+    @Test
+    public void update10kQuantities() throws Exception {
+        long first = seed();
+        Map<Long, Integer> quantities = new HashMap<>();
+        for (int i = 0; i < IDS; i++) {
+            quantities.put(first + i, 2 + i % 7);
+        }
+
+        MicroBench.run("update 10k quantities (updateQuantityById loop)", 1, ROUNDS, i -> {
+            for (Map.Entry<Long, Integer> entry : quantities.entrySet()) {
+                dbHelper.updateQuantityById(entry.getKey().intValue(), entry.getValue() + i);
+            }
+        });
+        MicroBench.run("update 10k quantities (updateQuantities)", 1, ROUNDS,
+                i -> assertEquals(IDS, dbHelper.updateQuantities(quantities)));
+    }
+
+    // What deleteMultipleItems did before: one DELETE per id inside a transaction
+    private int deleteLoop(long[] ids) {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        int deleted = 0;
+        db.beginTransaction();
+        try {
+            for (long id : ids) {
+                deleted += db.delete("cart", "id=?", new String[]{String.valueOf(id)});
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return deleted;
+    }
+
+    private static void fill(long[] ids, long first) {
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = first + i;
+        }
+    }
+
+    /** Inserts IDS rows and returns the id of the first one; ids are consecutive. */
+    private long seed() {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        SQLiteStatement insert = db.compileStatement(
+                "INSERT INTO cart(productName, productImage, price_cents, quantity) VALUES (?, ?, ?, ?)");
+        long first = -1;
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < IDS; i++) {
+                insert.bindString(1, "Batch " + System.nanoTime() + "-" + i);
+                insert.bindLong(2, R.drawable.ep);
+                insert.bindLong(3, 499);
+                insert.bindLong(4, 1);
+                long id = insert.executeInsert();
+                if (i == 0) first = id;
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            insert.close();
+        }
+        return first;
+    }
+}
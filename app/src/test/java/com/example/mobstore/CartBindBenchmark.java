@@ -0,0 +1,88 @@
+package com.example.mobstore;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.view.ContextThemeWrapper;
+import android.widget.FrameLayout;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares binding a 1,000-row cart from a Cursor (the old CartAdapter path) against
+ * binding from immutable CartItem snapshots through the ListAdapter.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class CartBindBenchmark {
+
+    private static final int ROWS = 1_000;
+    private static final String[] COLUMNS = {"id", "productName", "productImage", "price", "quantity"};
+
+    private Context context;
+    private FrameLayout parent;
+    private Cursor cursor;
+    private List<CartItem> snapshot;
+
+    @Before
+    public void setUp() {
+        context = new ContextThemeWrapper(RuntimeEnvironment.getApplication(), R.style.Theme_MobStore);
+        parent = new FrameLayout(context);
+
+        MatrixCursor matrix = new MatrixCursor(COLUMNS, ROWS);
+        snapshot = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            String name = "Product " + i;
+            long cents = 100 * (1 + i % 100) + 99;
+            int qty = 1 + i % 5;
+            matrix.addRow(new Object[]{i + 1, name, R.drawable.ep, cents / 100.0, qty});
+            snapshot.add(new CartItem(i + 1, i + 1, name, R.drawable.ep, Money.ofCents(cents), qty));
+        }
+        cursor = matrix;
+    }
+
+    @Test
+    public void bindCost_cursorVersusSnapshot() throws Exception {
+        CartAdapter adapter = new CartAdapter(context, null);
+        adapter.submitList(snapshot);
+        assertEquals(ROWS, adapter.getItemCount());
+        CartAdapter.ViewHolder holder = adapter.onCreateViewHolder(parent, 0);
+
+        MicroBench.Result legacy = MicroBench.run("CartAdapter bind (cursor, 1k rows)", 5 * ROWS, 20 * ROWS,
+                i -> bindFromCursor(holder, i % ROWS));
+        MicroBench.Result current = MicroBench.run("CartAdapter bind (snapshot, 1k rows)", 5 * ROWS, 20 * ROWS,
+                i -> adapter.onBindViewHolder(holder, i % ROWS));
+
+        assertTrue(legacy.nanosPerOp > 0 && current.nanosPerOp > 0);
+        assertEquals("Product 999", holder.name.getText().toString());
+    }
+
+    // Mirrors what CartAdapter.onBindViewHolder did before it moved to snapshots
+    private void bindFromCursor(CartAdapter.ViewHolder holder, int position) {
+        if (!cursor.moveToPosition(position)) return;
+        int idCol = cursor.getColumnIndex("id");
+        int nameCol = cursor.getColumnIndex("productName");
+        int imgCol = cursor.getColumnIndex("productImage");
+        int priceCol = cursor.getColumnIndex("price");
+        int qtyCol = cursor.getColumnIndex("quantity");
+        if (idCol == -1 || nameCol == -1 || imgCol == -1 || priceCol == -1 || qtyCol == -1) return;
+
+        String name = cursor.getString(nameCol);
+        int image = cursor.getInt(imgCol);
+        double price = cursor.getDouble(priceCol);
+        int qty = cursor.getInt(qtyCol);
+
+        holder.name.setText(name != null ? name : "Unknown");
+        holder.price.setText(String.format("$%.2f", price));
+        holder.quantity.setText("Qty: " + qty);
+        holder.image.setImageResource(image);
+    }
+}
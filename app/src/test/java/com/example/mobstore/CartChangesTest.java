@@ -0,0 +1,153 @@
+package com.example.mobstore;
+
+import android.os.Looper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Checks that every committed cart write is published as typed changes, one version per
+ * commit, and that a copy kept current from those changes matches a fresh reload.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class CartChangesTest {
+
+    private DbHelper dbHelper;
+    private final List<Long> versions = new ArrayList<>();
+    private final List<CartChange> received = new ArrayList<>();
+    private final CartChanges.Listener listener = (version, changes) -> {
+        versions.add(version);
+        received.addAll(changes);
+    };
+
+    @Before
+    public void setUp() {
+        dbHelper = new DbHelper(RuntimeEnvironment.getApplication(), new CartStore());
+        dbHelper.changes().addListener(listener);
+    }
+
+    @After
+    public void tearDown() {
+        dbHelper.changes().removeListener(listener);
+        dbHelper.close();
+    }
+
+    @Test
+    public void eachWrite_publishesTypedChanges() {
+        Product headphones = new Product(1, "Headphones", 0, Money.ofCents(1299));
+        dbHelper.addOrIncrement(headphones, 1);
+        dbHelper.addOrIncrement(headphones, 2);
+        long rowId = dbHelper.getCartItems().get(0).id;
+        dbHelper.updateQuantityById((int) rowId, 5);
+        dbHelper.deleteCartItemById((int) rowId);
+        dbHelper.insertCartItem(2, "Charger", 0, Money.ofCents(1000), 1);
+        dbHelper.clearCart();
+        idle();
+
+        assertEquals(6, versions.size());
+        assertEquals(6, dbHelper.changes().version());
+        assertEquals(CartChange.Type.INSERTED, received.get(0).type);
+        assertEquals(1, received.get(0).item.quantity);
+        assertEquals(CartChange.Type.UPDATED, received.get(1).type);
+        assertEquals(3, received.get(1).item.quantity);
+        assertEquals(CartChange.Type.UPDATED, received.get(2).type);
+        assertEquals(5, received.get(2).item.quantity);
+        assertEquals(Money.ofCents(1299), received.get(2).item.price);
+        assertEquals(CartChange.Type.DELETED, received.get(3).type);
+        assertEquals(rowId, received.get(3).rowId);
+        assertEquals(CartChange.Type.INSERTED, received.get(4).type);
+        assertEquals(CartChange.Type.CLEARED, received.get(5).type);
+    }
+
+    @Test
+    public void failedWrite_publishesNothing() {
+        dbHelper.updateQuantityById(999, 3);
+        dbHelper.deleteCartItemById(999);
+        dbHelper.addOrIncrement(new Product(0, "Unlinked", 0, Money.ofCents(100)), 1);
+        idle();
+
+        assertTrue(received.isEmpty());
+        assertEquals(0, dbHelper.changes().version());
+    }
+
+    @Test
+    public void deleteByIds_publishesOnlyRowsItRemoved() {
+        dbHelper.setUser(42);
+        dbHelper.insertCartItem(3, "Cable", 0, Money.ofCents(499), 1);
+        long otherUsersRow = dbHelper.getCartItems().get(0).id;
+        dbHelper.setUser(DbHelper.GUEST);
+        dbHelper.insertCartItem(1, "Headphones", 0, Money.ofCents(1299), 1);
+        dbHelper.insertCartItem(2, "Charger", 0, Money.ofCents(1000), 1);
+        long rowId = dbHelper.getCartItems().get(0).id;
+        idle();
+        versions.clear();
+        received.clear();
+
+        assertEquals(0, dbHelper.deleteByIds(new long[]{999, otherUsersRow}));
+        assertEquals(1, dbHelper.deleteByIds(new long[]{rowId, 999, rowId, otherUsersRow}));
+        idle();
+
+        assertEquals(1, versions.size());
+        assertEquals(1, received.size());
+        assertEquals(CartChange.Type.DELETED, received.get(0).type);
+        assertEquals(rowId, received.get(0).rowId);
+        assertEquals(1, dbHelper.getTotalItemCount());
+    }
+
+    @Test
+    public void checkout_isOneCommit() {
+        dbHelper.insertCartItem(1, "Headphones", 0, Money.ofCents(1299), 1);
+        dbHelper.insertCartItem(2, "Charger", 0, Money.ofCents(1000), 1);
+        idle();
+        versions.clear();
+        received.clear();
+
+        new CheckoutService(dbHelper).checkout(new CheckoutService.Request("key", "Ada", "1 Main St", "555",
+                CheckoutService.ALL_ITEMS));
+        idle();
+
+        assertEquals(1, versions.size());
+        assertEquals(2, received.size());
+        assertEquals(CartChange.Type.DELETED, received.get(0).type);
+        assertEquals(CartChange.Type.DELETED, received.get(1).type);
+    }
+
+    @Test
+    public void appliedChanges_matchReload() {
+        dbHelper.insertCartItem(1, "Headphones", 0, Money.ofCents(1299), 2);
+        dbHelper.insertCartItem(2, "Charger", 0, Money.ofCents(1000), 1);
+        CartLines lines = new CartLines();
+        lines.reset(new CartLines.Snapshot(dbHelper.changes().version(), dbHelper.getCartItems()));
+        CartChanges.Listener follower = lines::apply;
+        dbHelper.changes().addListener(follower);
+        // Changes already in the snapshot are still queued on the main thread; they must be skipped
+        idle();
+        assertTrue(lines.isCurrent(dbHelper.changes()));
+
+        dbHelper.addOrIncrement(new Product(3, "Cable", 0, Money.ofCents(499)), 3);
+        dbHelper.addOrIncrement(new Product(1, "Headphones", 0, Money.ofCents(1299)), 1);
+        dbHelper.deleteCartItem(2);
+        assertFalse(lines.isCurrent(dbHelper.changes()));
+        idle();
+        dbHelper.changes().removeListener(follower);
+
+        assertTrue(lines.isCurrent(dbHelper.changes()));
+        assertEquals(dbHelper.getCartItems(), lines.toList());
+        assertEquals(dbHelper.getTotalCartPrice().cents(), lines.totalCents());
+        assertEquals(dbHelper.getTotalQuantity(), lines.totalQuantity());
+    }
+
+    private static void idle() {
+        shadowOf(Looper.getMainLooper()).idle();
+    }
+}
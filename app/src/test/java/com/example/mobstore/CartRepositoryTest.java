@@ -0,0 +1,121 @@
+package com.example.mobstore;
+
+import android.os.Looper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Checks that a call the writer's full queue turns away still ends in its callback, with the
+ * failure value, and that the calls it did take are applied once it catches up.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class CartRepositoryTest {
+
+    private static final int QUEUE = 4;
+
+    private DbHelper dbHelper;
+    private ExecutorService writer;
+    private ExecutorService reader;
+    private CartRepository repository;
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @Before
+    public void setUp() throws InterruptedException {
+        RuntimeEnvironment.getApplication().deleteDatabase(DbHelper.DB_NAME);
+        dbHelper = new DbHelper(RuntimeEnvironment.getApplication(), new CartStore());
+        writer = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(QUEUE));
+        reader = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>());
+        repository = new CartRepository(dbHelper, writer, reader);
+
+        // Hold the writer so everything submitted after this waits in the queue
+        CountDownLatch started = new CountDownLatch(1);
+        writer.execute(() -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        release.countDown();
+        writer.shutdown();
+        reader.shutdown();
+        writer.awaitTermination(5, TimeUnit.SECONDS);
+        dbHelper.close();
+    }
+
+    @Test
+    public void fullQueue_stillCallsBackWithFailure() throws InterruptedException {
+        Product headphones = new Product(1, "Headphones", 0, Money.ofCents(1299));
+        List<Integer> added = new ArrayList<>();
+        for (int i = 0; i < QUEUE; i++) {
+            repository.addOrIncrement(headphones, 1, added::add);
+        }
+        List<Integer> rejected = new ArrayList<>();
+        List<Boolean> updated = new ArrayList<>();
+        List<CheckoutService.Result> checkouts = new ArrayList<>();
+        List<CartLines.Snapshot> snapshots = new ArrayList<>();
+        List<Boolean> cleared = new ArrayList<>();
+
+        repository.addOrIncrement(headphones, 1, rejected::add);
+        repository.updateQuantityById(1, 3, updated::add);
+        repository.checkout(new CheckoutService.Request("full", "Ada", "1 Main St", "555",
+                CheckoutService.ALL_ITEMS), checkouts::add);
+        repository.loadCartLines(snapshots::add);
+        repository.clearCart(cleared::add);
+        idle();
+
+        assertEquals(List.of(-1), rejected);
+        assertEquals(List.of(false), updated);
+        assertEquals(1, checkouts.size());
+        assertEquals(CheckoutService.Status.FAILED, checkouts.get(0).status);
+        assertEquals(1, snapshots.size());
+        assertNull(snapshots.get(0));
+        assertEquals(List.of(false), cleared);
+        assertTrue(added.isEmpty());
+
+        release.countDown();
+        writer.shutdown();
+        assertTrue(writer.awaitTermination(5, TimeUnit.SECONDS));
+        idle();
+        assertEquals(List.of(1, 2, 3, 4), added);
+        assertEquals(QUEUE, dbHelper.getProductQuantity(1));
+    }
+
+    @Test
+    public void acceptedClear_callsBackTrue() throws InterruptedException {
+        List<Boolean> cleared = new ArrayList<>();
+        repository.clearCart(cleared::add);
+
+        release.countDown();
+        writer.shutdown();
+        assertTrue(writer.awaitTermination(5, TimeUnit.SECONDS));
+        idle();
+        assertEquals(List.of(true), cleared);
+    }
+
+    private static void idle() {
+        shadowOf(Looper.getMainLooper()).idle();
+    }
+}
@@ -0,0 +1,184 @@
+package com.example.mobstore;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs random sequences of DbHelper mutations and checks after every step that the
+ * in-memory CartStore, including its product index, agrees with what is actually in SQLite.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class CartStoreTest {
+
+    private static final String[] NAMES = {
+            "Headphones", "Charger", "Phone Case", "Power Bank", "Earbuds", "Earphones", "Tempered", "SD Card"
+    };
+    private static final Money[] PRICES = {
+            Money.ofCents(1299), Money.ofCents(1000), Money.ofCents(300), Money.ofCents(4999),
+            Money.ofCents(688), Money.ofCents(10099), Money.ofCents(299), Money.ofCents(1099)
+    };
+
+    private CartStore store;
+    private DbHelper dbHelper;
+
+    @Before
+    public void setUp() {
+        store = new CartStore();
+        dbHelper = new DbHelper(RuntimeEnvironment.getApplication(), store);
+    }
+
+    @After
+    public void tearDown() {
+        dbHelper.close();
+    }
+
+    @Test
+    public void emptyCart_hasZeroTotals() {
+        assertTrue(dbHelper.isCartEmpty());
+        assertEquals(0, dbHelper.getTotalItemCount());
+        assertEquals(0, dbHelper.getTotalQuantity());
+        assertEquals(Money.ZERO, dbHelper.getTotalCartPrice());
+    }
+
+    @Test
+    public void randomMutations_keepStoreConsistentWithSqlite() {
+        for (long seed = 1; seed <= 20; seed++) {
+            dbHelper.clearCart();
+            Random random = new Random(seed);
+            for (int step = 0; step < 200; step++) {
+                mutate(random);
+                assertConsistent("seed " + seed + " step " + step);
+            }
+        }
+    }
+
+    @Test
+    public void storeLoadedAfterWrites_matchesSqlite() {
+        dbHelper.insertCartItem(2, "Charger", 0, Money.ofCents(1000), 3);
+        dbHelper.insertCartItem(5, "Earbuds", 0, Money.ofCents(688), 2);
+
+        // A fresh store that has never seen the writes must pick them up on first read
+        CartStore fresh = new CartStore();
+        DbHelper other = new DbHelper(RuntimeEnvironment.getApplication(), fresh);
+        assertEquals(2, other.getTotalItemCount());
+        assertEquals(5, other.getTotalQuantity());
+        assertEquals(Money.ofCents(4376), other.getTotalCartPrice());
+        other.close();
+    }
+
+    @Test
+    public void renamedProduct_keepsItsCartRow() {
+        dbHelper.addOrIncrement(new Product(7, "Tempered", 0, Money.ofCents(299)), 1);
+        assertEquals(3, dbHelper.addOrIncrement(new Product(7, "Tempered Glass", 0, Money.ofCents(299)), 2));
+
+        List<CartItem> items = dbHelper.getCartItems();
+        assertEquals(1, items.size());
+        assertEquals("Tempered Glass", items.get(0).productName);
+        assertEquals(3, dbHelper.getProductQuantity(7));
+        assertTrue(dbHelper.deleteCartItem(7));
+        assertFalse(dbHelper.isProductInCart(7));
+    }
+
+    @Test
+    public void productWithoutCatalogId_isRejected() {
+        assertEquals(-1, dbHelper.addOrIncrement(new Product("Loose Cable", 0, Money.ofCents(100)), 1));
+        assertTrue(dbHelper.isCartEmpty());
+    }
+
+    private void mutate(Random random) {
+        List<CartItem> rows = dbHelper.getCartItems();
+        int index = random.nextInt(NAMES.length);
+        long productId = index + 1;
+        switch (random.nextInt(9)) {
+            case 0:
+                dbHelper.addOrIncrement(new Product(productId, NAMES[index], 0, PRICES[index]), 1 + random.nextInt(3));
+                break;
+            case 1:
+                dbHelper.insertCartItem(productId, NAMES[index], 0, PRICES[index], 1 + random.nextInt(5));
+                break;
+            case 2:
+                if (!rows.isEmpty()) {
+                    CartItem row = rows.get(random.nextInt(rows.size()));
+                    dbHelper.updateQuantityById((int) row.id, 1 + random.nextInt(9));
+                }
+                break;
+            case 3:
+                dbHelper.updateQuantity(productId, 1 + random.nextInt(9));
+                break;
+            case 4:
+                if (!rows.isEmpty()) {
+                    dbHelper.deleteCartItemById((int) rows.get(random.nextInt(rows.size())).id);
+                }
+                break;
+            case 5:
+                dbHelper.deleteCartItem(productId);
+                break;
+            case 6:
+                if (!rows.isEmpty()) {
+                    Map<Long, Integer> quantities = new HashMap<>();
+                    for (CartItem row : rows) {
+                        if (random.nextBoolean()) quantities.put(row.id, random.nextInt(6));
+                    }
+                    dbHelper.updateQuantities(quantities);
+                }
+                break;
+            case 7:
+                if (!rows.isEmpty()) {
+                    dbHelper.deleteByIds(new long[]{rows.get(random.nextInt(rows.size())).id, -1});
+                }
+                break;
+            default:
+                if (rows.size() > 1) {
+                    dbHelper.deleteMultipleItems(new int[]{(int) rows.get(0).id, (int) rows.get(1).id});
+                } else if (random.nextInt(10) == 0) {
+                    dbHelper.clearCart();
+                }
+                break;
+        }
+    }
+
+    private void assertConsistent(String where) {
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        List<CartItem> expected = new ArrayList<>();
+        long expectedCents = 0;
+        int expectedQuantity = 0;
+        try (Cursor c = db.rawQuery(
+                "SELECT id, product_id, productName, productImage, price_cents, quantity FROM cart ORDER BY id", null)) {
+            while (c.moveToNext()) {
+                CartItem item = new CartItem(c.getLong(0), c.getLong(1), c.getString(2), c.getInt(3),
+                        Money.ofCents(c.getLong(4)), c.getInt(5));
+                expected.add(item);
+                expectedCents += item.price.cents() * item.quantity;
+                expectedQuantity += item.quantity;
+            }
+        }
+
+        assertEquals(where, expected, dbHelper.getCartItems());
+        assertEquals(where, expected.size(), dbHelper.getTotalItemCount());
+        assertEquals(where, expected.isEmpty(), dbHelper.isCartEmpty());
+        assertEquals(where, expectedQuantity, dbHelper.getTotalQuantity());
+        assertEquals(where, Money.ofCents(expectedCents), dbHelper.getTotalCartPrice());
+        for (long productId = 1; productId <= NAMES.length; productId++) {
+            CartItem row = null;
+            for (CartItem item : expected) {
+                if (item.productId == productId) row = item;
+            }
+            assertEquals(where + " product " + productId, row, store.findByProduct(productId));
+        }
+    }
+}
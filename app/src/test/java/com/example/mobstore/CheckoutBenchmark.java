@@ -0,0 +1,96 @@
+package com.example.mobstore;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * Commit time for checking out a 500-line cart: reading the cart, the order row, every order
+ * line and the cart deletion in one transaction. Excluded from the normal unit test run; use
+ * {@code ./gradlew :app:testDebugUnitTest -Pbenchmark}.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class CheckoutBenchmark {
+
+    private static final int LINES = 500;
+    private static final int ROUNDS = 40;
+    private static final int WARMUP_ROUNDS = 10;
+    /** Half of a 60 Hz frame, so a checkout never costs a dropped frame's worth of writer time. */
+    private static final long P50_BUDGET_NANOS = 8_000_000;
+
+    private CartStore store;
+    private DbHelper dbHelper;
+    private CheckoutService checkout;
+
+    @Before
+    public void setUp() {
+        store = new CartStore();
+        dbHelper = new DbHelper(RuntimeEnvironment.getApplication(), store);
+        checkout = new CheckoutService(dbHelper);
+    }
+
+    @After
+    public void tearDown() {
+        dbHelper.close();
+    }
+
+    @Test
+    public void checkout500Lines() {
+        long[] nanos = new long[ROUNDS];
+        for (int round = 0; round < WARMUP_ROUNDS + ROUNDS; round++) {
+            fillCart();
+            assertEquals(LINES, dbHelper.getTotalItemCount());
+            CheckoutService.Request request = new CheckoutService.Request("bench-" + round, "Bench", "1 Main St",
+                    "555", CheckoutService.ALL_ITEMS);
+
+            long start = System.nanoTime();
+            CheckoutService.Result result = checkout.checkout(request);
+            long elapsed = System.nanoTime() - start;
+
+            assertEquals(CheckoutService.Status.PLACED, result.status);
+            assertEquals(LINES, result.items.size());
+            assertTrue(dbHelper.isCartEmpty());
+            if (round >= WARMUP_ROUNDS) nanos[round - WARMUP_ROUNDS] = elapsed;
+        }
+        Arrays.sort(nanos);
+
+        long p50 = nanos[ROUNDS / 2];
+        System.out.println(String.format(Locale.US, "%-56s p50 %8.3f ms  max %8.3f ms",
+                "checkout, " + LINES + " lines", p50 / 1e6, nanos[ROUNDS - 1] / 1e6));
+        assertTrue("p50 " + p50 / 1e6 + " ms over budget", p50 < P50_BUDGET_NANOS);
+    }
+
+    private void fillCart() {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        SQLiteStatement insert = db.compileStatement(
+                "INSERT INTO cart(product_id, productName, productImage, price_cents, quantity) VALUES (?, ?, ?, ?, ?)");
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < LINES; i++) {
+                insert.bindLong(1, i + 1);
+                insert.bindString(2, "Product " + i);
+                insert.bindLong(3, R.drawable.ep);
+                insert.bindLong(4, 100 * (1 + i % 100) + 99);
+                insert.bindLong(5, 1 + i % 5);
+                insert.executeInsert();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            insert.close();
+        }
+        // Written behind DbHelper's back, so the in-memory copy has to be reread
+        store.invalidate();
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.mobstore;
+
+import android.content.Context;
+import android.database.Cursor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that a checkout charges what is in the cart when it commits, not what the purchase
+ * page was shown, and that repeating a checkout with the same key never places a second order.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class CheckoutServiceTest {
+
+    private DbHelper dbHelper;
+    private CheckoutService checkout;
+
+    @Before
+    public void setUp() {
+        Context context = RuntimeEnvironment.getApplication();
+        dbHelper = new DbHelper(context, new CartStore());
+        checkout = new CheckoutService(dbHelper);
+    }
+
+    @After
+    public void tearDown() {
+        dbHelper.close();
+    }
+
+    @Test
+    public void sameKeyTwice_placesOneOrder() {
+        dbHelper.insertCartItem(1, "Headphones", 0, Money.ofCents(1299), 2);
+        CheckoutService.Result first = checkout.checkout(request("tap", CheckoutService.ALL_ITEMS));
+        assertEquals(CheckoutService.Status.PLACED, first.status);
+
+        // Something new lands in the cart before the second tap is handled
+        dbHelper.insertCartItem(2, "Charger", 0, Money.ofCents(1000), 1);
+        CheckoutService.Result second = checkout.checkout(request("tap", CheckoutService.ALL_ITEMS));
+
+        assertEquals(CheckoutService.Status.ALREADY_PLACED, second.status);
+        assertEquals(first.orderId, second.orderId);
+        assertEquals(Money.ofCents(2598), second.total);
+        assertEquals(1, orderCount());
+        assertEquals(1, dbHelper.getProductQuantity(2));
+    }
+
+    @Test
+    public void allItems_chargesCartAsStoredAndEmptiesIt() {
+        dbHelper.insertCartItem(1, "Headphones", 0, Money.ofCents(1299), 2);
+        dbHelper.insertCartItem(2, "Charger", 0, Money.ofCents(1000), 1);
+        // The page showed one Charger; it was bumped to three before Confirm
+        dbHelper.addOrIncrement(new Product(2, "Charger", 0, Money.ofCents(1000)), 2);
+
+        CheckoutService.Result result = checkout.checkout(request("all", CheckoutService.ALL_ITEMS));
+
+        assertEquals(CheckoutService.Status.PLACED, result.status);
+        assertEquals(5, result.itemCount);
+        assertEquals(Money.ofCents(2 * 1299 + 3 * 1000), result.total);
+        assertTrue(dbHelper.isCartEmpty());
+        assertEquals(Money.ZERO, dbHelper.getTotalCartPrice());
+    }
+
+    @Test
+    public void singleItem_usesStoredPriceAndLeavesTheRest() {
+        dbHelper.insertCartItem(1, "Headphones", 0, Money.ofCents(1299), 2);
+        dbHelper.insertCartItem(2, "Charger", 0, Money.ofCents(1000), 1);
+        CartItem headphones = dbHelper.getCartItems().get(0);
+
+        CheckoutService.Result result = checkout.checkout(request("one", headphones.id));
+
+        assertEquals(CheckoutService.Status.PLACED, result.status);
+        assertEquals(1, result.items.size());
+        assertEquals(Money.ofCents(2598), result.total);
+        assertFalse(dbHelper.isProductInCart(1));
+        assertEquals(1, dbHelper.getProductQuantity(2));
+    }
+
+    @Test
+    public void goneItemOrEmptyCart_placesNothing() {
+        assertEquals(CheckoutService.Status.NOTHING_TO_BUY,
+                checkout.checkout(request("empty", CheckoutService.ALL_ITEMS)).status);
+
+        dbHelper.insertCartItem(1, "Headphones", 0, Money.ofCents(1299), 1);
+        long removedId = dbHelper.getCartItems().get(0).id;
+        dbHelper.clearCart();
+        dbHelper.insertCartItem(2, "Charger", 0, Money.ofCents(1000), 1);
+
+        assertEquals(CheckoutService.Status.NOTHING_TO_BUY, checkout.checkout(request("gone", removedId)).status);
+        assertEquals(0, orderCount());
+        assertEquals(1, dbHelper.getProductQuantity(2));
+    }
+
+    @Test
+    public void missingKey_isRejected() {
+        dbHelper.insertCartItem(1, "Headphones", 0, Money.ofCents(1299), 1);
+        assertEquals(CheckoutService.Status.FAILED, checkout.checkout(request(null, CheckoutService.ALL_ITEMS)).status);
+        assertFalse(dbHelper.isCartEmpty());
+    }
+
+    private static CheckoutService.Request request(String key, long cartRowId) {
+        return new CheckoutService.Request(key, "Ada", "1 Main St", "555", cartRowId);
+    }
+
+    private int orderCount() {
+        try (Cursor c = dbHelper.getReadableDatabase().rawQuery("SELECT COUNT(*) FROM orders", null)) {
+            c.moveToFirst();
+            return c.getInt(0);
+        }
+    }
+}
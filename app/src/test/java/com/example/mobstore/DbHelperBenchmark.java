@@ -0,0 +1,154 @@
+package com.example.mobstore;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.ParameterizedRobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Benchmarks for the DbHelper calls on the cart hot paths at 10, 1k and 100k rows.
+ * Excluded from the normal unit test run; use {@code ./gradlew :app:testDebugUnitTest -Pbenchmark}.
+ */
+@RunWith(ParameterizedRobolectricTestRunner.class)
+public class DbHelperBenchmark {
+
+    @ParameterizedRobolectricTestRunner.Parameters(name = "rows={0}")
+    public static Collection<Object[]> sizes() {
+        return Arrays.asList(new Object[][]{{10}, {1_000}, {100_000}});
+    }
+
+    private final int rows;
+    private final Random random = new Random(42);
+    private DbHelper dbHelper;
+
+    public DbHelperBenchmark(int rows) {
+        this.rows = rows;
+    }
+
+    @Before
+    public void setUp() {
+        dbHelper = new DbHelper(RuntimeEnvironment.getApplication(), new CartStore());
+        seed(rows);
+    }
+
+    @After
+    public void tearDown() {
+        dbHelper.close();
+    }
+
+    @Test
+    public void insertCartItem() throws Exception {
+        MicroBench.run(label("insertCartItem"), 200, 2_000,
+                i -> dbHelper.insertCartItem(rows + 1 + i, "New " + i, R.drawable.ep, Money.ofCents(999), 1));
+    }
+
+    @Test
+    public void updateQuantityById() throws Exception {
+        MicroBench.run(label("updateQuantityById"), 200, 2_000,
+                i -> dbHelper.updateQuantityById(1 + random.nextInt(rows), 1 + i % 9));
+    }
+
+    @Test
+    public void getTotalCartPrice() throws Exception {
+        MicroBench.run(label("getTotalCartPrice (warm)"), 1_000, 100_000,
+                i -> dbHelper.getTotalCartPrice());
+    }
+
+    @Test
+    public void getCartSummary() throws Exception {
+        int ops = Math.max(5, 20_000 / rows);
+        MicroBench.run(label("getCartSummary"), ops / 5 + 1, ops,
+                i -> assertFalse(dbHelper.getCartSummary().isEmpty()));
+    }
+
+    @Test
+    public void deleteMultipleItems() throws Exception {
+        // Each op deletes a fresh batch of ids, so the table shrinks as the run goes on
+        int batch = Math.max(1, rows / 100);
+        int ops = rows / batch / 2;
+        MicroBench.run(label("deleteMultipleItems x" + batch), ops / 5, ops, i -> {
+            int[] ids = new int[batch];
+            for (int j = 0; j < batch; j++) {
+                ids[j] = i * batch + j + 1;
+            }
+            dbHelper.deleteMultipleItems(ids);
+        });
+    }
+
+    @Test
+    public void addToCart_upsert() throws Exception {
+        MicroBench.run(label("add-to-cart (addOrIncrement)"), 200, 2_000,
+                i -> dbHelper.addOrIncrement(product(random.nextInt(rows)), 1));
+    }
+
+    @Test
+    public void addToCart_legacySequence() throws Exception {
+        // The AccessoryAdapter click path before addOrIncrement: exists check, full scan, update
+        int ops = Math.max(5, 50_000 / rows);
+        MicroBench.run(label("add-to-cart (legacy 4-step)"), ops / 5 + 1, ops, i -> {
+            Product p = product(random.nextInt(rows));
+            if (dbHelper.isProductInCart(p.id)) {
+                dbHelper.updateQuantity(p.id, legacyQty(p.name) + 1);
+            } else {
+                dbHelper.insertCartItem(p.id, p.name, p.image, p.price, 1);
+            }
+        });
+    }
+
+    private int legacyQty(String name) {
+        Cursor c = dbHelper.getAllCartItems();
+        try {
+            if (c != null && c.moveToFirst()) {
+                do {
+                    if (name.equals(c.getString(c.getColumnIndexOrThrow("productName"))))
+                        return c.getInt(c.getColumnIndexOrThrow("quantity"));
+                } while (c.moveToNext());
+            }
+            return 0;
+        } finally {
+            if (c != null) c.close();
+        }
+    }
+
+    private Product product(int index) {
+        return new Product(index + 1, "Product " + index, R.drawable.ep, Money.ofCents(100 * (1 + index % 100) + 99));
+    }
+
+    private String label(String name) {
+        return name + " @" + rows;
+    }
+
+    private void seed(int count) {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        SQLiteStatement insert = db.compileStatement(
+                "INSERT INTO cart(product_id, productName, productImage, price_cents, quantity) VALUES (?, ?, ?, ?, ?)");
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < count; i++) {
+                Product p = product(i);
+                insert.bindLong(1, p.id);
+                insert.bindString(2, p.name);
+                insert.bindLong(3, p.image);
+                insert.bindLong(4, p.price.cents());
+                insert.bindLong(5, 1 + i % 5);
+                insert.executeInsert();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            insert.close();
+        }
+    }
+}
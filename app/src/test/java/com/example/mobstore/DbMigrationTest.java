@@ -0,0 +1,207 @@
+package com.example.mobstore;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.File;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Builds the cart database as older releases left it and checks that opening DbHelper
+ * upgrades it to the current version without losing rows.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class DbMigrationTest {
+
+    private Context context;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+    }
+
+    @Test
+    public void everyOldVersion_reachesHeadSchema() {
+        List<String> headColumns = headColumns();
+        for (int version = 1; version < DbHelper.DB_VERSION; version++) {
+            context.deleteDatabase(DbHelper.DB_NAME);
+            SQLiteDatabase legacy = openLegacy();
+            if (version >= 9) {
+                legacy.execSQL("CREATE TABLE cart(id INTEGER PRIMARY KEY AUTOINCREMENT, productName TEXT," +
+                        " productImage INTEGER, price_cents INTEGER NOT NULL DEFAULT 0, quantity INTEGER DEFAULT 1," +
+                        " product_id INTEGER" + (version >= 13 ? ", user_id INTEGER NOT NULL DEFAULT 0" : "") + ")");
+                legacy.execSQL("INSERT INTO cart(productName, productImage, price_cents, quantity) VALUES ('Charger', 0, 1000, 2)");
+                ProductCatalog.createProductsTable(legacy);
+            } else {
+                legacy.execSQL("CREATE TABLE cart(id INTEGER PRIMARY KEY AUTOINCREMENT, productName TEXT," +
+                        " productImage INTEGER, price REAL, quantity INTEGER DEFAULT 1)");
+                legacy.execSQL("INSERT INTO cart(productName, productImage, price, quantity) VALUES ('Charger', 0, 10.0, 2)");
+                if (version >= 6) ProductCatalog.createProductsTableV6(legacy);
+                if (version >= 8) legacy.execSQL("ALTER TABLE cart ADD COLUMN product_id INTEGER");
+            }
+            if (version >= 7) ProductCatalog.createSearchIndex(legacy);
+            if (version >= 10) OrderStore.createTables(legacy);
+            if (version >= 11) OrderStore.addIdempotencyKey(legacy);
+            if (version >= 12) OrderOutbox.createTable(legacy);
+            legacy.setVersion(version);
+            legacy.close();
+
+            DbHelper helper = new DbHelper(context, new CartStore());
+            SQLiteDatabase db = helper.getWritableDatabase();
+            assertEquals("from v" + version, DbHelper.DB_VERSION, db.getVersion());
+            assertEquals("from v" + version, headColumns, Migration.columnsOf(db, "cart"));
+            assertTrue("from v" + version, Migration.columnsOf(db, "orders").contains("user_id"));
+            assertEquals("from v" + version, 2, quantityByName(helper, "Charger"));
+            helper.close();
+        }
+    }
+
+    @Test
+    public void v1WithoutQuantityColumn_keepsRowsAndGetsDefaults() {
+        SQLiteDatabase legacy = openLegacy();
+        legacy.execSQL("CREATE TABLE cart(id INTEGER PRIMARY KEY AUTOINCREMENT, productName TEXT," +
+                " productImage INTEGER, price REAL)");
+        legacy.execSQL("INSERT INTO cart(productName, productImage, price) VALUES ('Earbuds', 0, 6.88)");
+        legacy.execSQL("INSERT INTO cart(productName, productImage, price) VALUES ('SD Card', 0, 10.99)");
+        legacy.setVersion(1);
+        legacy.close();
+
+        DbHelper helper = new DbHelper(context, new CartStore());
+        assertEquals(2, helper.getTotalItemCount());
+        assertEquals(1, quantityByName(helper, "Earbuds"));
+        assertEquals(Money.ofCents(1787), helper.getTotalCartPrice());
+        helper.close();
+    }
+
+    @Test
+    public void v4Duplicates_areMergedBeforeUniqueIndex() {
+        SQLiteDatabase legacy = openLegacy();
+        legacy.execSQL("CREATE TABLE cart(id INTEGER PRIMARY KEY AUTOINCREMENT, productName TEXT," +
+                " productImage INTEGER, price REAL, quantity INTEGER DEFAULT 1)");
+        legacy.execSQL("INSERT INTO cart(productName, productImage, price, quantity) VALUES ('Headphones', 0, 12.99, 1)");
+        legacy.execSQL("INSERT INTO cart(productName, productImage, price, quantity) VALUES ('Headphones', 0, 12.99, 3)");
+        legacy.execSQL("INSERT INTO cart(productName, productImage, price, quantity) VALUES ('Tempered', 0, 2.99, 1)");
+        legacy.setVersion(4);
+        legacy.close();
+
+        DbHelper helper = new DbHelper(context, new CartStore());
+        assertEquals(2, helper.getTotalItemCount());
+        assertEquals(4, quantityByName(helper, "Headphones"));
+        helper.close();
+    }
+
+    @Test
+    public void v7CartRows_areLinkedToCatalogProducts() {
+        SQLiteDatabase legacy = openLegacy();
+        legacy.execSQL("CREATE TABLE cart(id INTEGER PRIMARY KEY AUTOINCREMENT, productName TEXT," +
+                " productImage INTEGER, price REAL, quantity INTEGER DEFAULT 1)");
+        legacy.execSQL("CREATE UNIQUE INDEX idx_cart_product_name ON cart(productName)");
+        ProductCatalog.createProductsTableV6(legacy);
+        legacy.execSQL("INSERT INTO products(id, name, image, price) VALUES (41, 'Power Bank', 'bank', 49.99)");
+        legacy.execSQL("INSERT INTO cart(productName, productImage, price, quantity) VALUES ('Power Bank', 0, 49.99, 2)");
+        legacy.execSQL("INSERT INTO cart(productName, productImage, price, quantity) VALUES ('Discontinued', 0, 1.00, 1)");
+        legacy.setVersion(7);
+        legacy.close();
+
+        DbHelper helper = new DbHelper(context, new CartStore());
+        assertEquals(2, helper.getProductQuantity(41));
+        assertEquals(3, helper.addOrIncrement(new Product(41, "Power Bank", 0, Money.ofCents(4999)), 1));
+        // A row with no matching product stays in the cart, unlinked
+        assertEquals(2, helper.getTotalItemCount());
+        assertEquals(1, quantityByName(helper, "Discontinued"));
+
+        try (Cursor c = helper.getReadableDatabase().rawQuery(
+                "SELECT name FROM sqlite_master WHERE type = 'index' AND tbl_name = 'cart'", null)) {
+            assertTrue(c.moveToFirst());
+            assertEquals("idx_cart_user_product", c.getString(0));
+            assertFalse(c.moveToNext());
+        }
+        helper.close();
+    }
+
+    @Test
+    public void orphanedCartRows_linkWhenCatalogIsImported() {
+        SQLiteDatabase legacy = openLegacy();
+        legacy.execSQL("CREATE TABLE cart(id INTEGER PRIMARY KEY AUTOINCREMENT, productName TEXT," +
+                " productImage INTEGER, price REAL, quantity INTEGER DEFAULT 1)");
+        legacy.execSQL("INSERT INTO cart(productName, productImage, price, quantity) VALUES ('Headphones', 0, 12.99, 4)");
+        legacy.setVersion(4);
+        legacy.close();
+
+        DbHelper helper = new DbHelper(context, new CartStore());
+        assertFalse(helper.isProductInCart(1));
+
+        new ProductCatalog(context, helper).ensureSeeded();
+        assertEquals(4, helper.getProductQuantity(1));
+        assertEquals(5, helper.addOrIncrement(new Product(1, "Headphones", 0, Money.ofCents(1299)), 1));
+        assertEquals(1, helper.getTotalItemCount());
+        helper.close();
+    }
+
+    @Test
+    public void v8Prices_moveToCentsAndKeepSearch() {
+        SQLiteDatabase legacy = openLegacy();
+        legacy.execSQL("CREATE TABLE cart(id INTEGER PRIMARY KEY AUTOINCREMENT, productName TEXT," +
+                " productImage INTEGER, price REAL, quantity INTEGER DEFAULT 1, product_id INTEGER)");
+        legacy.execSQL("CREATE UNIQUE INDEX idx_cart_product_id ON cart(product_id)");
+        ProductCatalog.createProductsTableV6(legacy);
+        ProductCatalog.createSearchIndex(legacy);
+        legacy.execSQL("INSERT INTO products(id, name, image, price) VALUES (3, 'Headphones', 'head', 12.99)");
+        // 0.1 + 0.2 is stored as 0.30000000000000004 and must still come out as 30 cents
+        legacy.execSQL("INSERT INTO cart(productName, productImage, price, quantity, product_id)" +
+                " VALUES ('Headphones', 0, 12.99, 3, 3), ('Sticker', 0, 0.1 + 0.2, 1, NULL)");
+        legacy.setVersion(8);
+        legacy.close();
+
+        DbHelper helper = new DbHelper(context, new CartStore());
+        assertEquals(Money.ofCents(3 * 1299 + 30), helper.getTotalCartPrice());
+        assertFalse(Migration.columnsOf(helper.getReadableDatabase(), "cart").contains("price"));
+        assertEquals(4, helper.addOrIncrement(new Product(3, "Headphones", 0, Money.ofCents(1299)), 1));
+
+        ProductCatalog catalog = new ProductCatalog(context, helper);
+        List<Product> found = catalog.search("head", 10, null);
+        assertEquals(1, found.size());
+        assertEquals(Money.ofCents(1299), found.get(0).price);
+        helper.close();
+    }
+
+    @Test
+    public void missingStep_failsInsteadOfDroppingData() {
+        try {
+            Migration.migrate(null, 0, DbHelper.DB_VERSION, DbHelper.MIGRATIONS);
+            fail("Expected missing migration to throw");
+        } catch (IllegalStateException expected) {
+            assertTrue(expected.getMessage().contains("version 0"));
+        }
+    }
+
+    private static int quantityByName(DbHelper helper, String name) {
+        for (CartItem item : helper.getCartItems()) {
+            if (name.equals(item.productName)) return item.quantity;
+        }
+        return 0;
+    }
+
+    private List<String> headColumns() {
+        context.deleteDatabase(DbHelper.DB_NAME);
+        DbHelper fresh = new DbHelper(context, new CartStore());
+        List<String> columns = Migration.columnsOf(fresh.getReadableDatabase(), "cart");
+        fresh.close();
+        return columns;
+    }
+
+    private SQLiteDatabase openLegacy() {
+        File file = context.getDatabasePath(DbHelper.DB_NAME);
+        file.getParentFile().mkdirs();
+        return SQLiteDatabase.openOrCreateDatabase(file, null);
+    }
+}
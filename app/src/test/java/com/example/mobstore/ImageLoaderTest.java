@@ -0,0 +1,105 @@
+package com.example.mobstore;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.util.DisplayMetrics;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.GraphicsMode;
+
+import static org.junit.Assert.*;
+
+/**
+ * Decodes the real drawables the way each screen asks for them and checks the bitmap
+ * memory stays within what the target sizes need, not what the source files hold, and that
+ * a bitmap that may still be on screen is never decoded into.
+ */
+@RunWith(RobolectricTestRunner.class)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class ImageLoaderTest {
+
+    /** Thumbnail size item_accessory and item_cart lay out, in pixels at the test density. */
+    private static final int THUMB_PX = 120;
+    private static final int[] PRODUCT_IMAGES = {
+            R.drawable.head, R.drawable.charger, R.drawable.tm, R.drawable.bank,
+            R.drawable.ep, R.drawable.er, R.drawable.sd
+    };
+
+    private Resources resources;
+    private int screenWidth;
+    private int screenHeight;
+
+    @Before
+    public void setUp() {
+        resources = RuntimeEnvironment.getApplication().getResources();
+        DisplayMetrics metrics = resources.getDisplayMetrics();
+        screenWidth = metrics.widthPixels;
+        screenHeight = metrics.heightPixels;
+    }
+
+    @Test
+    public void backgrounds_decodeAtMostTwiceScreenSize() {
+        ImageLoader loader = new ImageLoader(resources, 64 * 1024 * 1024);
+        for (int resId : new int[]{R.drawable.back6, R.drawable.back3, R.drawable.back5}) {
+            Bitmap bitmap = loader.decode(resId, screenWidth, screenHeight);
+            assertNotNull(bitmap);
+            assertWithinBudget(resources.getResourceEntryName(resId), bitmap, screenWidth, screenHeight);
+        }
+    }
+
+    @Test
+    public void accessoryScreen_decodedBytesPerScreen() {
+        ImageLoader loader = new ImageLoader(resources, 64 * 1024 * 1024);
+        loader.decode(R.drawable.back6, screenWidth, screenHeight);
+        for (int resId : PRODUCT_IMAGES) {
+            Bitmap bitmap = loader.decode(resId, THUMB_PX, THUMB_PX);
+            assertNotNull(bitmap);
+            assertWithinBudget(resources.getResourceEntryName(resId), bitmap, THUMB_PX, THUMB_PX);
+        }
+
+        // Upper bound: one background and every thumbnail at twice their target sides
+        long budget = 4L * (4L * screenWidth * screenHeight) + PRODUCT_IMAGES.length * 4L * (4L * THUMB_PX * THUMB_PX);
+        System.out.println("Decoded bytes for home screen: " + loader.getDecodedBytes() + " (budget " + budget + ")");
+        assertTrue("decoded " + loader.getDecodedBytes() + " > " + budget, loader.getDecodedBytes() <= budget);
+    }
+
+    @Test
+    public void missingResource_decodesToNull() {
+        ImageLoader loader = new ImageLoader(resources, 1024);
+        assertNull(loader.decode(0, THUMB_PX, THUMB_PX));
+        assertEquals(0, loader.getDecodedBytes());
+    }
+
+    @Test
+    public void evictedBitmap_isNeverDecodedInto() {
+        // Room for one thumbnail, so caching the second evicts the first while a view may still show it
+        int thumbBytes = new ImageLoader(resources, 1).decode(R.drawable.head, THUMB_PX, THUMB_PX).getAllocationByteCount();
+        ImageLoader loader = new ImageLoader(resources, thumbBytes);
+        Bitmap shown = loader.decodeAndCache("a", R.drawable.head, THUMB_PX, THUMB_PX);
+        int pixel = shown.getPixel(shown.getWidth() / 2, shown.getHeight() / 2);
+        loader.decodeAndCache("b", R.drawable.charger, THUMB_PX, THUMB_PX);
+        Bitmap next = loader.decodeAndCache("c", R.drawable.head, THUMB_PX, THUMB_PX);
+
+        assertNotSame(shown, next);
+        assertFalse(shown.isRecycled());
+        assertEquals(pixel, shown.getPixel(shown.getWidth() / 2, shown.getHeight() / 2));
+    }
+
+    @Test
+    public void inSampleSize_neverDropsBelowRequestedSize() {
+        assertEquals(1, ImageLoader.calculateInSampleSize(100, 100, 100, 100));
+        assertEquals(2, ImageLoader.calculateInSampleSize(400, 400, 150, 150));
+        assertEquals(4, ImageLoader.calculateInSampleSize(4000, 3000, 720, 720));
+        assertEquals(1, ImageLoader.calculateInSampleSize(4000, 3000, 0, 720));
+    }
+
+    // inSampleSize stops doubling once either side would drop below the target
+    private static void assertWithinBudget(String name, Bitmap bitmap, int reqWidth, int reqHeight) {
+        assertTrue(name + " decoded to " + bitmap.getWidth() + "x" + bitmap.getHeight(),
+                bitmap.getWidth() < 2 * reqWidth || bitmap.getHeight() < 2 * reqHeight);
+    }
+}
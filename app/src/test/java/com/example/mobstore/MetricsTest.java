@@ -0,0 +1,127 @@
+package com.example.mobstore;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the histogram buckets and percentiles, that concurrent recording loses nothing, and
+ * that cart and checkout calls show up in the dump.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class MetricsTest {
+
+    private DbHelper dbHelper;
+
+    @Before
+    public void setUp() {
+        RuntimeEnvironment.getApplication().deleteDatabase(DbHelper.DB_NAME);
+        dbHelper = new DbHelper(RuntimeEnvironment.getApplication(), new CartStore());
+    }
+
+    @After
+    public void tearDown() {
+        dbHelper.close();
+    }
+
+    @Test
+    public void buckets_coverEveryDurationInOrder() {
+        Random random = new Random(1);
+        for (int i = 0; i < 100_000; i++) {
+            long nanos = i < 5_000 ? i : random.nextLong() >>> 1;
+            int bucket = Metrics.Timer.bucketOf(nanos);
+            assertTrue(bucket >= 0 && bucket < Metrics.Timer.BUCKETS);
+            assertTrue(nanos <= Metrics.Timer.upperBound(bucket));
+            if (bucket > 0) assertTrue(nanos > Metrics.Timer.upperBound(bucket - 1));
+        }
+        assertEquals(Metrics.Timer.BUCKETS - 1, Metrics.Timer.bucketOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void percentiles_areWithinOneBucket() {
+        Metrics.Timer timer = new Metrics.Timer("test");
+        assertEquals(0, timer.percentile(0.5));
+        for (long micros = 1; micros <= 1000; micros++) {
+            timer.record(micros * 1000);
+        }
+        assertEquals(1000, timer.count());
+        assertEquals(1_000_000, timer.maxNanos());
+        assertWithin(500_000, timer.percentile(0.5));
+        assertWithin(990_000, timer.percentile(0.99));
+        assertEquals(1_000_000, timer.percentile(1.0));
+    }
+
+    @Test
+    public void concurrentRecording_losesNothing() throws InterruptedException {
+        Metrics.Timer timer = new Metrics.Timer("test");
+        Metrics.Counter counter = new Metrics.Counter("test");
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            threads.add(new Thread(() -> {
+                for (int i = 1; i <= 10_000; i++) {
+                    timer.record(i);
+                    counter.increment();
+                }
+            }));
+        }
+        for (Thread thread : threads) thread.start();
+        for (Thread thread : threads) thread.join();
+
+        assertEquals(40_000, timer.count());
+        assertEquals(4 * (10_000L * 10_001 / 2), timer.totalNanos());
+        assertEquals(10_000, timer.maxNanos());
+        assertEquals(40_000, counter.get());
+    }
+
+    @Test
+    public void cartAndCheckout_areTimed() {
+        Metrics.Timer add = Metrics.timer("db.addOrIncrement");
+        Metrics.Timer checkout = Metrics.timer("checkout.total");
+        long adds = add.count();
+        long checkouts = checkout.count();
+        long placed = Metrics.counter("checkout.placed").get();
+
+        dbHelper.addOrIncrement(new Product(1, "Headphones", 0, Money.ofCents(1299)), 1);
+        new CheckoutService(dbHelper).checkout(new CheckoutService.Request(
+                "metrics-1", "Ada", "1 Main St", "555", CheckoutService.ALL_ITEMS));
+
+        assertEquals(adds + 1, add.count());
+        assertEquals(checkouts + 1, checkout.count());
+        assertEquals(placed + 1, Metrics.counter("checkout.placed").get());
+        StringWriter dump = new StringWriter();
+        Metrics.dump(new PrintWriter(dump));
+        assertTrue(dump.toString(), dump.toString().contains("db.addOrIncrement"));
+        assertTrue(dump.toString(), dump.toString().contains("checkout.4.writeOrder"));
+    }
+
+    @Test
+    public void earlyExitCheckout_recordsTheStepsItRan() {
+        Metrics.Timer readCart = Metrics.timer("checkout.3.readCart");
+        Metrics.Timer writeOrder = Metrics.timer("checkout.4.writeOrder");
+        long reads = readCart.count();
+        long writes = writeOrder.count();
+
+        CheckoutService.Result result = new CheckoutService(dbHelper).checkout(new CheckoutService.Request(
+                "metrics-empty", "Ada", "1 Main St", "555", CheckoutService.ALL_ITEMS));
+
+        assertEquals(CheckoutService.Status.NOTHING_TO_BUY, result.status);
+        assertEquals(reads + 1, readCart.count());
+        assertEquals(writes, writeOrder.count());
+    }
+
+    // Buckets are a quarter of a power of two wide
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(actual + " not near " + expected, actual >= expected && actual <= expected * 5 / 4);
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.mobstore;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+
+/**
+ * Minimal benchmark loop for the JVM test suites: warms up, then reports time and
+ * bytes allocated per operation on the calling thread.
+ */
+final class MicroBench {
+
+    interface Op {
+        void run(int iteration) throws Exception;
+    }
+
+    static final class Result {
+        final String name;
+        final double nanosPerOp;
+        final double bytesPerOp;
+
+        Result(String name, double nanosPerOp, double bytesPerOp) {
+            this.name = name;
+            this.nanosPerOp = nanosPerOp;
+            this.bytesPerOp = bytesPerOp;
+        }
+
+        double opsPerSecond() {
+            return 1_000_000_000.0 / nanosPerOp;
+        }
+
+        double allocatedMegabytesPerSecond() {
+            return bytesPerOp * opsPerSecond() / (1024 * 1024);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%-56s %12.1f ns/op %14.1f ops/s %12.1f B/op %10.2f MB/s",
+                    name, nanosPerOp, opsPerSecond(), bytesPerOp, allocatedMegabytesPerSecond());
+        }
+    }
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private MicroBench() {
+    }
+
+    static Result run(String name, int warmupOps, int measuredOps, Op op) throws Exception {
+        for (int i = 0; i < warmupOps; i++) {
+            op.run(i);
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long bytesBefore = THREADS.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        for (int i = 0; i < measuredOps; i++) {
+            op.run(warmupOps + i);
+        }
+        long elapsed = System.nanoTime() - start;
+        long bytes = THREADS.getThreadAllocatedBytes(threadId) - bytesBefore;
+
+        Result result = new Result(name, (double) elapsed / measuredOps, (double) bytes / measuredOps);
+        System.out.println(result);
+        return result;
+    }
+}
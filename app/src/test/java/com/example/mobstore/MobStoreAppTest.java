@@ -0,0 +1,53 @@
+package com.example.mobstore;
+
+import android.database.sqlite.SQLiteDatabase;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.android.controller.ActivityController;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.*;
+
+/**
+ * Recreates the database-backed screens many times and checks they keep sharing the
+ * application's helpers and connections rather than opening new ones.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(application = MobStoreApp.class)
+public class MobStoreAppTest {
+
+    @Test
+    public void repeatedRecreation_reusesOneConnectionPerDatabase() {
+        MobStoreApp app = (MobStoreApp) RuntimeEnvironment.getApplication();
+        DbHelper cartDb = app.getCartDb();
+        UserDbHelper userDb = app.getUserDb();
+        SQLiteDatabase cartConnection = cartDb.getWritableDatabase();
+        SQLiteDatabase userConnection = userDb.getWritableDatabase();
+
+        for (int i = 0; i < 25; i++) {
+            recreate(MyCart.class);
+            recreate(PurchasePage.class);
+            recreate(login.class);
+            recreate(register.class);
+        }
+
+        assertSame(cartDb, app.getCartDb());
+        assertSame(userDb, app.getUserDb());
+        assertSame(app.getCartRepository(), CartRepository.getInstance(app));
+        assertSame(cartConnection, cartDb.getWritableDatabase());
+        assertSame(userConnection, userDb.getWritableDatabase());
+        assertTrue(cartConnection.isOpen());
+        assertTrue(userConnection.isOpen());
+    }
+
+    private static void recreate(Class<? extends android.app.Activity> activity) {
+        ActivityController<? extends android.app.Activity> controller =
+                Robolectric.buildActivity(activity).setup();
+        controller.recreate();
+        controller.pause().stop().destroy();
+    }
+}
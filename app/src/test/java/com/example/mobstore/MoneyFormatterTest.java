@@ -0,0 +1,153 @@
+package com.example.mobstore;
+
+import android.content.Context;
+import android.view.ContextThemeWrapper;
+import android.widget.FrameLayout;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks Money arithmetic and formatting, and counts the bytes the cart and purchase summary
+ * bind paths allocate per row against the String.format binds they replaced.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class MoneyFormatterTest {
+
+    private static final int ROWS = 200;
+
+    private Context context;
+    private FrameLayout parent;
+
+    @Before
+    public void setUp() {
+        context = new ContextThemeWrapper(RuntimeEnvironment.getApplication(), R.style.Theme_MobStore);
+        parent = new FrameLayout(context);
+    }
+
+    @Test
+    public void format_matchesDecimalText() {
+        long[] samples = {0, 1, 9, 10, 99, 100, 101, 1299, 10_000, 123_456_789, -1, -99, -100, -1299,
+                Long.MAX_VALUE, Long.MIN_VALUE};
+        char[] buffer = new char[MoneyFormatter.MAX_CHARS];
+        for (long cents : samples) {
+            String expected = expected(cents);
+            assertEquals(expected, new String(buffer, 0, MoneyFormatter.format(cents, buffer, 0)));
+            assertEquals(expected, MoneyFormatter.append(new StringBuilder(), cents).toString());
+        }
+        for (long cents = -2_000; cents <= 2_000; cents++) {
+            assertEquals(expected(cents), MoneyFormatter.toString(cents));
+        }
+    }
+
+    @Test
+    public void format_writesAtOffset() {
+        char[] buffer = "Total: ??????".toCharArray();
+        int end = MoneyFormatter.format(4376, buffer, 7);
+        assertEquals("Total: $43.76", new String(buffer, 0, end));
+    }
+
+    @Test
+    public void money_roundsAndMultipliesExactly() {
+        assertEquals(Money.ofCents(1300), Money.parse("12.995"));
+        assertEquals(Money.ofCents(1299), Money.parse(" 12.99 "));
+        assertEquals(Money.ofCents(30), Money.fromDouble(0.1 + 0.2));
+        assertEquals(Money.ofCents(101), Money.fromDouble(1.005));
+        assertEquals(Money.ofCents(3897), Money.ofCents(1299).times(3));
+        assertEquals(Money.ofCents(1787), Money.ofCents(688).plus(Money.ofCents(1099)));
+        assertSame(Money.ZERO, Money.ofCents(0));
+        assertEquals("$0.30", Money.fromDouble(0.1 + 0.2).toString());
+        try {
+            Money.ofCents(Long.MAX_VALUE / 2).times(3);
+            fail("Expected overflow to throw");
+        } catch (ArithmeticException expected) {
+            // Wrapping around would silently turn a total negative
+        }
+    }
+
+    @Test
+    public void format_allocatesNothing() throws Exception {
+        char[] buffer = new char[MoneyFormatter.MAX_CHARS];
+        StringBuilder sb = new StringBuilder(64);
+        MicroBench.Result chars = MicroBench.run("MoneyFormatter.format (char[])", 20_000, 200_000,
+                i -> MoneyFormatter.format(i * 37L, buffer, 0));
+        MicroBench.Result builder = MicroBench.run("MoneyFormatter.append (StringBuilder)", 20_000, 200_000,
+                i -> {
+                    sb.setLength(0);
+                    MoneyFormatter.append(sb, i * 37L);
+                });
+        assertTrue(chars.bytesPerOp + " B/op", chars.bytesPerOp < 1);
+        assertTrue(builder.bytesPerOp + " B/op", builder.bytesPerOp < 1);
+    }
+
+    @Test
+    public void cartBind_allocatesLessThanStringFormat() throws Exception {
+        List<CartItem> items = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            items.add(new CartItem(i + 1, i + 1, "Product " + i, 0, Money.ofCents(100 * (1 + i % 100) + 99), 1 + i % 5));
+        }
+        CartAdapter adapter = new CartAdapter(context, null);
+        adapter.submitList(items);
+        CartAdapter.ViewHolder holder = adapter.onCreateViewHolder(parent, 0);
+        ImageLoader imageLoader = ImageLoader.getInstance(context);
+
+        MicroBench.Result current = MicroBench.run("CartAdapter bind (MoneyFormatter)", 10 * ROWS, 50 * ROWS,
+                i -> adapter.onBindViewHolder(holder, i % ROWS));
+        MicroBench.Result legacy = MicroBench.run("CartAdapter bind (String.format)", 10 * ROWS, 50 * ROWS, i -> {
+            // CartAdapter.onBindViewHolder before prices moved to cents
+            CartItem item = items.get(i % ROWS);
+            holder.name.setText(item.productName != null ? item.productName : "Unknown");
+            holder.price.setText(String.format("$%.2f", item.price.cents() / 100.0));
+            holder.quantity.setText("Qty: " + item.quantity);
+            imageLoader.load(holder.image, item.productImage);
+        });
+
+        adapter.onBindViewHolder(holder, 0);
+        assertEquals("$1.99", holder.price.getText().toString());
+        assertTrue(current.bytesPerOp + " vs " + legacy.bytesPerOp, current.bytesPerOp < legacy.bytesPerOp);
+    }
+
+    @Test
+    public void purchaseSummaryBind_allocatesLessThanStringFormat() throws Exception {
+        List<CartItem> items = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            items.add(new CartItem(i + 1, i + 1, "Product " + i, 0, Money.ofCents(100 * (1 + i % 100) + 99), 1 + i % 5));
+        }
+        PurchaseSummaryAdapter adapter = new PurchaseSummaryAdapter(context);
+        adapter.submitList(items);
+        PurchaseSummaryAdapter.ViewHolder holder = adapter.onCreateViewHolder(parent, 0);
+        ImageLoader imageLoader = ImageLoader.getInstance(context);
+
+        MicroBench.Result current = MicroBench.run("PurchaseSummaryAdapter bind (MoneyFormatter)", 10 * ROWS, 50 * ROWS,
+                i -> adapter.onBindViewHolder(holder, i % ROWS));
+        MicroBench.Result legacy = MicroBench.run("PurchaseSummaryAdapter bind (String.format)", 10 * ROWS, 50 * ROWS, i -> {
+            // PurchaseSummaryAdapter.onBindViewHolder before prices moved to cents
+            CartItem item = items.get(i % ROWS);
+            double price = item.price.cents() / 100.0;
+            holder.name.setText(item.productName);
+            holder.price.setText(String.format("$%.2f", price));
+            holder.quantity.setText("x " + item.quantity);
+            holder.subtotal.setText(String.format("$%.2f", price * item.quantity));
+            imageLoader.load(holder.image, item.productImage);
+        });
+
+        adapter.onBindViewHolder(holder, 1);
+        assertEquals("$2.99", holder.price.getText().toString());
+        assertEquals("$5.98", holder.subtotal.getText().toString());
+        assertTrue(current.bytesPerOp + " vs " + legacy.bytesPerOp, current.bytesPerOp < legacy.bytesPerOp);
+    }
+
+    private static String expected(long cents) {
+        String amount = BigDecimal.valueOf(cents, 2).toPlainString();
+        return amount.startsWith("-") ? "-$" + amount.substring(1) : "$" + amount;
+    }
+}
@@ -0,0 +1,187 @@
+package com.example.mobstore;
+
+import android.content.Context;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Syncs placed orders to an in-process fake backend and checks batching, backoff after a
+ * failed send, and that orders survive a crash between the backend accepting them and the
+ * outbox recording it, without being applied twice.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class OrderOutboxTest {
+
+    private static final long NOW = 1_700_000_000_000L;
+
+    private Context context;
+    private DbHelper dbHelper;
+    private OrderOutbox outbox;
+    private FakeSink sink;
+    private int checkouts;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        dbHelper = new DbHelper(context, new CartStore());
+        outbox = new OrderOutbox(dbHelper);
+        sink = new FakeSink();
+    }
+
+    @After
+    public void tearDown() {
+        dbHelper.close();
+    }
+
+    @Test
+    public void queuedOrders_goOutInBatches() throws Exception {
+        for (int i = 1; i <= 120; i++) {
+            placeOrder(i, 100L * i, 1 + i % 3);
+        }
+        assertEquals(120, outbox.pendingCount());
+
+        OrderOutbox.SyncResult result = outbox.sync(sink, NOW);
+
+        assertEquals(120, result.sent);
+        assertEquals(0, result.nextAttemptAt);
+        assertEquals(0, outbox.pendingCount());
+        assertEquals(3, sink.batches);
+        assertEquals(OrderOutbox.BATCH_SIZE, sink.batchSizes.get(0).intValue());
+        assertEquals(20, sink.batchSizes.get(2).intValue());
+        assertEquals(120, sink.accepted.size());
+        assertEquals(0, sink.duplicates);
+
+        JSONObject first = sink.accepted.get(1L);
+        assertEquals("order-1", first.getString("idempotency_key"));
+        assertEquals(200, first.getLong("total_cents"));
+        JSONArray items = first.getJSONArray("items");
+        assertEquals(1, items.length());
+        assertEquals(1, items.getJSONObject(0).getLong("product_id"));
+        assertEquals(2, items.getJSONObject(0).getInt("quantity"));
+    }
+
+    @Test
+    public void failedSend_backsOffExponentially() {
+        placeOrder(1, 1299, 1);
+        sink.failuresLeft = 2;
+
+        OrderOutbox.SyncResult failed = outbox.sync(sink, NOW);
+        assertEquals(0, failed.sent);
+        assertEquals(NOW + OrderOutbox.BASE_BACKOFF_MS, failed.nextAttemptAt);
+
+        // Nothing is due yet, so the backend is not asked again
+        int calls = sink.calls;
+        assertEquals(0, outbox.sync(sink, NOW + 1_000).sent);
+        assertEquals(calls, sink.calls);
+
+        long retry = NOW + OrderOutbox.BASE_BACKOFF_MS;
+        assertEquals(retry + 2 * OrderOutbox.BASE_BACKOFF_MS, outbox.sync(sink, retry).nextAttemptAt);
+
+        OrderOutbox.SyncResult sent = outbox.sync(sink, retry + 2 * OrderOutbox.BASE_BACKOFF_MS);
+        assertEquals(1, sent.sent);
+        assertEquals(0, outbox.pendingCount());
+        assertEquals(1, sink.accepted.size());
+    }
+
+    @Test
+    public void crashAfterBackendAccepted_resendsWithoutDuplicating() {
+        for (int i = 1; i <= 60; i++) {
+            placeOrder(i, 500, 1);
+        }
+        // The backend takes the first batch, then the process dies before the outbox hears back
+        sink.acceptThenFail = true;
+        assertEquals(0, outbox.sync(sink, NOW).sent);
+        assertEquals(OrderOutbox.BATCH_SIZE, sink.accepted.size());
+        dbHelper.close();
+
+        DbHelper reopened = new DbHelper(context, new CartStore());
+        try {
+            OrderOutbox recovered = new OrderOutbox(reopened);
+            assertEquals(60, recovered.pendingCount());
+            sink.acceptThenFail = false;
+
+            OrderOutbox.SyncResult result = recovered.sync(sink, NOW + OrderOutbox.BASE_BACKOFF_MS);
+
+            assertEquals(60, result.sent);
+            assertEquals(0, recovered.pendingCount());
+            assertEquals(60, sink.accepted.size());
+            assertEquals(OrderOutbox.BATCH_SIZE, sink.duplicates);
+        } finally {
+            reopened.close();
+        }
+    }
+
+    private void placeOrder(long productId, long priceCents, int quantity) {
+        dbHelper.insertCartItem(productId, "Product " + productId, 0, Money.ofCents(priceCents), quantity);
+        CheckoutService.Result result = new CheckoutService(dbHelper).checkout(new CheckoutService.Request(
+                "order-" + (++checkouts), "Ada", "1 Main St", "555", CheckoutService.ALL_ITEMS));
+        assertEquals(CheckoutService.Status.PLACED, result.status);
+    }
+
+    /** A backend that applies each order id once, the way the real one must. */
+    private static class FakeSink implements OrderSink {
+        final Map<Long, JSONObject> accepted = new LinkedHashMap<>();
+        final List<Integer> batchSizes = new ArrayList<>();
+        int calls;
+        int batches;
+        int duplicates;
+        int failuresLeft;
+        boolean acceptThenFail;
+
+        @Override
+        public void send(Batch batch) throws IOException {
+            calls++;
+            if (failuresLeft > 0) {
+                failuresLeft--;
+                throw new IOException("backend unavailable");
+            }
+            try {
+                JSONArray orders = new JSONObject(gunzip(batch.body)).getJSONArray("orders");
+                assertEquals(batch.orderIds.length, orders.length());
+                for (int i = 0; i < orders.length(); i++) {
+                    JSONObject order = orders.getJSONObject(i);
+                    if (accepted.put(order.getLong("id"), order) != null) duplicates++;
+                }
+            } catch (JSONException e) {
+                throw new AssertionError(e);
+            }
+            batches++;
+            batchSizes.add(batch.orderIds.length);
+            if (acceptThenFail) {
+                throw new IOException("connection reset after the backend replied");
+            }
+        }
+
+        private static String gunzip(byte[] body) throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+                byte[] buffer = new byte[4096];
+                for (int n; (n = in.read(buffer)) != -1; ) {
+                    out.write(buffer, 0, n);
+                }
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
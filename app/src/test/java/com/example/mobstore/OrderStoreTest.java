@@ -0,0 +1,146 @@
+package com.example.mobstore;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+
+import androidx.paging.PagingSource;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+
+import static org.junit.Assert.*;
+
+/**
+ * Places orders through CheckoutService and checks that the order and the cart deletion commit
+ * or roll back together, that history is append-only, and that it pages newest first.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class OrderStoreTest {
+
+    private static final int PAGE_SIZE = 20;
+
+    private DbHelper dbHelper;
+    private OrderStore orders;
+    private CheckoutService checkout;
+    private int checkouts;
+
+    @Before
+    public void setUp() {
+        Context context = RuntimeEnvironment.getApplication();
+        dbHelper = new DbHelper(context, new CartStore());
+        orders = new OrderStore(dbHelper);
+        checkout = new CheckoutService(dbHelper);
+    }
+
+    @After
+    public void tearDown() {
+        dbHelper.close();
+    }
+
+    @Test
+    public void placeOrder_savesLinesAndEmptiesCart() {
+        dbHelper.insertCartItem(1, "Headphones", 0, Money.ofCents(1299), 2);
+        dbHelper.insertCartItem(2, "Charger", 0, Money.ofCents(1000), 1);
+
+        long orderId = placeOrder().orderId;
+        assertTrue(orderId > 0);
+        assertTrue(dbHelper.isCartEmpty());
+        assertEquals(Money.ZERO, dbHelper.getTotalCartPrice());
+
+        Order order = orders.loadOlder(Long.MAX_VALUE, PAGE_SIZE).get(0);
+        assertEquals(orderId, order.id);
+        assertEquals(3, order.itemCount);
+        assertEquals(Money.ofCents(3598), order.total);
+        assertEquals("Headphones, Charger", order.itemsSummary);
+        try (Cursor c = dbHelper.getReadableDatabase().rawQuery(
+                "SELECT product_id, price_cents, quantity FROM order_items WHERE order_id = ? ORDER BY id",
+                new String[]{String.valueOf(orderId)})) {
+            assertEquals(2, c.getCount());
+            c.moveToFirst();
+            assertEquals(1, c.getLong(0));
+            assertEquals(1299, c.getLong(1));
+            assertEquals(2, c.getInt(2));
+        }
+    }
+
+    @Test
+    public void failedOrder_leavesCartUntouched() {
+        dbHelper.insertCartItem(1, "Headphones", 0, Money.ofCents(1299), 2);
+        dbHelper.insertCartItem(2, "Broken", 0, Money.ofCents(500), 1);
+        // The second order line fails after the order row is written; nothing may be kept
+        dbHelper.getWritableDatabase().execSQL("CREATE TEMP TRIGGER fail_line BEFORE INSERT ON order_items" +
+                " WHEN NEW.product_id = 2 BEGIN SELECT RAISE(ABORT, 'disk full'); END");
+
+        CheckoutService.Result result = placeOrder();
+        assertEquals(CheckoutService.Status.FAILED, result.status);
+        assertEquals(-1, result.orderId);
+        assertEquals(2, dbHelper.getTotalItemCount());
+        assertEquals(2, dbHelper.getProductQuantity(1));
+        assertTrue(orders.loadOlder(Long.MAX_VALUE, PAGE_SIZE).isEmpty());
+    }
+
+    @Test
+    public void orders_areAppendOnly() {
+        dbHelper.insertCartItem(1, "Headphones", 0, Money.ofCents(1299), 1);
+        placeOrder();
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        for (String sql : new String[]{
+                "UPDATE orders SET total_cents = 0",
+                "DELETE FROM orders",
+                "UPDATE order_items SET quantity = 9",
+                "DELETE FROM order_items"}) {
+            try {
+                db.execSQL(sql);
+                fail("Expected " + sql + " to be rejected");
+            } catch (SQLiteException expected) {
+                assertTrue(expected.getMessage(), expected.getMessage().contains("append-only"));
+            }
+        }
+    }
+
+    @Test
+    public void history_pagesNewestFirst() throws Exception {
+        for (int i = 1; i <= 45; i++) {
+            dbHelper.insertCartItem(i, "Product " + i, 0, Money.ofCents(100L * i), 1);
+            placeOrder();
+        }
+        PagingSource<Long, Order> source = orders.newPagingSource();
+
+        PagingSource.LoadResult.Page<Long, Order> first = (PagingSource.LoadResult.Page<Long, Order>)
+                source.loadFuture(new PagingSource.LoadParams.Refresh<>(null, PAGE_SIZE, false)).get();
+        assertNull(first.getPrevKey());
+        assertEquals(45, first.getData().get(0).id);
+        assertEquals(26, first.getData().get(PAGE_SIZE - 1).id);
+
+        PagingSource.LoadResult.Page<Long, Order> second = (PagingSource.LoadResult.Page<Long, Order>)
+                source.loadFuture(new PagingSource.LoadParams.Append<>(first.getNextKey(), PAGE_SIZE, false)).get();
+        assertEquals(25, second.getData().get(0).id);
+
+        PagingSource.LoadResult.Page<Long, Order> last = (PagingSource.LoadResult.Page<Long, Order>)
+                source.loadFuture(new PagingSource.LoadParams.Append<>(second.getNextKey(), PAGE_SIZE, false)).get();
+        assertEquals(5, last.getData().size());
+        assertNull(last.getNextKey());
+
+        // Refreshing mid-history can page back towards the newest orders
+        PagingSource.LoadResult.Page<Long, Order> middle = (PagingSource.LoadResult.Page<Long, Order>)
+                source.loadFuture(new PagingSource.LoadParams.Refresh<>(26L, PAGE_SIZE, false)).get();
+        assertEquals(25, middle.getData().get(0).id);
+        PagingSource.LoadResult.Page<Long, Order> newer = (PagingSource.LoadResult.Page<Long, Order>)
+                source.loadFuture(new PagingSource.LoadParams.Prepend<>(middle.getPrevKey(), PAGE_SIZE, false)).get();
+        assertEquals(PAGE_SIZE, newer.getData().size());
+        assertEquals(45, newer.getData().get(0).id);
+        assertEquals(26, newer.getData().get(PAGE_SIZE - 1).id);
+    }
+
+    private CheckoutService.Result placeOrder() {
+        return checkout.checkout(new CheckoutService.Request("order-" + (++checkouts), "Ada", "1 Main St", "555",
+                CheckoutService.ALL_ITEMS));
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.mobstore;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * Picks the PBKDF2 cost for this machine the way the app does on a device, then checks that
+ * a login hash at that cost really fits the budget. The chosen iteration count is printed so
+ * it can be compared across devices. Excluded from the normal unit test run; use
+ * {@code ./gradlew :app:testDebugUnitTest -Pbenchmark}.
+ */
+public class PasswordHashBenchmark {
+
+    private static final int ROUNDS = 9;
+    private static final int WARMUP_ROUNDS = 3;
+    /** Calibration extrapolates from a short probe, so allow some slack over the budget. */
+    private static final double BUDGET_SLACK = 1.25;
+
+    @Test
+    public void calibratedCost_fitsLoginBudget() {
+        byte[] salt = PasswordHasher.newSalt();
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            PasswordHasher.hash("warmup", salt, PasswordHasher.MIN_ITERATIONS);
+        }
+        int iterations = PasswordHasher.calibrate(UserRepository.HASH_BUDGET_MS);
+        byte[] stored = PasswordHasher.hash("s3cret", salt, iterations);
+
+        long[] nanos = new long[ROUNDS];
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            assertTrue(PasswordHasher.verify("s3cret", salt, iterations, stored));
+            nanos[round] = System.nanoTime() - start;
+        }
+        Arrays.sort(nanos);
+
+        long p50 = nanos[ROUNDS / 2];
+        System.out.println(String.format(Locale.US, "%-56s p50 %8.3f ms  max %8.3f ms",
+                "pbkdf2 verify, " + iterations + " iterations", p50 / 1e6, nanos[ROUNDS - 1] / 1e6));
+        if (iterations == PasswordHasher.MIN_ITERATIONS) {
+            // Too slow for the budget; the floor wins over latency
+            return;
+        }
+        assertTrue("p50 " + p50 / 1e6 + " ms over budget",
+                p50 < UserRepository.HASH_BUDGET_MS * 1_000_000L * BUDGET_SLACK);
+    }
+}
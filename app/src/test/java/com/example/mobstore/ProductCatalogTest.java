@@ -0,0 +1,174 @@
+package com.example.mobstore;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.paging.PagingSource;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Pages through the product catalog the way the home screen's Pager does and checks that
+ * the pages line up and that memory held stays flat across a 100k-product catalog. Also
+ * covers the full-text search index and its triggers.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class ProductCatalogTest {
+
+    private static final int CATALOG_SIZE = 100_000;
+    private static final int PAGE_SIZE = 30;
+    /** Retained heap allowed to grow while paging the whole catalog. */
+    private static final long MAX_HEAP_GROWTH = 8L * 1024 * 1024;
+
+    private DbHelper dbHelper;
+    private ProductCatalog catalog;
+
+    @Before
+    public void setUp() {
+        Context context = RuntimeEnvironment.getApplication();
+        dbHelper = new DbHelper(context, new CartStore());
+        catalog = new ProductCatalog(context, dbHelper);
+    }
+
+    @After
+    public void tearDown() {
+        dbHelper.close();
+    }
+
+    @Test
+    public void firstLoad_importsBundledCatalogOnce() throws Exception {
+        List<Product> first = refresh(null).getData();
+        assertEquals(8, first.size());
+        assertEquals("Headphones", first.get(0).name);
+        assertEquals(R.drawable.head, first.get(0).image);
+
+        catalog.ensureSeeded();
+        assertEquals(8, refresh(null).getData().size());
+    }
+
+    @Test
+    public void pagingThroughLargeCatalog_keepsHeapFlat() throws Exception {
+        generateCatalog(CATALOG_SIZE);
+        PagingSource<Long, Product> source = catalog.newPagingSource();
+
+        PagingSource.LoadResult.Page<Long, Product> page = refresh(null);
+        assertNull(page.getPrevKey());
+        long baseline = usedHeapAfterGc();
+        long peak = baseline;
+        long lastId = 0;
+        int seen = 0;
+        int pages = 0;
+        while (true) {
+            for (Product product : page.getData()) {
+                assertTrue(product.id > lastId);
+                lastId = product.id;
+            }
+            seen += page.getData().size();
+            if (page.getNextKey() == null) break;
+            page = (PagingSource.LoadResult.Page<Long, Product>) source.loadFuture(
+                    new PagingSource.LoadParams.Append<>(page.getNextKey(), PAGE_SIZE, false)).get();
+            if (++pages % 500 == 0) {
+                peak = Math.max(peak, usedHeapAfterGc());
+            }
+        }
+
+        assertEquals(CATALOG_SIZE, seen);
+        System.out.println("Retained heap growth over " + pages + " pages: " + (peak - baseline) + " bytes");
+        assertTrue("heap grew by " + (peak - baseline), peak - baseline < MAX_HEAP_GROWTH);
+    }
+
+    @Test
+    public void refreshInTheMiddle_prependsThePrecedingPage() throws Exception {
+        generateCatalog(CATALOG_SIZE);
+        PagingSource<Long, Product> source = catalog.newPagingSource();
+
+        PagingSource.LoadResult.Page<Long, Product> middle = refresh(50_000L);
+        assertEquals(50_001, middle.getData().get(0).id);
+        assertEquals(Long.valueOf(50_001), middle.getPrevKey());
+
+        PagingSource.LoadResult.Page<Long, Product> before = (PagingSource.LoadResult.Page<Long, Product>)
+                source.loadFuture(new PagingSource.LoadParams.Prepend<>(middle.getPrevKey(), PAGE_SIZE, false)).get();
+        assertEquals(PAGE_SIZE, before.getData().size());
+        assertEquals(50_000 - PAGE_SIZE + 1, before.getData().get(0).id);
+        assertEquals(50_000, before.getData().get(PAGE_SIZE - 1).id);
+    }
+
+    @Test
+    public void lastPage_hasNoNextKey() throws Exception {
+        generateCatalog(PAGE_SIZE + 5);
+        PagingSource.LoadResult.Page<Long, Product> page = refresh((long) PAGE_SIZE);
+        assertEquals(5, page.getData().size());
+        assertNull(page.getNextKey());
+    }
+
+    @Test
+    public void search_matchesWordPrefixesAcrossColumns() {
+        catalog.ensureSeeded();
+        assertEquals(names("Headphones"), names(catalog.search("head", 10, null)));
+        assertEquals(names("Charger", "Power Bank"), names(catalog.search("pow", 10, null)));
+        assertEquals(names("Earbuds"), names(catalog.search("audio micro", 10, null)));
+        assertTrue(catalog.search("zzz", 10, null).isEmpty());
+    }
+
+    @Test
+    public void search_followsProductEdits() {
+        catalog.ensureSeeded();
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        db.execSQL("UPDATE products SET name = 'Studio Monitor' WHERE name = 'Headphones'");
+        assertTrue(catalog.search("headphones", 10, null).isEmpty());
+        assertEquals(names("Studio Monitor"), names(catalog.search("studio", 10, null)));
+
+        db.execSQL("DELETE FROM products WHERE name = 'Studio Monitor'");
+        assertTrue(catalog.search("studio", 10, null).isEmpty());
+    }
+
+    @Test
+    public void toMatchQuery_stripsFtsSyntax() {
+        assertEquals("usb* c* char*", ProductCatalog.toMatchQuery("USB-C \"char"));
+        // Lower-casing also defuses the OR / AND / NOT / NEAR operators
+        assertEquals("a* or* b*", ProductCatalog.toMatchQuery("a OR-b*"));
+        assertNull(ProductCatalog.toMatchQuery(" \"*- "));
+    }
+
+    private static List<String> names(String... names) {
+        return Arrays.asList(names);
+    }
+
+    private static List<String> names(List<Product> products) {
+        List<String> names = new ArrayList<>();
+        for (Product product : products) names.add(product.name);
+        return names;
+    }
+
+    private PagingSource.LoadResult.Page<Long, Product> refresh(Long key) throws Exception {
+        return (PagingSource.LoadResult.Page<Long, Product>) catalog.newPagingSource()
+                .loadFuture(new PagingSource.LoadParams.Refresh<>(key, PAGE_SIZE, false)).get();
+    }
+
+    private void generateCatalog(int size) {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        db.execSQL("WITH RECURSIVE seq(n) AS (SELECT 1 UNION ALL SELECT n + 1 FROM seq WHERE n < " + size + ")" +
+                " INSERT INTO " + ProductCatalog.TABLE_PRODUCTS + "(id, name, image, price_cents, category, description)" +
+                " SELECT n, 'Product ' || n, CASE n % 3 WHEN 0 THEN 'head' WHEN 1 THEN 'charger' ELSE 'sd' END," +
+                " n % 10000, 'Category ' || (n % 20), 'Generated product ' || n FROM seq");
+    }
+
+    private static long usedHeapAfterGc() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.mobstore;
+
+import android.content.Context;
+import android.os.Looper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Drives ProductSearch with simulated typing on Robolectric's paused main looper and checks
+ * that only the last query of a burst runs and that stale results never reach the screen.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class ProductSearchTest {
+
+    private DbHelper dbHelper;
+    private ProductCatalog catalog;
+    private final List<Runnable> queued = new ArrayList<>();
+    private final List<String> delivered = new ArrayList<>();
+    private int cleared;
+
+    private final ProductSearch.Listener listener = new ProductSearch.Listener() {
+        @Override
+        public void onResults(String query, List<Product> results) {
+            delivered.add(query + "=" + results.size());
+        }
+
+        @Override
+        public void onCleared() {
+            cleared++;
+        }
+    };
+
+    @Before
+    public void setUp() {
+        Context context = RuntimeEnvironment.getApplication();
+        dbHelper = new DbHelper(context, new CartStore());
+        catalog = new ProductCatalog(context, dbHelper);
+        catalog.ensureSeeded();
+    }
+
+    @After
+    public void tearDown() {
+        dbHelper.close();
+    }
+
+    @Test
+    public void burstOfKeystrokes_runsOnlyTheLastQuery() {
+        ProductSearch search = new ProductSearch(catalog, Runnable::run, listener);
+        for (String typed : new String[]{"h", "he", "hea", "head"}) {
+            search.onQueryChanged(typed);
+            idle(ProductSearch.DEBOUNCE_MS / 3);
+        }
+        assertTrue(delivered.isEmpty());
+
+        idle(ProductSearch.DEBOUNCE_MS);
+        assertEquals(Collections.singletonList("head=1"), delivered);
+        assertTrue(search.isActive());
+    }
+
+    @Test
+    public void queryTypedWhileSearching_dropsTheStaleResult() {
+        ProductSearch search = new ProductSearch(catalog, queued::add, listener);
+        search.onQueryChanged("head");
+        idle(ProductSearch.DEBOUNCE_MS);
+        assertEquals(1, queued.size());
+
+        // The user keeps typing before the first query has run
+        search.onQueryChanged("pow");
+        queued.remove(0).run();
+        idle(ProductSearch.DEBOUNCE_MS);
+        queued.remove(0).run();
+        idle(0);
+
+        assertEquals(Collections.singletonList("pow=2"), delivered);
+    }
+
+    @Test
+    public void shortQuery_restoresTheCatalog() {
+        ProductSearch search = new ProductSearch(catalog, Runnable::run, listener);
+        search.onQueryChanged("e");
+        idle(ProductSearch.DEBOUNCE_MS);
+        assertTrue(delivered.isEmpty());
+        assertEquals(0, cleared);
+
+        search.onQueryChanged("ear");
+        idle(ProductSearch.DEBOUNCE_MS);
+        search.onQueryChanged("");
+        assertEquals(1, cleared);
+        assertFalse(search.isActive());
+    }
+
+    private static void idle(long millis) {
+        shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(millis));
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.mobstore;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Type-ahead query latency against a 100k-product full-text index. Replays every prefix a
+ * user would type for random words, and for two-word queries, and reports percentiles.
+ * Excluded from the normal unit test run; use {@code ./gradlew :app:testDebugUnitTest -Pbenchmark}.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class SearchBenchmark {
+
+    private static final int PRODUCTS = 100_000;
+    private static final int QUERIES = 5_000;
+    private static final long P99_BUDGET_NANOS = 5_000_000;
+
+    private static final String[] ADJECTIVES = {
+            "wireless", "braided", "compact", "rugged", "magnetic", "premium", "slim", "fast",
+            "noise", "sport", "travel", "studio", "classic", "pro", "mini", "ultra"
+    };
+    private static final String[] NOUNS = {
+            "charger", "headphones", "earbuds", "cable", "case", "stand", "adapter", "speaker",
+            "mount", "battery", "hub", "screen", "stylus", "keyboard", "mouse", "tracker"
+    };
+    private static final String[] CATEGORIES = {"Audio", "Power", "Cases", "Storage", "Screen Protection", "Wearables"};
+
+    private DbHelper dbHelper;
+    private ProductCatalog catalog;
+
+    @Before
+    public void setUp() {
+        Context context = RuntimeEnvironment.getApplication();
+        dbHelper = new DbHelper(context, new CartStore());
+        catalog = new ProductCatalog(context, dbHelper);
+        seed();
+    }
+
+    @After
+    public void tearDown() {
+        dbHelper.close();
+    }
+
+    @Test
+    public void typeAheadLatency() {
+        Random random = new Random(7);
+        String[] queries = new String[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            String word = random.nextBoolean()
+                    ? ADJECTIVES[random.nextInt(ADJECTIVES.length)] : NOUNS[random.nextInt(NOUNS.length)];
+            String typed = word.substring(0, Math.min(word.length(), ProductSearch.MIN_QUERY_LENGTH + random.nextInt(6)));
+            queries[i] = random.nextInt(4) == 0 ? NOUNS[random.nextInt(NOUNS.length)] + " " + typed : typed;
+        }
+
+        for (int i = 0; i < 500; i++) {
+            catalog.search(queries[i], ProductSearch.MAX_RESULTS, null);
+        }
+        long[] nanos = new long[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            long start = System.nanoTime();
+            catalog.search(queries[i], ProductSearch.MAX_RESULTS, null);
+            nanos[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(nanos);
+
+        long p50 = nanos[QUERIES / 2];
+        long p99 = nanos[QUERIES * 99 / 100];
+        System.out.println(String.format(Locale.US, "%-56s p50 %8.3f ms  p99 %8.3f ms  max %8.3f ms",
+                "search, " + PRODUCTS + " products", p50 / 1e6, p99 / 1e6, nanos[QUERIES - 1] / 1e6));
+        assertTrue("p99 " + p99 / 1e6 + " ms over budget", p99 < P99_BUDGET_NANOS);
+    }
+
+    private void seed() {
+        Random random = new Random(42);
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (int i = 1; i <= PRODUCTS; i++) {
+                String adjective = ADJECTIVES[random.nextInt(ADJECTIVES.length)];
+                String noun = NOUNS[random.nextInt(NOUNS.length)];
+                db.execSQL("INSERT INTO " + ProductCatalog.TABLE_PRODUCTS +
+                                "(id, name, image, price_cents, category, description) VALUES (?, ?, ?, ?, ?, ?)",
+                        new Object[]{i, adjective + " " + noun + " " + i, "head", 100 + random.nextInt(9999),
+                                CATEGORIES[random.nextInt(CATEGORIES.length)],
+                                "A " + adjective + " " + noun + " for everyday use"});
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+}
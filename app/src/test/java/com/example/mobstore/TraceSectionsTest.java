@@ -0,0 +1,180 @@
+package com.example.mobstore;
+
+import android.content.Context;
+import android.os.Looper;
+import android.view.ContextThemeWrapper;
+import android.widget.FrameLayout;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Records every trace section the cart, bind and checkout paths emit and checks that each one
+ * is ended on the thread that began it, including on early returns and failed checkouts.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class TraceSectionsTest {
+
+    private final Recorder recorder = new Recorder();
+    private Context context;
+    private DbHelper dbHelper;
+
+    @Before
+    public void setUp() {
+        AppTrace.setSink(recorder);
+        context = new ContextThemeWrapper(RuntimeEnvironment.getApplication(), R.style.Theme_MobStore);
+        RuntimeEnvironment.getApplication().deleteDatabase(DbHelper.DB_NAME);
+        dbHelper = new DbHelper(RuntimeEnvironment.getApplication(), new CartStore());
+    }
+
+    @After
+    public void tearDown() {
+        dbHelper.close();
+        AppTrace.setSink(AppTrace.ANDROIDX);
+    }
+
+    @Test
+    public void cartQueries_closeEverySection() {
+        Product headphones = new Product(1, "Headphones", 0, Money.ofCents(1299));
+        dbHelper.addOrIncrement(headphones, 2);
+        dbHelper.insertCartItem(2, "Charger", 0, Money.ofCents(1000), 1);
+        int rowId = (int) dbHelper.getCartItems().get(0).id;
+        dbHelper.incrementQuantity(rowId);
+        dbHelper.decrementQuantity(rowId);
+        dbHelper.getTotalCartPrice();
+        dbHelper.getCartSummary();
+        // Early returns and rows that are not there
+        dbHelper.deleteByIds(new long[0]);
+        dbHelper.deleteCartItemById(-1);
+        dbHelper.updateQuantityById(-1, 3);
+        dbHelper.clearCart();
+
+        recorder.assertBalanced();
+        assertTrue(recorder.seen.toString(), recorder.seen.contains("db.addOrIncrement"));
+        assertTrue(recorder.seen.toString(), recorder.seen.contains("db.deleteByIds"));
+    }
+
+    @Test
+    public void checkout_closesItsSectionOnEveryOutcome() {
+        CheckoutService checkout = new CheckoutService(dbHelper);
+        dbHelper.insertCartItem(1, "Headphones", 0, Money.ofCents(1299), 1);
+
+        assertEquals(CheckoutService.Status.PLACED, checkout.checkout(request("a")).status);
+        assertEquals(CheckoutService.Status.NOTHING_TO_BUY, checkout.checkout(request("b")).status);
+        assertEquals(CheckoutService.Status.FAILED, checkout.checkout(request("")).status);
+
+        recorder.assertBalanced();
+        assertTrue(recorder.seen.toString(), recorder.seen.contains("checkout.total"));
+    }
+
+    @Test
+    public void binds_closeTheirSections() {
+        List<CartItem> items = new ArrayList<>();
+        items.add(new CartItem(1, 1, "Headphones", 0, Money.ofCents(1299), 2));
+        items.add(new CartItem(2, 2, null, 0, Money.ofCents(1000), 1));
+        FrameLayout parent = new FrameLayout(context);
+
+        CartAdapter cart = new CartAdapter(context, null);
+        cart.submitList(items);
+        CartAdapter.ViewHolder cartHolder = cart.onCreateViewHolder(parent, 0);
+        PurchaseSummaryAdapter summary = new PurchaseSummaryAdapter(context);
+        summary.submitList(items);
+        PurchaseSummaryAdapter.ViewHolder summaryHolder = summary.onCreateViewHolder(parent, 0);
+        for (int i = 0; i < items.size(); i++) {
+            cart.onBindViewHolder(cartHolder, i);
+            summary.onBindViewHolder(summaryHolder, i);
+        }
+
+        recorder.assertBalanced();
+        assertTrue(recorder.seen.toString(), recorder.seen.contains("bind.cart"));
+        assertTrue(recorder.seen.toString(), recorder.seen.contains("bind.purchaseSummary"));
+    }
+
+    @Test
+    public void loadOnWorkerThread_closesItsSectionsThere() {
+        dbHelper.insertCartItem(1, "Headphones", 0, Money.ofCents(1299), 1);
+        CartRepository repository = new CartRepository(dbHelper);
+        AtomicBoolean loaded = new AtomicBoolean();
+
+        int cookie = AppTrace.beginAsync("MyCart.loadCart");
+        repository.loadCartLines(snapshot -> {
+            loaded.set(true);
+            AppTrace.endAsync("MyCart.loadCart", cookie);
+        });
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!loaded.get() && System.currentTimeMillis() < deadline) {
+            shadowOf(Looper.getMainLooper()).idle();
+            Thread.yield();
+        }
+
+        assertTrue(loaded.get());
+        recorder.assertBalanced();
+        assertTrue(recorder.seen.toString(), recorder.seen.contains("db.getCartItems"));
+    }
+
+    private static CheckoutService.Request request(String key) {
+        return new CheckoutService.Request(key, "Ada", "1 Main St", "555", CheckoutService.ALL_ITEMS);
+    }
+
+    /** Keeps a stack of open sections per thread and the open async sections by cookie. */
+    private static final class Recorder implements AppTrace.Sink {
+
+        final Set<String> seen = ConcurrentHashMap.newKeySet();
+        private final Map<Thread, Deque<String>> open = new ConcurrentHashMap<>();
+        private final Map<Integer, String> openAsync = new ConcurrentHashMap<>();
+        private final List<String> errors = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public void begin(String name) {
+            seen.add(name);
+            open.computeIfAbsent(Thread.currentThread(), t -> new ArrayDeque<>()).push(name);
+        }
+
+        @Override
+        public void end() {
+            Deque<String> stack = open.get(Thread.currentThread());
+            if (stack == null || stack.isEmpty()) {
+                errors.add("end() with no open section on " + Thread.currentThread().getName());
+            } else {
+                stack.pop();
+            }
+        }
+
+        @Override
+        public void beginAsync(String name, int cookie) {
+            seen.add(name);
+            if (openAsync.put(cookie, name) != null) errors.add("cookie " + cookie + " reused");
+        }
+
+        @Override
+        public void endAsync(String name, int cookie) {
+            String begun = openAsync.remove(cookie);
+            if (!name.equals(begun)) errors.add("endAsync(" + name + ", " + cookie + ") began as " + begun);
+        }
+
+        void assertBalanced() {
+            assertEquals(Collections.emptyList(), errors);
+            for (Map.Entry<Thread, Deque<String>> entry : open.entrySet()) {
+                assertTrue(entry.getKey().getName() + " left open " + entry.getValue(), entry.getValue().isEmpty());
+            }
+            assertTrue("async left open " + openAsync, openAsync.isEmpty());
+        }
+    }
+}
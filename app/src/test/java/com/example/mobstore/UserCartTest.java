@@ -0,0 +1,171 @@
+package com.example.mobstore;
+
+import android.database.Cursor;
+import android.os.Looper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Checks that each user only ever sees and buys from their own cart and order history, that
+ * logging in folds the guest cart into the account's, and that the scoped queries still seek
+ * on an index.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class UserCartTest {
+
+    private static final long ADA = 7;
+    private static final long BOB = 8;
+    private static final Product HEADPHONES = new Product(1, "Headphones", 0, Money.ofCents(1299));
+    private static final Product CHARGER = new Product(2, "Charger", 0, Money.ofCents(1000));
+
+    private DbHelper dbHelper;
+    private final CartLines lines = new CartLines();
+
+    @Before
+    public void setUp() {
+        RuntimeEnvironment.getApplication().deleteDatabase(DbHelper.DB_NAME);
+        dbHelper = new DbHelper(RuntimeEnvironment.getApplication(), new CartStore());
+        dbHelper.changes().addListener(lines::apply);
+    }
+
+    @After
+    public void tearDown() {
+        dbHelper.close();
+    }
+
+    @Test
+    public void carts_areSeparatePerUser() {
+        dbHelper.addOrIncrement(HEADPHONES, 1);
+
+        assertTrue(dbHelper.switchUser(ADA, false));
+        assertTrue(dbHelper.isCartEmpty());
+        assertEquals(0, dbHelper.getTotalItemCount());
+        assertEquals(2, dbHelper.addOrIncrement(HEADPHONES, 2));
+        long adaRow = dbHelper.getCartItems().get(0).id;
+
+        assertTrue(dbHelper.switchUser(DbHelper.GUEST, false));
+        assertEquals(1, dbHelper.getProductQuantity(HEADPHONES.id));
+        // Another user's row cannot be reached by id either
+        assertFalse(dbHelper.updateQuantityById((int) adaRow, 9));
+        assertFalse(dbHelper.deleteCartItemById((int) adaRow));
+        assertEquals(0, dbHelper.deleteByIds(new long[]{adaRow}));
+        dbHelper.clearCart();
+
+        assertTrue(dbHelper.switchUser(ADA, false));
+        assertEquals(2, dbHelper.getProductQuantity(HEADPHONES.id));
+    }
+
+    @Test
+    public void login_mergesGuestCartIntoAccount() {
+        dbHelper.setUser(ADA);
+        dbHelper.insertCartItem(HEADPHONES.id, HEADPHONES.name, 0, Money.ofCents(999), 2);
+        dbHelper.setUser(DbHelper.GUEST);
+        dbHelper.addOrIncrement(HEADPHONES, 1);
+        dbHelper.addOrIncrement(CHARGER, 1);
+        loadLines();
+
+        assertTrue(dbHelper.switchUser(ADA, true));
+
+        List<CartItem> cart = dbHelper.getCartItems();
+        assertEquals(2, cart.size());
+        // The account's row keeps its own price and gains the guest quantity
+        assertEquals(3, dbHelper.getProductQuantity(HEADPHONES.id));
+        assertEquals(Money.ofCents(3 * 999 + 1000), dbHelper.getTotalCartPrice());
+        try (Cursor c = dbHelper.getReadableDatabase().rawQuery(
+                "SELECT COUNT(*) FROM cart WHERE user_id = ?", new String[]{String.valueOf(DbHelper.GUEST)})) {
+            c.moveToFirst();
+            assertEquals(0, c.getInt(0));
+        }
+
+        // Screens following change events end up with the account's cart
+        shadowOf(Looper.getMainLooper()).idle();
+        assertEquals(2, lines.size());
+        assertEquals(4, lines.totalQuantity());
+    }
+
+    @Test
+    public void checkout_buysOnlyTheCurrentUsersCart() {
+        dbHelper.addOrIncrement(CHARGER, 1);
+        dbHelper.switchUser(ADA, false);
+        dbHelper.addOrIncrement(HEADPHONES, 2);
+
+        CheckoutService.Result result = new CheckoutService(dbHelper).checkout(new CheckoutService.Request(
+                "ada-1", "Ada", "1 Main St", "555", CheckoutService.ALL_ITEMS));
+        assertEquals(CheckoutService.Status.PLACED, result.status);
+        assertEquals(1, result.items.size());
+        assertEquals(HEADPHONES.id, result.items.get(0).productId);
+
+        dbHelper.switchUser(DbHelper.GUEST, false);
+        assertEquals(1, dbHelper.getProductQuantity(CHARGER.id));
+    }
+
+    @Test
+    public void orderHistory_listsOnlyTheCurrentUsersOrders() {
+        OrderStore orders = new OrderStore(dbHelper);
+        dbHelper.switchUser(ADA, false);
+        dbHelper.addOrIncrement(HEADPHONES, 1);
+        long adaOrder = new CheckoutService(dbHelper).checkout(new CheckoutService.Request(
+                "ada-1", "Ada", "1 Main St", "555", CheckoutService.ALL_ITEMS)).orderId;
+
+        dbHelper.switchUser(BOB, false);
+        dbHelper.addOrIncrement(CHARGER, 1);
+        long bobOrder = new CheckoutService(dbHelper).checkout(new CheckoutService.Request(
+                "bob-1", "Bob", "2 High St", "556", CheckoutService.ALL_ITEMS)).orderId;
+
+        List<Order> bobs = orders.loadOlder(Long.MAX_VALUE, 20);
+        assertEquals(1, bobs.size());
+        assertEquals(bobOrder, bobs.get(0).id);
+        assertTrue(orders.loadNewer(0, 20).stream().noneMatch(order -> order.id == adaOrder));
+
+        dbHelper.switchUser(ADA, false);
+        assertEquals(adaOrder, orders.loadOlder(Long.MAX_VALUE, 20).get(0).id);
+        assertEquals(1, orders.loadNewer(0, 20).size());
+        dbHelper.switchUser(DbHelper.GUEST, false);
+        assertTrue(orders.loadOlder(Long.MAX_VALUE, 20).isEmpty());
+    }
+
+    @Test
+    public void scopedQueries_seekOnIndexes() {
+        String[] queries = {
+                "SELECT quantity FROM cart WHERE user_id = 1 AND product_id = 2",
+                "SELECT COUNT(*) FROM cart WHERE user_id = 1",
+                "SELECT IFNULL(SUM(price_cents * quantity), 0) FROM cart WHERE user_id = 1",
+                "SELECT quantity FROM cart WHERE id = 3 AND user_id = 1",
+                "DELETE FROM cart WHERE user_id = 1 AND id IN (3, 4)",
+                "SELECT id FROM orders WHERE user_id = 1 AND id < 9 ORDER BY id DESC LIMIT 20",
+                "SELECT id FROM orders WHERE user_id = 1 AND id > 9 ORDER BY id LIMIT 20",
+        };
+        for (String query : queries) {
+            String plan = queryPlan(query);
+            assertFalse(query + " -> " + plan, plan.contains("SCAN"));
+            assertTrue(query + " -> " + plan, plan.contains("idx_cart_user_product") || plan.contains("PRIMARY KEY")
+                    || plan.contains("idx_orders_user"));
+        }
+    }
+
+    private void loadLines() {
+        lines.reset(new CartLines.Snapshot(dbHelper.changes().version(), dbHelper.getCartItems()));
+    }
+
+    private String queryPlan(String sql) {
+        List<String> steps = new ArrayList<>();
+        try (Cursor c = dbHelper.getReadableDatabase().rawQuery("EXPLAIN QUERY PLAN " + sql, null)) {
+            int detail = c.getColumnIndexOrThrow("detail");
+            while (c.moveToNext()) {
+                steps.add(c.getString(detail));
+            }
+        }
+        return String.join("; ", steps);
+    }
+}
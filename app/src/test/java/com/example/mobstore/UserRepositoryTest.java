@@ -0,0 +1,220 @@
+package com.example.mobstore;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Looper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.crypto.spec.SecretKeySpec;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Registers and logs in through UserRepository and checks that passwords are only ever
+ * stored salted and hashed, that old plain-text accounts are migrated, and that saved
+ * sessions are rejected once tampered with, expired or issued for an old password.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class UserRepositoryTest {
+
+    // Far below any real cost, to keep the tests fast; the benchmark covers the real one
+    private static final int TEST_ITERATIONS = 1_000;
+
+    private interface Call<T> {
+        void start(UserRepository.Callback<T> callback);
+    }
+
+    private Context context;
+    private SharedPreferences prefs;
+    private UserDbHelper userDb;
+    private SessionTokens tokens;
+    private final List<Long> sessionEvents = new ArrayList<>();
+    private final UserRepository.SessionListener sessionListener = new UserRepository.SessionListener() {
+        @Override
+        public void onLogin(long userId) {
+            sessionEvents.add(userId);
+        }
+
+        @Override
+        public void onSessionEnded() {
+            sessionEvents.add(DbHelper.GUEST);
+        }
+    };
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        prefs = context.getSharedPreferences(UserRepository.PREFS, Context.MODE_PRIVATE);
+        prefs.edit().clear().putInt(UserRepository.PREF_ITERATIONS, TEST_ITERATIONS).commit();
+        context.deleteDatabase(UserDbHelper.DATABASE_NAME);
+        userDb = new UserDbHelper(context);
+        tokens = new SessionTokens(() -> new SecretKeySpec(new byte[32], "HmacSHA256"));
+    }
+
+    @After
+    public void tearDown() {
+        userDb.close();
+    }
+
+    @Test
+    public void pbkdf2_matchesReferenceVector() {
+        // PBKDF2-HMAC-SHA256, P = "password", S = "salt", c = 4096, dkLen = 32
+        byte[] salt = "salt".getBytes();
+        assertEquals("c5e478d59288c841aa530db6845c4c8d962893a001ce4e11a4963873aa98134a",
+                hex(PasswordHasher.pbkdf2("password", salt, 4096, 32)));
+    }
+
+    @Test
+    public void register_thenLogin() {
+        UserRepository users = newRepository();
+        assertEquals(Boolean.TRUE, await(cb -> users.register("Ada", "Lovelace", "ada", "s3cret", cb)));
+        assertEquals(Boolean.FALSE, await(cb -> users.register("Ada", "Other", "ada", "other", cb)));
+
+        UserDbHelper.Credentials stored = userDb.findCredentials("ada");
+        assertEquals(PasswordHasher.HASH_BYTES, stored.hash.length);
+        assertEquals(PasswordHasher.SALT_BYTES, stored.salt.length);
+        assertEquals(TEST_ITERATIONS, stored.iterations);
+
+        assertNull(await(cb -> users.login("ada", "wrong", cb)));
+        assertNull(await(cb -> users.login("nobody", "s3cret", cb)));
+        assertNull(prefs.getString(UserRepository.PREF_SESSION, null));
+
+        SessionTokens.Session session = await(cb -> users.login("ada", "s3cret", cb));
+        assertNotNull(session);
+        assertEquals(stored.userId, session.userId);
+        assertEquals("ada", prefs.getString(UserRepository.PREF_USERNAME, null));
+        assertEquals(stored.userId, prefs.getLong(UserRepository.PREF_USER_ID, DbHelper.GUEST));
+        assertNotNull(prefs.getString(UserRepository.PREF_SESSION, null));
+        // Only the successful login hands the cart over
+        assertEquals(Arrays.asList(stored.userId), sessionEvents);
+    }
+
+    @Test
+    public void login_rehashesAtTheDeviceCost() {
+        assertEquals(Boolean.TRUE, await(cb -> newRepository().register("Ada", "Lovelace", "ada", "s3cret", cb)));
+        byte[] oldSalt = userDb.findCredentials("ada").salt;
+
+        // A later calibration settled on a higher cost
+        prefs.edit().putInt(UserRepository.PREF_ITERATIONS, 2 * TEST_ITERATIONS).commit();
+        UserRepository users = newRepository();
+        assertNotNull(await(cb -> users.login("ada", "s3cret", cb)));
+
+        UserDbHelper.Credentials stored = userDb.findCredentials("ada");
+        assertEquals(2 * TEST_ITERATIONS, stored.iterations);
+        assertFalse(Arrays.equals(oldSalt, stored.salt));
+        assertNotNull(await(cb -> users.login("ada", "s3cret", cb)));
+    }
+
+    @Test
+    public void savedSession_restoresWithoutPassword() {
+        UserRepository users = newRepository();
+        await(cb -> users.register("Ada", "Lovelace", "ada", "s3cret", cb));
+        await(cb -> users.login("ada", "s3cret", cb));
+
+        SessionTokens.Session restored = await(cb -> newRepository().restoreSession(cb));
+        assertNotNull(restored);
+        assertEquals("ada", restored.username);
+    }
+
+    @Test
+    public void tamperedSession_isRejectedAndForgotten() {
+        UserRepository users = newRepository();
+        await(cb -> users.register("Ada", "Lovelace", "ada", "s3cret", cb));
+        await(cb -> users.register("Bob", "Builder", "bob", "hunter2", cb));
+        await(cb -> users.login("bob", "hunter2", cb));
+
+        // Swap in ada's id while keeping bob's signature
+        String token = prefs.getString(UserRepository.PREF_SESSION, null);
+        String[] parts = token.split("\\.");
+        parts[1] = String.valueOf(userDb.findCredentials("ada").userId);
+        prefs.edit().putString(UserRepository.PREF_SESSION, String.join(".", parts)).commit();
+
+        assertNull(await(cb -> newRepository().restoreSession(cb)));
+        assertNull(prefs.getString(UserRepository.PREF_SESSION, null));
+        assertNull(prefs.getString(UserRepository.PREF_USERNAME, null));
+        assertFalse(prefs.contains(UserRepository.PREF_USER_ID));
+        assertEquals(DbHelper.GUEST, (long) sessionEvents.get(sessionEvents.size() - 1));
+    }
+
+    @Test
+    public void expiredOrStaleSession_isRejected() {
+        UserRepository users = newRepository();
+        await(cb -> users.register("Ada", "Lovelace", "ada", "s3cret", cb));
+        UserDbHelper.Credentials stored = userDb.findCredentials("ada");
+
+        String expired = tokens.issue(stored.userId, "ada", stored.salt, System.currentTimeMillis() - 1);
+        prefs.edit().putString(UserRepository.PREF_SESSION, expired).commit();
+        assertNull(await(cb -> newRepository().restoreSession(cb)));
+
+        // Issued before the password changed
+        String stale = tokens.issue(stored.userId, "ada", stored.salt, System.currentTimeMillis() + 60_000);
+        prefs.edit().putString(UserRepository.PREF_SESSION, stale).commit();
+        userDb.updatePassword(stored.userId, stored.hash, PasswordHasher.newSalt(), stored.iterations);
+        assertNull(await(cb -> newRepository().restoreSession(cb)));
+    }
+
+    @Test
+    public void plainTextPasswords_areHashedOnUpgrade() {
+        userDb.close();
+        context.deleteDatabase(UserDbHelper.DATABASE_NAME);
+        SQLiteDatabase legacy = SQLiteDatabase.openOrCreateDatabase(context.getDatabasePath(UserDbHelper.DATABASE_NAME), null);
+        legacy.execSQL("CREATE TABLE users (id INTEGER PRIMARY KEY AUTOINCREMENT, first_name TEXT, last_name TEXT," +
+                " username TEXT UNIQUE, password TEXT)");
+        legacy.execSQL("INSERT INTO users(first_name, last_name, username, password) VALUES ('Ada', 'Lovelace', 'ada', 's3cret')");
+        legacy.setVersion(1);
+        legacy.close();
+
+        userDb = new UserDbHelper(context);
+        assertFalse(Migration.columnsOf(userDb.getReadableDatabase(), "users").contains("password"));
+        UserDbHelper.Credentials stored = userDb.findCredentials("ada");
+        assertEquals(PasswordHasher.DEFAULT_ITERATIONS, stored.iterations);
+        assertTrue(PasswordHasher.verify("s3cret", stored.salt, stored.iterations, stored.hash));
+    }
+
+    private UserRepository newRepository() {
+        return new UserRepository(userDb, prefs, tokens, sessionListener);
+    }
+
+    // Runs the main looper until the repository delivers
+    private static <T> T await(Call<T> call) {
+        AtomicReference<T> result = new AtomicReference<>();
+        AtomicBoolean done = new AtomicBoolean();
+        call.start(r -> {
+            result.set(r);
+            done.set(true);
+        });
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (!done.get()) {
+            assertTrue("Timed out waiting for the repository", System.currentTimeMillis() < deadline);
+            shadowOf(Looper.getMainLooper()).idle();
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+        }
+        return result.get();
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+}
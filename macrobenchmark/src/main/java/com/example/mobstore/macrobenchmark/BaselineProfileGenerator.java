@@ -0,0 +1,55 @@
+package com.example.mobstore.macrobenchmark;
+
+import androidx.benchmark.macro.junit4.BaselineProfileRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.uiautomator.By;
+import androidx.test.uiautomator.Direction;
+import androidx.test.uiautomator.UiDevice;
+import androidx.test.uiautomator.UiObject2;
+import androidx.test.uiautomator.Until;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import kotlin.Unit;
+
+import static com.example.mobstore.macrobenchmark.StartupBenchmark.PACKAGE;
+import static com.example.mobstore.macrobenchmark.StartupBenchmark.TIMEOUT_MS;
+
+/**
+ * Records the code run by a cold start, a scroll through the catalog, adding to the cart and
+ * opening it. The resulting profile replaces app/src/main/baseline-prof.txt. Needs a rooted
+ * device or an emulator image without Google Play.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BaselineProfileGenerator {
+
+    @Rule
+    public final BaselineProfileRule baselineProfileRule = new BaselineProfileRule();
+
+    @Test
+    public void homeAndCart() {
+        baselineProfileRule.collect(PACKAGE, scope -> {
+            scope.pressHome();
+            scope.startActivityAndWait();
+            UiDevice device = scope.getDevice();
+
+            UiObject2 catalog = device.wait(Until.findObject(By.res(PACKAGE, "recyclerView")), TIMEOUT_MS);
+            if (catalog != null) {
+                catalog.setGestureMargin(device.getDisplayWidth() / 5);
+                catalog.fling(Direction.DOWN);
+                catalog.fling(Direction.UP);
+            }
+
+            UiObject2 addButton = device.wait(Until.findObject(By.res(PACKAGE, "cartButton")), TIMEOUT_MS);
+            if (addButton != null) addButton.click();
+
+            device.findObject(By.res(PACKAGE, "button")).click();
+            device.wait(Until.hasObject(By.res(PACKAGE, "recyclerViewCart")), TIMEOUT_MS);
+            device.pressBack();
+            device.wait(Until.hasObject(By.res(PACKAGE, "recyclerView")), TIMEOUT_MS);
+            return Unit.INSTANCE;
+        });
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.mobstore.macrobenchmark;
+
+import androidx.benchmark.macro.BaselineProfileMode;
+import androidx.benchmark.macro.CompilationMode;
+import androidx.benchmark.macro.StartupMode;
+import androidx.benchmark.macro.StartupTimingMetric;
+import androidx.benchmark.macro.junit4.MacrobenchmarkRule;
+import androidx.test.uiautomator.By;
+import androidx.test.uiautomator.Until;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import kotlin.Unit;
+
+/**
+ * Cold starts MainActivity and reports time to initial display (first frame) and time to
+ * full display (the first catalog page, signalled by reportFullyDrawn). Runs once without
+ * any ahead-of-time compilation and once with the baseline profile, so the two can be
+ * compared; the second run fails if the app was built without a profile.
+ */
+@RunWith(Parameterized.class)
+public class StartupBenchmark {
+
+    static final String PACKAGE = "com.example.mobstore";
+    static final long TIMEOUT_MS = 5_000;
+    private static final int ITERATIONS = 10;
+
+    @Parameterized.Parameters(name = "{0}")
+    public static List<Object[]> compilationModes() {
+        return Arrays.asList(
+                new Object[]{"none", new CompilationMode.None()},
+                new Object[]{"baselineProfile", new CompilationMode.Partial(BaselineProfileMode.Require)});
+    }
+
+    @Rule
+    public final MacrobenchmarkRule benchmarkRule = new MacrobenchmarkRule();
+
+    private final CompilationMode compilationMode;
+
+    public StartupBenchmark(String name, CompilationMode compilationMode) {
+        this.compilationMode = compilationMode;
+    }
+
+    @Test
+    public void coldStartup() {
+        benchmarkRule.measureRepeated(PACKAGE, Collections.singletonList(new StartupTimingMetric()),
+                compilationMode, StartupMode.COLD, ITERATIONS,
+                scope -> {
+                    scope.pressHome();
+                    return Unit.INSTANCE;
+                },
+                scope -> {
+                    scope.startActivityAndWait();
+                    // reportFullyDrawn comes with the first catalog page
+                    scope.getDevice().wait(Until.hasObject(By.res(PACKAGE, "itemName")), TIMEOUT_MS);
+                    return Unit.INSTANCE;
+                });
+    }
+}